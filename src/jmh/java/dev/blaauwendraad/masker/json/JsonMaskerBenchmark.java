@@ -41,6 +41,9 @@ public class JsonMaskerBenchmark {
         @Param({"false", "true"})
         boolean jsonPath;
 
+        @Param({"false", "true"})
+        boolean maskHighEntropyStrings;
+
         private String jsonString;
         private byte[] jsonBytes;
         private JsonMasker jsonMasker;
@@ -57,6 +60,9 @@ public class JsonMaskerBenchmark {
             } else {
                 builder.maskKeys(targetKeys);
             }
+            if (maskHighEntropyStrings) {
+                builder.maskHighEntropyStrings();
+            }
             jsonMasker = JsonMasker.getMasker(builder.build());
         }
     }
@@ -1,10 +1,12 @@
 package dev.blaauwendraad.masker.json;
 
+import dev.blaauwendraad.masker.json.config.JsonMaskingConfig;
 import dev.blaauwendraad.masker.json.util.JsonStringCharacters;
 import dev.blaauwendraad.masker.randomgen.RandomJsonGenerator;
 import java.io.IOException;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -37,6 +39,7 @@ public class LargeKeySetInstanceCreationBenchmark {
         int keyLength;
 
         Set<String> targetKeys = new HashSet<>();
+        byte[] snapshot;
 
         @Setup
         public synchronized void setup() throws IOException {
@@ -50,6 +53,8 @@ public class LargeKeySetInstanceCreationBenchmark {
             for (int i = 0; i < numberOfTargetKeys; i++) {
                 targetKeys.add(getRandomString(random, keyLength, characters));
             }
+            snapshot = JsonMaskerSnapshot.export(
+                    JsonMaskingConfig.builder().maskKeys(targetKeys).build());
         }
 
         private String getRandomString(Random random, int length, List<Character> allowedCharacters) {
@@ -70,4 +75,9 @@ public class LargeKeySetInstanceCreationBenchmark {
     public JsonMasker jsonMasker(State state) {
         return JsonMasker.getMasker(state.targetKeys);
     }
+
+    @Benchmark
+    public JsonMasker jsonMaskerFromSnapshot(State state) {
+        return JsonMaskerSnapshot.load(state.snapshot, Map.of());
+    }
 }
@@ -26,6 +26,9 @@ public class ValueMaskerBenchmark {
     @org.openjdk.jmh.annotations.State(Scope.Thread)
     @NullUnmarked
     public static class State {
+        private static final byte[] ASTERISK = "*".getBytes(StandardCharsets.UTF_8);
+        private static final byte[] EIGHT = "8".getBytes(StandardCharsets.UTF_8);
+        private static final byte[] NULL = "null".getBytes(StandardCharsets.UTF_8);
 
         @Param({"1kb", "128kb"})
         String jsonSize;
@@ -39,6 +42,24 @@ public class ValueMaskerBenchmark {
         private final JsonMasker nativeMasker = JsonMasker.getMasker(
                 JsonMaskingConfig.builder().maskKeys("targetKey").build());
 
+        private final JsonMasker builtInValueMasker = JsonMasker.getMasker(JsonMaskingConfig.builder()
+                .maskKeys("targetKey")
+                .maskStringsWith(ValueMaskers.eachCharacterWith("*"))
+                .maskNumbersWith(ValueMaskers.eachDigitWith(8))
+                .maskBooleansWith(ValueMaskers.withNull())
+                .build());
+
+        // the same masking as the built-in value maskers, but through user-supplied lambdas
+        private final JsonMasker customValueMasker = JsonMasker.getMasker(JsonMaskingConfig.builder()
+                .maskKeys("targetKey")
+                .maskStringsWith(context -> {
+                    int length = context.byteLength() - 2;
+                    context.replaceBytes(1, length, ASTERISK, length - context.countNonVisibleCharacters(1, length));
+                })
+                .maskNumbersWith(context -> context.replaceBytes(0, context.byteLength(), EIGHT, context.byteLength()))
+                .maskBooleansWith(context -> context.replaceBytes(0, context.byteLength(), NULL, 1))
+                .build());
+
         private final JsonMasker rawValueMasker = JsonMasker.getMasker(JsonMaskingConfig.builder()
                 .maskKeys("targetKey")
                 .maskStringsWith(ValueMaskers.withRawValueFunction(value -> "\"***\""))
@@ -68,6 +89,16 @@ public class ValueMaskerBenchmark {
         state.nativeMasker.mask(state.jsonBytes);
     }
 
+    @Benchmark
+    public void maskWithBuiltInValueMaskers(State state) {
+        state.builtInValueMasker.mask(state.jsonBytes);
+    }
+
+    @Benchmark
+    public void maskWithCustomValueMaskers(State state) {
+        state.customValueMasker.mask(state.jsonBytes);
+    }
+
     @Benchmark
     public void maskWithRawValueFunction(State state) {
         state.rawValueMasker.mask(state.jsonBytes);
@@ -0,0 +1,69 @@
+package dev.blaauwendraad.masker.json;
+
+import dev.blaauwendraad.masker.json.util.Utf8Util;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * {@link ValueMasker} that masks the decoded text of all target values of a JSON message with a single call of the
+ * batch function, see {@link ValueMaskers#withBatchTextFunction(Function)}.
+ *
+ * <p>When masking an in-memory message, the values are only decoded during the scan and the replacements are deferred
+ * by the {@link MaskingState}: the batch function is called once all values have been collected, right before the
+ * replacements are applied by {@link MaskingState#flushReplacementOperations()}. When the replacements cannot be
+ * deferred (i.e. for the streaming API, which writes the replacements to the output stream right away), the batch
+ * function is called with the single value instead.
+ */
+final class BatchTextValueMasker implements ValueMasker.AnyValueMasker {
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.UTF_8);
+
+    private final Function<List<String>, List<@Nullable String>> masker;
+
+    BatchTextValueMasker(Function<List<String>, List<@Nullable String>> masker) {
+        this.masker = masker;
+    }
+
+    @Override
+    public void maskValue(ValueMaskerContext context) {
+        DecodedTextBuffer decodedTextBuffer = context instanceof MaskingState
+                ? ((MaskingState) context).getDecodedTextBuffer()
+                : new DecodedTextBuffer();
+        String value = decodedTextBuffer.decodeToString(context);
+        if (context instanceof MaskingState && ((MaskingState) context).deferReplacement(this, value)) {
+            return;
+        }
+        context.replaceBytes(0, context.byteLength(), maskAll(Collections.singletonList(value))[0], 1);
+    }
+
+    /**
+     * Masks the batch of values with a single call of the batch function.
+     *
+     * @param values the decoded values to mask
+     * @return the masked values, encoded into JSON strings (or the {@code null} JSON literal), in the same order
+     * @throws IllegalStateException if the batch function doesn't return a masked value for every value
+     */
+    byte[][] maskAll(List<String> values) {
+        List<@Nullable String> maskedValues = masker.apply(Collections.unmodifiableList(values));
+        if (maskedValues.size() != values.size()) {
+            throw new IllegalStateException(String.format(
+                    "Batch text function returned %s masked values for %s values",
+                    maskedValues.size(), values.size()));
+        }
+        byte[][] replacements = new byte[maskedValues.size()][];
+        for (int i = 0; i < replacements.length; i++) {
+            String maskedValue = maskedValues.get(i);
+            replacements[i] = maskedValue == null
+                    ? NULL
+                    : Utf8Util.jsonEncode(maskedValue, true).getBytes(StandardCharsets.UTF_8);
+        }
+        return replacements;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("withBatchTextFunction (%s)", masker);
+    }
+}
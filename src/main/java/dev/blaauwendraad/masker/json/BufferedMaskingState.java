@@ -21,13 +21,17 @@ class BufferedMaskingState extends MaskingState {
      * characters.
      */
     private static final int MAX_BUFFER_SIZE = 16777216;
+    /** The maximum size of the chunks in which a repeated mask is written into the output stream. */
+    private static final int MAX_REPEATED_MASK_SIZE = 4096;
 
     private static final String STREAM_READ_ERROR_MESSAGE = "Failed to read from input stream";
     private static final String STREAM_WRITE_ERROR_MESSAGE = "Failed to write to output stream";
+    private static final String STREAM_COPY_ERROR_MESSAGE = "Failed to copy input stream to output stream";
 
     private final InputStream inputStream;
     private final OutputStream outputStream;
     private int bufferSize; // size of byte array buffers to be read from the input stream
+    private byte[] repeatedMask = new byte[0]; // reused to write a repeated mask in chunks
 
     public BufferedMaskingState(
             InputStream inputStream,
@@ -52,14 +56,22 @@ class BufferedMaskingState extends MaskingState {
         readNextBuffer();
     }
 
+    /**
+     * Skips the remainder of the input stream by flushing the current buffer and copying the rest of the input stream
+     * into the output stream as is, without buffering it.
+     *
+     * @throws UncheckedIOException if an I/O error occurs while copying the input stream
+     */
     @Override
-    public boolean next() {
-        return super.next() || reloadBuffer();
-    }
-
-    @Override
-    public boolean endOfJson() {
-        return super.endOfJson() && !reloadBuffer();
+    void skipRemainder() {
+        flushCurrentBuffer();
+        try {
+            inputStream.transferTo(outputStream);
+        } catch (IOException e) {
+            throw new UncheckedIOException(STREAM_COPY_ERROR_MESSAGE, e);
+        }
+        currentIndex = 0;
+        messageLength = 0;
     }
 
     @Override
@@ -163,25 +175,62 @@ class BufferedMaskingState extends MaskingState {
      * @return {@code true} if more data is available in the input stream, {@code false} if the end of the stream is
      *     reached.
      */
-    private boolean reloadBuffer() {
+    @Override
+    protected boolean reloadBuffer() {
         flushCurrentBuffer();
         return readNextBuffer();
     }
 
     @Override
     public void replaceTargetValueWith(int startIndex, int length, byte[] mask, int maskRepeat) {
+        replaceTargetValueWith(startIndex, length, mask, 0, mask.length, maskRepeat);
+    }
+
+    /**
+     * The replacements are written into the output stream right away, so the masks cannot be resolved once the whole
+     * message has been scanned.
+     */
+    @Override
+    boolean deferReplacement(BatchTextValueMasker masker, String value) {
+        return false;
+    }
+
+    /**
+     * Writes the replacement into the output stream right away, so unlike the in-memory masking the slice of the mask
+     * does not need to be copied.
+     */
+    @Override
+    void replaceTargetValueWith(
+            int startIndex, int length, byte[] mask, int maskOffset, int maskLength, int maskRepeat) {
         // write the replacement into the output stream
         try {
             // write everything up to the beginning of the current replacement
             outputStream.write(message, lastReplacementEndIndex, startIndex - lastReplacementEndIndex);
 
             // write the replacement
-            for (int i = 0; i < maskRepeat; i++) {
-                outputStream.write(mask);
+            if (maskRepeat == 1) {
+                outputStream.write(mask, maskOffset, maskLength);
+            } else if (maskRepeat > 1 && maskLength > 0) {
+                writeRepeatedMask(mask, maskOffset, maskLength, maskRepeat);
             }
         } catch (IOException e) {
             throw new UncheckedIOException(STREAM_WRITE_ERROR_MESSAGE, e);
         }
         lastReplacementEndIndex = startIndex + length;
     }
+
+    /**
+     * Writes the repeated mask (e.g. of {@link ValueMaskers#eachCharacterWith(String)}) in chunks of repeated masks,
+     * rather than writing the mask into the output stream for every masked character.
+     */
+    private void writeRepeatedMask(byte[] mask, int maskOffset, int maskLength, int maskRepeat) throws IOException {
+        int chunkRepeat = Math.max(1, Math.min(maskRepeat, MAX_REPEATED_MASK_SIZE / maskLength));
+        if (repeatedMask.length < chunkRepeat * maskLength) {
+            repeatedMask = new byte[chunkRepeat * maskLength];
+        }
+        fillMask(mask, maskOffset, maskLength, chunkRepeat, repeatedMask, 0);
+        for (int remaining = maskRepeat; remaining > 0; remaining -= chunkRepeat) {
+            outputStream.write(repeatedMask, 0, Math.min(remaining, chunkRepeat) * maskLength);
+        }
+    }
 }
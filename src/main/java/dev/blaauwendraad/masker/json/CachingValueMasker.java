@@ -0,0 +1,246 @@
+package dev.blaauwendraad.masker.json;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * {@link ValueMasker} that memoizes the masked values of a delegate, see
+ * {@link ValueMaskers#cached(ValueMasker.AnyValueMasker, int)}.
+ *
+ * <p>The cache is keyed by the bytes of the original value (including the quotes for strings) and stores the bytes of
+ * the masked value, so a cache hit neither decodes the value nor calls the delegate. The cache is bounded by the number
+ * of entries and is safe to use from multiple threads: the entries are immutable and kept in a set-associative table
+ * where every set holds up to {@value #WAYS} entries. When a set is full, the entry to evict is chosen by the CLOCK
+ * algorithm, i.e. the first entry that hasn't been hit since the clock hand passed it.
+ *
+ * <p>Lookups don't take a lock. Concurrent misses of the same set may evict each other's entries, which only costs an
+ * additional call of the delegate later on.
+ */
+public final class CachingValueMasker implements ValueMasker.AnyValueMasker {
+    private static final int WAYS = 4;
+
+    private final ValueMasker.AnyValueMasker delegate;
+    private final int maxEntries;
+    private final int ways;
+    private final int sets;
+    private final AtomicReferenceArray<@Nullable Entry> entries;
+    /** The clock hand of every set, races between threads only affect which entry is evicted. */
+    private final int[] clockHands;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    CachingValueMasker(ValueMasker.AnyValueMasker delegate, int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException(
+                    "Maximum number of cache entries must be positive, but was " + maxEntries);
+        }
+        this.delegate = delegate;
+        this.maxEntries = maxEntries;
+        this.ways = Math.min(WAYS, maxEntries);
+        this.sets = maxEntries / ways;
+        this.entries = new AtomicReferenceArray<>(sets * ways);
+        this.clockHands = new int[sets];
+    }
+
+    @Override
+    public void maskValue(ValueMaskerContext context) {
+        ByteBuffer value = context.asByteBuffer();
+        int hash = spread(value.hashCode());
+        int set = (hash & Integer.MAX_VALUE) % sets;
+        int offset = set * ways;
+        for (int way = 0; way < ways; way++) {
+            Entry entry = entries.get(offset + way);
+            if (entry != null && entry.hash == hash && entry.value.equals(value)) {
+                entry.referenced = true;
+                hits.increment();
+                entry.replace(context);
+                return;
+            }
+        }
+        misses.increment();
+        RecordingValueMaskerContext recordingContext = new RecordingValueMaskerContext(context);
+        delegate.maskValue(recordingContext);
+        byte[] originalValue = new byte[context.byteLength()];
+        context.getBytes(0, originalValue.length, originalValue, 0);
+        Entry entry = new Entry(hash, originalValue, recordingContext.getMaskedValue(originalValue));
+        entries.set(offset + evict(set, offset), entry);
+        entry.replace(context);
+    }
+
+    /**
+     * Returns the way of the set to store a new entry in: an empty way if there is one, otherwise the first way from
+     * the clock hand with an entry that hasn't been hit since the hand passed it.
+     */
+    private int evict(int set, int offset) {
+        for (int way = 0; way < ways; way++) {
+            if (entries.get(offset + way) == null) {
+                return way;
+            }
+        }
+        int hand = clockHands[set];
+        while (true) {
+            Entry entry = entries.get(offset + hand);
+            int way = hand;
+            hand = (hand + 1) % ways;
+            if (entry == null || !entry.referenced) {
+                clockHands[set] = hand;
+                return way;
+            }
+            entry.referenced = false;
+        }
+    }
+
+    /** Spreads the bits of the hash code, since {@link ByteBuffer#hashCode()} doesn't mix the lower bits well. */
+    private static int spread(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /** Returns the number of values that were masked using a cached masked value. */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /** Returns the number of values that were masked by calling the delegate. */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("cached (%s, %s)", maxEntries, delegate);
+    }
+
+    /** A cached original value and its masked value. */
+    private static final class Entry {
+        private final int hash;
+        private final ByteBuffer value;
+        /** The masked value, or {@code null} if the delegate didn't replace the value. */
+        private final byte @Nullable [] maskedValue;
+        /** Whether the entry has been hit since the clock hand passed it, races are benign. */
+        private boolean referenced;
+
+        private Entry(int hash, byte[] value, byte @Nullable [] maskedValue) {
+            this.hash = hash;
+            this.value = ByteBuffer.wrap(value).asReadOnlyBuffer();
+            this.maskedValue = maskedValue;
+        }
+
+        private void replace(ValueMaskerContext context) {
+            if (maskedValue != null) {
+                // the array is never modified, so it can be retained by the context without copying it
+                context.replaceBytes(0, context.byteLength(), maskedValue, 1);
+            }
+        }
+    }
+
+    /**
+     * {@link ValueMaskerContext} that reads the original value from the actual context, but records the replacements
+     * instead of applying them, so the masked value can be cached.
+     */
+    private static final class RecordingValueMaskerContext implements ValueMaskerContext {
+        private final ValueMaskerContext context;
+        private final List<Replacement> replacements = new ArrayList<>();
+
+        private RecordingValueMaskerContext(ValueMaskerContext context) {
+            this.context = context;
+        }
+
+        /**
+         * Applies the recorded replacements, which (like for the {@link JsonMasker}) must be in the order of the value
+         * and must not overlap.
+         *
+         * @param originalValue the bytes of the original value
+         * @return the masked value, or {@code null} if nothing has been replaced
+         */
+        private byte @Nullable [] getMaskedValue(byte[] originalValue) {
+            if (replacements.isEmpty()) {
+                return null;
+            }
+            int maskedLength = originalValue.length;
+            for (Replacement replacement : replacements) {
+                maskedLength += replacement.mask.length * replacement.maskRepeat - replacement.length;
+            }
+            byte[] maskedValue = new byte[maskedLength];
+            int index = 0;
+            int maskedIndex = 0;
+            for (Replacement replacement : replacements) {
+                int unmaskedLength = replacement.fromIndex - index;
+                System.arraycopy(originalValue, index, maskedValue, maskedIndex, unmaskedLength);
+                maskedIndex += unmaskedLength;
+                for (int i = 0; i < replacement.maskRepeat; i++) {
+                    System.arraycopy(replacement.mask, 0, maskedValue, maskedIndex, replacement.mask.length);
+                    maskedIndex += replacement.mask.length;
+                }
+                index = replacement.fromIndex + replacement.length;
+            }
+            System.arraycopy(originalValue, index, maskedValue, maskedIndex, originalValue.length - index);
+            return maskedValue;
+        }
+
+        @Override
+        public byte getByte(int index) {
+            return context.getByte(index);
+        }
+
+        @Override
+        public int byteLength() {
+            return context.byteLength();
+        }
+
+        @Override
+        public void getBytes(int fromIndex, int length, byte[] destination, int destinationOffset) {
+            context.getBytes(fromIndex, length, destination, destinationOffset);
+        }
+
+        @Override
+        public ByteBuffer asByteBuffer() {
+            return context.asByteBuffer();
+        }
+
+        @Override
+        public int indexOf(byte value, int fromIndex) {
+            return context.indexOf(value, fromIndex);
+        }
+
+        @Override
+        public void replaceBytes(int fromIndex, int length, byte[] mask, int maskRepeat) {
+            replacements.add(new Replacement(fromIndex, length, mask, maskRepeat));
+        }
+
+        @Override
+        public int countNonVisibleCharacters(int fromIndex, int length) {
+            return context.countNonVisibleCharacters(fromIndex, length);
+        }
+
+        @Override
+        public String asString(int fromIndex, int length) {
+            return context.asString(fromIndex, length);
+        }
+
+        @Override
+        public InvalidJsonException invalidJson(String message, int index) {
+            return context.invalidJson(message, index);
+        }
+    }
+
+    /** A replacement recorded by the {@link RecordingValueMaskerContext}. */
+    private static final class Replacement {
+        private final int fromIndex;
+        private final int length;
+        private final byte[] mask;
+        private final int maskRepeat;
+
+        private Replacement(int fromIndex, int length, byte[] mask, int maskRepeat) {
+            this.fromIndex = fromIndex;
+            this.length = length;
+            this.mask = mask;
+            this.maskRepeat = maskRepeat;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package dev.blaauwendraad.masker.json;
+
+import dev.blaauwendraad.masker.json.util.SwarUtil;
+
+/**
+ * Detects and masks card numbers (PANs) in the string values of the JSON, see
+ * {@link dev.blaauwendraad.masker.json.config.JsonMaskingConfig.Builder#maskCardNumbersInStrings()}.
+ *
+ * <p>Most string values don't contain any digits, so the bytes are first checked 8 bytes at a time (see {@link
+ * SwarUtil}) for a digit or a backslash. Only the words containing one of them are inspected byte by byte, where a
+ * digit starts a candidate card number and a backslash starts an escape sequence, which is stepped over so that the hex
+ * digits of a unicode escape are not mistaken for the digits of a card number.
+ *
+ * <p>A candidate is a sequence of 13 to 19 digits, optionally grouped by single spaces or dashes, that is not directly
+ * preceded or followed by a letter or a digit. It is masked if it passes the Luhn checksum. When a run of grouped
+ * digits is longer than a card number, the candidates consist of whole groups, so a card number followed by another
+ * number (e.g. {@code 4111 1111 1111 1111 2024}) is still detected.
+ */
+final class CardNumberScanner {
+    private static final long ZEROS = SwarUtil.repeat((byte) '0');
+    private static final long BACKSLASHES = SwarUtil.repeat((byte) '\\');
+    private static final int MIN_DIGITS = 13;
+    private static final int MAX_DIGITS = 19;
+
+    private CardNumberScanner() {
+        // don't instantiate
+    }
+
+    /**
+     * Masks the card numbers in the given range of the message of the masking state, which must be the content of a
+     * string value (i.e. without the quotes).
+     *
+     * @param maskingState the current masking state
+     * @param fromIndex the index of the first byte of the string value content in the message
+     * @param toIndex the index after the last byte of the string value content in the message
+     */
+    static void maskCardNumbers(MaskingState maskingState, int fromIndex, int toIndex) {
+        byte[] message = maskingState.getMessage();
+        // the end of the last escape sequence, which is a boundary for the next card number
+        int escapeEndIndex = fromIndex;
+        int index = fromIndex;
+        while (index < toIndex) {
+            while (index + 8 <= toIndex && !containsDigitOrBackslash(SwarUtil.getWord(message, index))) {
+                index += 8;
+            }
+            if (index >= toIndex) {
+                break;
+            }
+            byte b = message[index];
+            if (b == '\\') {
+                index += index + 1 < toIndex && message[index + 1] == 'u' ? 6 : 2;
+                escapeEndIndex = index;
+            } else if (isDigit(b)) {
+                boolean boundary = index == escapeEndIndex || !isLetterOrDigit(message[index - 1]);
+                index = maskCardNumbers(maskingState, message, index, toIndex, boundary);
+            } else {
+                index++;
+            }
+        }
+    }
+
+    /**
+     * Reads the run of digits and separators starting at the given index and masks the card numbers in it. The digits
+     * of a run may be split in several numbers by the separators (e.g. a card number followed by an amount), so the
+     * card numbers are searched from every group of digits, preferring the longest card number.
+     *
+     * @return the index after the run
+     */
+    private static int maskCardNumbers(
+            MaskingState maskingState, byte[] message, int startIndex, int toIndex, boolean boundary) {
+        int runEndIndex = startIndex; // the index after the last digit of the run
+        int index = startIndex;
+        while (index < toIndex) {
+            byte b = message[index];
+            if (isDigit(b)) {
+                runEndIndex = ++index;
+            } else if ((b == ' ' || b == '-')
+                    && index == runEndIndex
+                    && index + 1 < toIndex
+                    && isDigit(message[index + 1])) {
+                index++;
+            } else {
+                break;
+            }
+        }
+        if (runEndIndex - startIndex < MIN_DIGITS
+                || (runEndIndex < toIndex && isLetterOrDigit(message[runEndIndex]))) {
+            return runEndIndex;
+        }
+        int groupStartIndex = boundary ? startIndex : nextGroupStartIndex(message, startIndex, runEndIndex);
+        while (groupStartIndex < runEndIndex) {
+            int cardNumberEndIndex = findCardNumber(message, groupStartIndex, runEndIndex);
+            if (cardNumberEndIndex < 0) {
+                groupStartIndex = nextGroupStartIndex(message, groupStartIndex, runEndIndex);
+            } else {
+                mask(maskingState, message, groupStartIndex, cardNumberEndIndex);
+                groupStartIndex = cardNumberEndIndex + 1; // step over the separator
+            }
+        }
+        return runEndIndex;
+    }
+
+    /**
+     * Finds the longest card number that consists of whole groups of digits, starting at the given group.
+     *
+     * @return the index after the card number, or {@code -1} if there is no card number starting at the group
+     */
+    private static int findCardNumber(byte[] message, int groupStartIndex, int runEndIndex) {
+        int cardNumberEndIndex = -1;
+        int digits = 0;
+        int index = groupStartIndex;
+        while (index < runEndIndex) {
+            while (index < runEndIndex && isDigit(message[index])) {
+                digits++;
+                index++;
+            }
+            if (digits > MAX_DIGITS) {
+                break;
+            }
+            if (digits >= MIN_DIGITS && passesLuhnCheck(message, groupStartIndex, index)) {
+                cardNumberEndIndex = index;
+            }
+            index++; // step over the separator
+        }
+        return cardNumberEndIndex;
+    }
+
+    /** Returns the start index of the group of digits after the group containing the given index. */
+    private static int nextGroupStartIndex(byte[] message, int index, int runEndIndex) {
+        while (index < runEndIndex && isDigit(message[index])) {
+            index++;
+        }
+        return index + 1; // step over the separator
+    }
+
+    /** Masks every digit of the card number, keeping the separators. */
+    private static void mask(MaskingState maskingState, byte[] message, int startIndex, int endIndex) {
+        byte[] mask = new byte[endIndex - startIndex];
+        for (int i = 0; i < mask.length; i++) {
+            byte b = message[startIndex + i];
+            mask[i] = isDigit(b) ? (byte) '*' : b;
+        }
+        maskingState.replaceTargetValueWith(startIndex, mask.length, mask, 1);
+    }
+
+    /** Checks the Luhn checksum of the digits in the given range, skipping the separators. */
+    private static boolean passesLuhnCheck(byte[] message, int startIndex, int endIndex) {
+        int sum = 0;
+        boolean doubled = false;
+        for (int i = endIndex - 1; i >= startIndex; i--) {
+            byte b = message[i];
+            if (!isDigit(b)) {
+                continue;
+            }
+            int digit = b - '0';
+            if (doubled) {
+                digit *= 2;
+                if (digit > 9) {
+                    digit -= 9;
+                }
+            }
+            sum += digit;
+            doubled = !doubled;
+        }
+        return sum % 10 == 0;
+    }
+
+    /**
+     * Returns whether any of the 8 bytes of the word is a digit or a backslash. The digits become the bytes below 10
+     * and the backslashes become zero bytes after the XOR.
+     */
+    private static boolean containsDigitOrBackslash(long word) {
+        return SwarUtil.hasByteLessThan(word ^ ZEROS, 10) || SwarUtil.hasZeroByte(word ^ BACKSLASHES);
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isLetterOrDigit(byte b) {
+        return isDigit(b) || (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+    }
+}
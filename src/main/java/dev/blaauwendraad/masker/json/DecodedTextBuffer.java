@@ -0,0 +1,303 @@
+package dev.blaauwendraad.masker.json;
+
+import dev.blaauwendraad.masker.json.util.Utf8Util;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+
+/**
+ * Reusable buffers for masking a value based on its decoded text, see
+ * {@link ValueMaskers#withTextMasker(TextValueMasker)}.
+ *
+ * <p>The buffer is a {@link CharSequence} view of the last decoded value. The buffers only grow, so once they are large
+ * enough for the longest value, masking a value doesn't allocate. An instance is kept per
+ * {@link MaskingState}, i.e. per {@link JsonMasker#mask(byte[])} call, and must not be shared between threads.
+ */
+final class DecodedTextBuffer implements CharSequence {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] HEX_DIGITS = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+    /** The bytes of the original value. */
+    private byte[] bytes = new byte[INITIAL_CAPACITY];
+
+    private char[] chars = new char[INITIAL_CAPACITY];
+    private int length;
+    private final StringBuilder maskedValue = new StringBuilder(INITIAL_CAPACITY);
+    /** The masked value encoded into a JSON string, including the quotes. */
+    private byte[] encoded = new byte[INITIAL_CAPACITY];
+
+    /**
+     * Masks the value of the context by passing its decoded text into the {@link TextValueMasker} and replacing the
+     * value with the JSON encoded result.
+     *
+     * @param context the context of the value to mask
+     * @param masker the masker to apply
+     */
+    void mask(ValueMaskerContext context, TextValueMasker masker) {
+        decode(context);
+        maskedValue.setLength(0);
+        if (!masker.mask(this, maskedValue)) {
+            context.replaceBytes(0, context.byteLength(), NULL, 1);
+            return;
+        }
+        int encodedLength = encode(maskedValue);
+        context.replaceBytes(0, context.byteLength(), encoded, 0, encodedLength, 1);
+    }
+
+    /**
+     * Decodes the value of the context into a {@link String}, see {@link ValueMaskers#withTextFunction(Function)}.
+     *
+     * @param context the context of the value to decode
+     * @return the decoded value
+     */
+    String decodeToString(ValueMaskerContext context) {
+        decode(context);
+        return toString();
+    }
+
+    /**
+     * Decodes the value of the context into the characters of this buffer. JSON strings are unescaped and decoded from
+     * UTF-8 (without the quotes), other JSON values only consist of ASCII characters.
+     */
+    private void decode(ValueMaskerContext context) {
+        int byteLength = context.byteLength();
+        if (bytes.length < byteLength) {
+            bytes = new byte[Math.max(byteLength, bytes.length * 2)];
+        }
+        // decoding never results in more characters than the number of bytes
+        if (chars.length < byteLength) {
+            chars = new char[Math.max(byteLength, chars.length * 2)];
+        }
+        context.getBytes(0, byteLength, bytes, 0);
+        length = 0;
+        if (bytes[0] != '"') {
+            // deals with JSON numbers, booleans, and null
+            for (int i = 0; i < byteLength; i++) {
+                chars[length++] = (char) bytes[i];
+            }
+            return;
+        }
+        int index = 1; // skip opening quote of the JSON string
+        int end = byteLength - 1; // minus the closing quote
+        while (index < end) {
+            byte b = bytes[index];
+            if (b == '\\') {
+                index = decodeEscapeSequence(context, index, byteLength);
+            } else if (b >= 0) {
+                chars[length++] = (char) b;
+                index++;
+            } else {
+                index = decodeCodePoint(index, end);
+            }
+        }
+    }
+
+    /**
+     * Decodes the escape sequence starting at the given index (at the backslash) into the characters of this buffer.
+     *
+     * @return the index after the escape sequence
+     */
+    private int decodeEscapeSequence(ValueMaskerContext context, int index, int byteLength) {
+        byte escapedByte = bytes[index + 1];
+        switch (escapedByte) {
+            case 'b':
+                chars[length++] = '\b';
+                break;
+            case 't':
+                chars[length++] = '\t';
+                break;
+            case 'n':
+                chars[length++] = '\n';
+                break;
+            case 'f':
+                chars[length++] = '\f';
+                break;
+            case 'r':
+                chars[length++] = '\r';
+                break;
+            case '"':
+            case '/':
+            case '\\':
+                chars[length++] = (char) escapedByte;
+                break;
+            case 'u':
+                char character = unicodeHexToChar(context, index, byteLength);
+                if (!Character.isSurrogate(character)) {
+                    chars[length++] = character;
+                    return index + 6;
+                }
+                // a high surrogate must be followed by a low surrogate, which together form one unicode character
+                if (Character.isHighSurrogate(character)
+                        && index + 12 <= byteLength - 1
+                        && bytes[index + 6] == '\\'
+                        && bytes[index + 7] == 'u') {
+                    char lowSurrogate = unicodeHexToChar(context, index + 6, byteLength);
+                    if (Character.isLowSurrogate(lowSurrogate)) {
+                        chars[length++] = character;
+                        chars[length++] = lowSurrogate;
+                        return index + 12;
+                    }
+                }
+                throw context.invalidJson(
+                        String.format(
+                                "Invalid surrogate pair '%s'",
+                                context.asString(index, Math.min(12, byteLength - 1 - index))),
+                        index);
+            default:
+                throw context.invalidJson(
+                        String.format("Unexpected character after '\\': '%s'", (char) escapedByte), index + 2);
+        }
+        return index + 2;
+    }
+
+    /** Converts the 4 hex digits of the unicode escape sequence starting at the given index into a char. */
+    private char unicodeHexToChar(ValueMaskerContext context, int index, int byteLength) {
+        if (index + 6 > byteLength - 1) {
+            throw context.invalidJson("Incomplete unicode escape sequence", index);
+        }
+        try {
+            return Utf8Util.unicodeHexToChar(bytes, index + 2);
+        } catch (IllegalArgumentException e) {
+            throw context.invalidJson(String.valueOf(e.getMessage()), index);
+        }
+    }
+
+    /**
+     * Decodes the multibyte UTF-8 sequence starting at the given index into the characters of this buffer. A malformed
+     * sequence is decoded as the replacement character, like {@link String#String(byte[], java.nio.charset.Charset)}
+     * does.
+     *
+     * @return the index after the sequence
+     */
+    private int decodeCodePoint(int index, int end) {
+        byte b = bytes[index];
+        int codePoint;
+        int codePointByteLength;
+        if ((b & 0xe0) == 0xc0 && index + 2 <= end) {
+            codePoint = (b & 0x1f) << 6 | (bytes[index + 1] & 0x3f);
+            codePointByteLength = 2;
+        } else if ((b & 0xf0) == 0xe0 && index + 3 <= end) {
+            codePoint = (b & 0x0f) << 12 | (bytes[index + 1] & 0x3f) << 6 | (bytes[index + 2] & 0x3f);
+            codePointByteLength = 3;
+        } else if ((b & 0xf8) == 0xf0 && index + 4 <= end) {
+            codePoint = (b & 0x07) << 18
+                    | (bytes[index + 1] & 0x3f) << 12
+                    | (bytes[index + 2] & 0x3f) << 6
+                    | (bytes[index + 3] & 0x3f);
+            codePointByteLength = 4;
+        } else {
+            chars[length++] = '\uFFFD';
+            return index + 1;
+        }
+        if (!Character.isValidCodePoint(codePoint)) {
+            chars[length++] = '\uFFFD';
+            return index + codePointByteLength;
+        }
+        length += Character.toChars(codePoint, chars, length);
+        return index + codePointByteLength;
+    }
+
+    /**
+     * Encodes the text into a JSON string (including the quotes) in UTF-8, in the same way as
+     * {@link Utf8Util#jsonEncode(String, boolean)} followed by {@link String#getBytes(java.nio.charset.Charset)} do.
+     *
+     * @return the length of the encoded value
+     */
+    private int encode(CharSequence text) {
+        // at most 6 bytes per character (i.e. \u001F) and the quotes
+        int maxLength = text.length() * 6 + 2;
+        if (encoded.length < maxLength) {
+            encoded = new byte[Math.max(maxLength, encoded.length * 2)];
+        }
+        int encodedLength = 0;
+        encoded[encodedLength++] = '"';
+        for (int i = 0; i < text.length(); i++) {
+            char character = text.charAt(i);
+            switch (character) {
+                case '\b':
+                    encodedLength = writeEscaped(encodedLength, 'b');
+                    break;
+                case '\t':
+                    encodedLength = writeEscaped(encodedLength, 't');
+                    break;
+                case '\n':
+                    encodedLength = writeEscaped(encodedLength, 'n');
+                    break;
+                case '\f':
+                    encodedLength = writeEscaped(encodedLength, 'f');
+                    break;
+                case '\r':
+                    encodedLength = writeEscaped(encodedLength, 'r');
+                    break;
+                case '"':
+                case '\\':
+                    encodedLength = writeEscaped(encodedLength, character);
+                    break;
+                default:
+                    if (character <= '\u001F') {
+                        encodedLength = writeEscaped(encodedLength, 'u');
+                        encoded[encodedLength++] = '0';
+                        encoded[encodedLength++] = '0';
+                        encoded[encodedLength++] = HEX_DIGITS[character >> 4];
+                        encoded[encodedLength++] = HEX_DIGITS[character & 0xf];
+                    } else if (character < 0x80) {
+                        encoded[encodedLength++] = (byte) character;
+                    } else if (character < 0x800) {
+                        encoded[encodedLength++] = (byte) (0xc0 | (character >> 6));
+                        encoded[encodedLength++] = (byte) (0x80 | (character & 0x3f));
+                    } else if (!Character.isSurrogate(character)) {
+                        encoded[encodedLength++] = (byte) (0xe0 | (character >> 12));
+                        encoded[encodedLength++] = (byte) (0x80 | ((character >> 6) & 0x3f));
+                        encoded[encodedLength++] = (byte) (0x80 | (character & 0x3f));
+                    } else if (Character.isHighSurrogate(character)
+                            && i + 1 < text.length()
+                            && Character.isLowSurrogate(text.charAt(i + 1))) {
+                        int codePoint = Character.toCodePoint(character, text.charAt(++i));
+                        encoded[encodedLength++] = (byte) (0xf0 | (codePoint >> 18));
+                        encoded[encodedLength++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                        encoded[encodedLength++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                        encoded[encodedLength++] = (byte) (0x80 | (codePoint & 0x3f));
+                    } else {
+                        // same as String#getBytes, which replaces the unpaired surrogates
+                        encoded[encodedLength++] = '?';
+                    }
+                    break;
+            }
+        }
+        encoded[encodedLength++] = '"';
+        return encodedLength;
+    }
+
+    private int writeEscaped(int encodedLength, char escapedCharacter) {
+        encoded[encodedLength] = '\\';
+        encoded[encodedLength + 1] = (byte) escapedCharacter;
+        return encodedLength + 2;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for length " + length);
+        }
+        return chars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || start > end || end > length) {
+            throw new IndexOutOfBoundsException(
+                    "Range " + start + ".." + end + " is out of bounds for length " + length);
+        }
+        return new String(chars, start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+}
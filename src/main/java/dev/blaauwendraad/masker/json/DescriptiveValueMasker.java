@@ -1,5 +1,9 @@
 package dev.blaauwendraad.masker.json;
 
+import java.util.Arrays;
+import java.util.Objects;
+import org.jspecify.annotations.Nullable;
+
 /**
  * {@link DescriptiveValueMasker} provides the description of what the implementation does.
  *
@@ -10,24 +14,221 @@ package dev.blaauwendraad.masker.json;
  * configuration as {@code maskNumbersWith="###"} instead of
  * {@code maskNumbersWith=dev.blaauwendraad.masker.json.ValueMaskers$$Lambda$425/0x000000080022e890@1039bfc4}
  *
+ * <p>The out-of-the-box implementations of {@link ValueMaskers} are described by their {@link Kind} and precomputed
+ * mask bytes, rather than by a delegate. Since the class is final, the masker calls
+ * {@link #maskValue(ValueMaskerContext)} directly (see {@link KeyContainsMasker}) and the built-in kinds are applied by
+ * a switch, so the call stays cheap when an application uses several masking strategies. Only the {@link Kind#CUSTOM}
+ * maskers call the delegate.
+ *
  * @see ValueMaskers#describe(String, T)
  */
 final class DescriptiveValueMasker<T extends ValueMasker> implements ValueMasker.AnyValueMasker {
+    /** The masking strategy, all except {@link #CUSTOM} are applied without calling a delegate. */
+    enum Kind {
+        /** Calls the delegate, see {@link ValueMaskers#describe(String, ValueMasker)}. */
+        CUSTOM,
+        /** Replaces the whole value with the mask, see {@link ValueMaskers#with(String)}. */
+        REPLACE,
+        /** Replaces every character of a string with the mask, see {@link ValueMaskers#eachCharacterWith(String)}. */
+        EACH_CHARACTER,
+        /** Replaces every digit of a number with the mask, see {@link ValueMaskers#eachDigitWith(int)}. */
+        EACH_DIGIT,
+        /** Masks the local part of an email, see {@link ValueMaskers#email(int, int, boolean, String)}. */
+        EMAIL,
+        /** Keeps the value as is, see {@link ValueMaskers#noop()}. */
+        NOOP
+    }
+
+    private static final byte[] NO_MASK = new byte[0];
+
     private final String description;
-    private final T delegate;
+    private final Kind kind;
+    /** The delegate of a {@link Kind#CUSTOM} masker, {@code null} for the other kinds. */
+    private final @Nullable T delegate;
+
+    private final byte[] mask;
+    private final int keepPrefixLength;
+    private final int keepSuffixLength;
+    private final boolean keepDomain;
 
     DescriptiveValueMasker(String description, T delegate) {
+        this(description, Kind.CUSTOM, delegate, NO_MASK, 0, 0, false);
+    }
+
+    private DescriptiveValueMasker(
+            String description,
+            Kind kind,
+            @Nullable T delegate,
+            byte[] mask,
+            int keepPrefixLength,
+            int keepSuffixLength,
+            boolean keepDomain) {
         this.description = description;
+        this.kind = kind;
         this.delegate = delegate;
+        this.mask = mask;
+        this.keepPrefixLength = keepPrefixLength;
+        this.keepSuffixLength = keepSuffixLength;
+        this.keepDomain = keepDomain;
+    }
+
+    /**
+     * Creates a built-in masker of the given kind.
+     *
+     * @param description the description of the masker
+     * @param kind the kind of the masker, must not be {@link Kind#CUSTOM} or {@link Kind#EMAIL}
+     * @param mask the precomputed bytes of the mask
+     */
+    static DescriptiveValueMasker<ValueMasker> builtIn(String description, Kind kind, byte[] mask) {
+        return new DescriptiveValueMasker<>(description, kind, null, mask, 0, 0, false);
+    }
+
+    /**
+     * Creates a built-in {@link Kind#EMAIL} masker, see {@link ValueMaskers#email(int, int, boolean, String)}.
+     *
+     * @param description the description of the masker
+     * @param mask the precomputed bytes of the mask
+     */
+    static DescriptiveValueMasker<ValueMasker> email(
+            String description, byte[] mask, int keepPrefixLength, int keepSuffixLength, boolean keepDomain) {
+        return new DescriptiveValueMasker<>(
+                description, Kind.EMAIL, null, mask, keepPrefixLength, keepSuffixLength, keepDomain);
+    }
+
+    /**
+     * Reads a built-in masker written by {@link #writeTo(JsonMaskerSnapshot.SnapshotWriter)}.
+     *
+     * @param in the snapshot, positioned at the masker
+     * @return the masker
+     * @throws IllegalArgumentException if the snapshot is invalid
+     */
+    static DescriptiveValueMasker<ValueMasker> readFrom(JsonMaskerSnapshot.SnapshotReader in) {
+        int kind = in.readByte();
+        if (kind < 0 || kind >= Kind.values().length) {
+            throw new IllegalArgumentException("Invalid snapshot");
+        }
+        String description = in.readString();
+        if (kind == Kind.CUSTOM.ordinal()) {
+            return new DescriptiveValueMasker<>(description, PartialValueMasker.readFrom(in));
+        }
+        return new DescriptiveValueMasker<>(
+                description, Kind.values()[kind], null, in.readBytes(), in.readInt(), in.readInt(), in.readBoolean());
+    }
+
+    /**
+     * Returns whether the masker is one of the out-of-the-box implementations that can be written to a
+     * {@link JsonMaskerSnapshot}, i.e. all kinds except {@link Kind#CUSTOM}, and the {@link PartialValueMasker}.
+     */
+    boolean isBuiltIn() {
+        return kind != Kind.CUSTOM || delegate instanceof PartialValueMasker;
+    }
+
+    /**
+     * Writes the built-in masker to a {@link JsonMaskerSnapshot}: the kind, the description and the precomputed mask
+     * bytes, so that the masker can be restored without calling {@link ValueMaskers}.
+     *
+     * @param out the snapshot to write to
+     */
+    void writeTo(JsonMaskerSnapshot.SnapshotWriter out) {
+        if (!isBuiltIn()) {
+            throw new IllegalStateException("Cannot write a custom value masker");
+        }
+        out.writeByte((byte) kind.ordinal());
+        out.writeString(description);
+        if (delegate instanceof PartialValueMasker) {
+            ((PartialValueMasker) delegate).writeTo(out);
+            return;
+        }
+        out.writeBytes(mask);
+        out.writeInt(keepPrefixLength);
+        out.writeInt(keepSuffixLength);
+        out.writeBoolean(keepDomain);
     }
 
     @Override
     public void maskValue(ValueMaskerContext context) {
-        delegate.maskValue(context);
+        switch (kind) {
+            case REPLACE:
+                context.replaceBytes(0, context.byteLength(), mask, 1);
+                break;
+            case EACH_CHARACTER:
+                maskEachCharacter(context);
+                break;
+            case EACH_DIGIT:
+                context.replaceBytes(0, context.byteLength(), mask, context.byteLength());
+                break;
+            case EMAIL:
+                maskEmail(context);
+                break;
+            case NOOP:
+                break;
+            default:
+                Objects.requireNonNull(delegate).maskValue(context);
+                break;
+        }
+    }
+
+    private void maskEachCharacter(ValueMaskerContext context) {
+        /*
+        So we don't add asterisks for escape characters or additional encoding bytes (which are not part of the String length)
+
+        The actual length of the string is the length minus escape characters (which are not part of the
+        string length). Also, unicode characters are denoted as 4-hex digits but represent actually
+        just one character, so for each of them 3 asterisks should be removed.
+         */
+        int stringValueStart = 1; // skip the opening quote
+        int stringValueLength = context.byteLength() - 2; // skip both quotes
+        int nonVisibleCharacters = context.countNonVisibleCharacters(stringValueStart, stringValueLength);
+        int maskLength = stringValueLength - nonVisibleCharacters;
+        context.replaceBytes(stringValueStart, stringValueLength, mask, maskLength);
+    }
+
+    private void maskEmail(ValueMaskerContext context) {
+        int prefixLength = keepPrefixLength + 1; // add opening quote
+        int suffixLength = keepSuffixLength + 1; // keep closing quote
+        if (keepDomain) {
+            int domainIndex = context.indexOf((byte) '@', 0);
+            if (domainIndex >= 0) {
+                // include domain in the suffix
+                suffixLength = context.byteLength() - domainIndex + keepSuffixLength;
+            }
+        }
+        int maskLength = context.byteLength() - prefixLength - suffixLength;
+        if (maskLength > 0) {
+            context.replaceBytes(prefixLength, maskLength, mask, 1);
+        }
     }
 
     @Override
     public String toString() {
         return description;
     }
+
+    /**
+     * Two maskers are equal if they mask the values in the same way, i.e. if they are of the same kind with the same
+     * mask and parameters. The {@link Kind#CUSTOM} maskers are equal if their delegates are equal, which is only the
+     * case for the same delegate instance unless the delegate implements {@link Object#equals(Object)}.
+     */
+    @Override
+    public boolean equals(@Nullable Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof DescriptiveValueMasker)) {
+            return false;
+        }
+        DescriptiveValueMasker<?> other = (DescriptiveValueMasker<?>) o;
+        return kind == other.kind
+                && keepPrefixLength == other.keepPrefixLength
+                && keepSuffixLength == other.keepSuffixLength
+                && keepDomain == other.keepDomain
+                && description.equals(other.description)
+                && Objects.equals(delegate, other.delegate)
+                && Arrays.equals(mask, other.mask);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(kind, description, delegate);
+    }
 }
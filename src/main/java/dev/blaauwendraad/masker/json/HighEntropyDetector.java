@@ -0,0 +1,124 @@
+package dev.blaauwendraad.masker.json;
+
+/**
+ * Detects string values that look like credentials (API keys, access tokens, JWTs, etc.) by their shape and their
+ * byte-level Shannon entropy, see
+ * {@link dev.blaauwendraad.masker.json.config.JsonMaskingConfig.Builder#maskHighEntropyStrings()}.
+ *
+ * <p>A string value is a token if it is at least {@value #MIN_LENGTH} bytes long, consists only of the characters of
+ * the hex, base64 and base64url alphabets (plus the {@code .} separator of a JWT), and contains both a letter and a
+ * digit. Almost all free text fails this check within the first few bytes (on the first space), so the detector
+ * exits early and the histogram is only computed for the token-like values.
+ *
+ * <p>A token consisting of hex digits only is flagged if its entropy is at least {@value #HEX_ENTROPY_THRESHOLD} bits
+ * per byte (random hex has at most 4). Any other token is flagged if its entropy is at least
+ * {@value #ENTROPY_THRESHOLD} bits per byte, and if the kind of character (lowercase, uppercase, digit or symbol)
+ * changes between at least {@value #MIN_KIND_CHANGES_PERCENTAGE}% of the adjacent characters. For short tokens, the
+ * entropy alone doesn't tell random characters apart from identifiers like {@code MyApplicationService2Impl}, but
+ * the kind of character changes on about 65% of the adjacent characters of random base64, and much less often in
+ * words.
+ */
+final class HighEntropyDetector {
+    static final int MIN_LENGTH = 20;
+    static final double HEX_ENTROPY_THRESHOLD = 3.0;
+    static final double ENTROPY_THRESHOLD = 4.0;
+    static final int MIN_KIND_CHANGES_PERCENTAGE = 50;
+
+    private static final int NON_TOKEN = 0;
+    /** Flag of the hex digits, combined with the kind of character. */
+    private static final int HEX = 1;
+    private static final int DIGIT = 2;
+    private static final int LOWERCASE = 4;
+    private static final int UPPERCASE = 8;
+    private static final int SYMBOL = 16;
+    /** The kind of character of every byte, including the {@link #HEX} flag, all non-ASCII bytes are non-tokens. */
+    private static final byte[] BYTE_CLASSES = new byte[256];
+
+    static {
+        for (int b = '0'; b <= '9'; b++) {
+            BYTE_CLASSES[b] = DIGIT | HEX;
+        }
+        for (int b = 'a'; b <= 'z'; b++) {
+            BYTE_CLASSES[b] = (byte) (b <= 'f' ? LOWERCASE | HEX : LOWERCASE);
+        }
+        for (int b = 'A'; b <= 'Z'; b++) {
+            BYTE_CLASSES[b] = (byte) (b <= 'F' ? UPPERCASE | HEX : UPPERCASE);
+        }
+        for (char b : new char[] {'+', '/', '=', '-', '_', '.'}) {
+            BYTE_CLASSES[b] = SYMBOL;
+        }
+    }
+
+    private HighEntropyDetector() {
+        // don't instantiate
+    }
+
+    /**
+     * Checks whether the given range of the message of the masking state, which must be the content of a string value
+     * (i.e. without the quotes), is a high-entropy token.
+     *
+     * @param maskingState the current masking state
+     * @param fromIndex the index of the first byte of the string value content in the message
+     * @param toIndex the index after the last byte of the string value content in the message
+     * @return {@code true} if the string value must be masked, {@code false} otherwise
+     */
+    static boolean isHighEntropyToken(MaskingState maskingState, int fromIndex, int toIndex) {
+        byte[] message = maskingState.getMessage();
+        int length = toIndex - fromIndex;
+        if (length < MIN_LENGTH) {
+            return false;
+        }
+        int allClasses = ~0;
+        int anyClasses = 0;
+        int kindChanges = 0;
+        int previousKind = NON_TOKEN;
+        for (int i = fromIndex; i < toIndex; i++) {
+            int byteClass = BYTE_CLASSES[message[i] & 0xFF];
+            if (byteClass == NON_TOKEN) {
+                return false;
+            }
+            allClasses &= byteClass;
+            anyClasses |= byteClass;
+            int kind = byteClass & ~HEX;
+            if (kind != previousKind) {
+                kindChanges++;
+                previousKind = kind;
+            }
+        }
+        if ((anyClasses & DIGIT) == 0 || (anyClasses & (LOWERCASE | UPPERCASE)) == 0) {
+            return false;
+        }
+        if ((allClasses & HEX) != 0) {
+            return entropy(maskingState, fromIndex, toIndex) >= HEX_ENTROPY_THRESHOLD;
+        }
+        // the first character counts as a change as well
+        return (kindChanges - 1) * 100 >= (length - 1) * MIN_KIND_CHANGES_PERCENTAGE
+                && entropy(maskingState, fromIndex, toIndex) >= ENTROPY_THRESHOLD;
+    }
+
+    /**
+     * Computes the Shannon entropy of the bytes in the given range, which must all be ASCII, in bits per byte: {@code
+     * H = log2(n) - sum(c * log2(c)) / n}, where {@code n} is the number of bytes and {@code c} the count of every
+     * distinct byte.
+     *
+     * <p>The histogram is reused for all values of the message, so only the entries of the bytes in the range are
+     * cleared again, which also makes sure that every distinct byte is only summed once.
+     */
+    private static double entropy(MaskingState maskingState, int fromIndex, int toIndex) {
+        byte[] message = maskingState.getMessage();
+        int[] histogram = maskingState.getEntropyHistogram();
+        for (int i = fromIndex; i < toIndex; i++) {
+            histogram[message[i]]++;
+        }
+        double sum = 0;
+        for (int i = fromIndex; i < toIndex; i++) {
+            int count = histogram[message[i]];
+            if (count > 0) {
+                sum += count * Math.log(count);
+                histogram[message[i]] = 0;
+            }
+        }
+        int length = toIndex - fromIndex;
+        return (Math.log(length) - sum / length) / Math.log(2);
+    }
+}
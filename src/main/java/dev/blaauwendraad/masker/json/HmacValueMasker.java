@@ -0,0 +1,132 @@
+package dev.blaauwendraad.masker.json;
+
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * {@link ValueMasker} that replaces a value with the hex encoded keyed hash (HMAC) of the value, see
+ * {@link ValueMaskers#hmac(byte[], String, int)}.
+ *
+ * <p>A {@link Mac} is not thread-safe and relatively expensive to create, so the instances are kept in a bounded pool
+ * together with the buffers for the value, the hash and the mask. A masking thread borrows an instance for a single
+ * value and returns it afterward, so the number of instances is bounded by the number of concurrently masked values
+ * rather than by the number of threads (which would not be the case for a {@link ThreadLocal} with virtual threads).
+ */
+final class HmacValueMasker implements ValueMasker.AnyValueMasker {
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private final SecretKeySpec key;
+    private final int outputLength;
+    private final BlockingQueue<Hasher> hashers;
+
+    /**
+     * Creates the masker.
+     *
+     * @param key the secret key of the HMAC
+     * @param algorithm the name of the HMAC algorithm, e.g. {@code HmacSHA256}
+     * @param outputLength the number of hex characters of the hash to keep
+     * @throws IllegalArgumentException if the algorithm is not supported, the key is invalid for the algorithm or the
+     *     output length is out of range
+     */
+    HmacValueMasker(byte[] key, String algorithm, int outputLength) {
+        if (key.length == 0) {
+            throw new IllegalArgumentException("HMAC key must not be empty");
+        }
+        this.key = new SecretKeySpec(key, algorithm);
+        this.outputLength = outputLength;
+        Hasher hasher = new Hasher(newMac());
+        int maxOutputLength = hasher.hash.length * 2;
+        if (outputLength < 1 || outputLength > maxOutputLength) {
+            throw new IllegalArgumentException(String.format(
+                    "Output length must be between 1 and %s for %s, but was %s",
+                    maxOutputLength, algorithm, outputLength));
+        }
+        this.hashers = new ArrayBlockingQueue<>(Math.max(2, Runtime.getRuntime().availableProcessors() * 2));
+        this.hashers.offer(hasher);
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(key.getAlgorithm());
+            mac.init(key);
+            return mac;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Unsupported HMAC algorithm: " + key.getAlgorithm(), e);
+        } catch (InvalidKeyException e) {
+            throw new IllegalArgumentException("Invalid HMAC key for algorithm: " + key.getAlgorithm(), e);
+        }
+    }
+
+    /**
+     * Hashes the value as it appears in the JSON (for strings, the encoded value without the quotes) and replaces the
+     * whole value with the hash as a JSON string.
+     */
+    @Override
+    public void maskValue(ValueMaskerContext context) {
+        Hasher hasher = hashers.poll();
+        if (hasher == null) {
+            hasher = new Hasher(newMac());
+        }
+        try {
+            mask(hasher, context);
+        } finally {
+            // the mask is copied (or written) by the context, so the buffers can be reused, also if masking failed
+            hashers.offer(hasher);
+        }
+    }
+
+    private void mask(Hasher hasher, ValueMaskerContext context) {
+        boolean string = context.getByte(0) == '"';
+        int valueOffset = string ? 1 : 0;
+        int valueLength = context.byteLength() - (string ? 2 : 0);
+        byte[] value = hasher.value(valueLength);
+        context.getBytes(valueOffset, valueLength, value, 0);
+        try {
+            hasher.mac.update(value, 0, valueLength);
+            hasher.mac.doFinal(hasher.hash, 0);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException("HMAC buffer is too short", e);
+        } finally {
+            // a failed hash must not leave any input in the pooled Mac
+            hasher.mac.reset();
+        }
+        byte[] mask = hasher.mask;
+        for (int i = 0; i < outputLength; i++) {
+            int b = hasher.hash[i >> 1];
+            mask[i + 1] = HEX_DIGITS[(i & 1) == 0 ? (b >> 4) & 0xf : b & 0xf];
+        }
+        mask[outputLength + 1] = '"';
+        context.replaceBytes(0, context.byteLength(), mask, 0, outputLength + 2, 1);
+    }
+
+    /** A {@link Mac} with the preallocated buffers for the value, the hash and the mask. */
+    private static final class Hasher {
+        private final Mac mac;
+        private final byte[] hash;
+        /** The hex encoded hash as a JSON string, the opening quote is written once. */
+        private final byte[] mask;
+        /** The bytes of the value to hash, grown to the largest value hashed so far. */
+        private byte[] value = new byte[64];
+
+        private Hasher(Mac mac) {
+            this.mac = mac;
+            this.hash = new byte[mac.getMacLength()];
+            this.mask = new byte[hash.length * 2 + 2];
+            this.mask[0] = '"';
+        }
+
+        /** Returns the buffer for a value of the given length, which is only allocated if the value is larger. */
+        private byte[] value(int length) {
+            if (value.length < length) {
+                value = new byte[Math.max(length, value.length * 2)];
+            }
+            return value;
+        }
+    }
+}
@@ -33,8 +33,11 @@ public interface JsonMasker {
     /**
      * Masks the given JSON input and returns the masked output.
      *
+     * <p>If nothing was masked, the input array itself is returned rather than a copy of it, so {@code output == input}
+     * tells whether the input contained anything to mask. The input array is never modified.
+     *
      * @param input the JSON input as bytes
-     * @return the masked JSON output as bytes
+     * @return the masked JSON output as bytes, or the input array if nothing was masked
      * @throws InvalidJsonException in case invalid JSON input was provided
      */
     byte[] mask(byte[] input);
@@ -53,11 +56,18 @@ public interface JsonMasker {
     /**
      * Masks the given JSON input and returns the masked output.
      *
+     * <p>If nothing was masked, the input String itself is returned, saving the decoding of the output.
+     *
      * @param input the JSON input as String
-     * @return the masked JSON output String
+     * @return the masked JSON output String, or the input String if nothing was masked
      * @throws InvalidJsonException in case invalid JSON input was provided
      */
     default String mask(String input) {
-        return new String(mask(input.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+        byte[] inputBytes = input.getBytes(StandardCharsets.UTF_8);
+        byte[] outputBytes = mask(inputBytes);
+        if (outputBytes == inputBytes) {
+            return input;
+        }
+        return new String(outputBytes, StandardCharsets.UTF_8);
     }
 }
@@ -0,0 +1,533 @@
+package dev.blaauwendraad.masker.json;
+
+import dev.blaauwendraad.masker.json.config.JsonMaskingConfig;
+import dev.blaauwendraad.masker.json.config.KeyMaskingConfig;
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Precompiled form of a {@link JsonMaskingConfig}, which allows to create a {@link JsonMasker} faster than
+ * {@link JsonMasker#getMasker(JsonMaskingConfig)} does.
+ *
+ * <p>Creating a {@link JsonMasker} for a large set of target keys requires encoding, case-converting and sorting all
+ * the keys to build the look-up trie, and parsing the JSONPaths to compile them into an automaton. The snapshot
+ * contains the result of that work in a compact binary form: the sorted keys, the nodes of the radix trie and the
+ * tables of the JSONPath automaton, which are read as is when the snapshot is loaded. So it can be created once (e.g.
+ * at build time) and loaded on startup:
+ *
+ * <pre>{@code
+ * byte[] snapshot = JsonMaskerSnapshot.export(maskingConfig, Map.of("hash", hashMasker));
+ * // ...
+ * JsonMasker jsonMasker = JsonMaskerSnapshot.load(snapshot, Map.of("hash", hashMasker));
+ * }</pre>
+ *
+ * <p>The out-of-the-box {@link ValueMasker}s created by {@link ValueMaskers} that don't take a function or another
+ * masker (e.g. {@link ValueMaskers#with(String)} or {@link ValueMaskers#keepLast(int)}) are stored in the snapshot. Any
+ * other {@link ValueMasker} cannot be serialized, so it must be bound to a name when exporting the snapshot, and the
+ * same name must be bound to an equivalent {@link ValueMasker} when loading it.
+ */
+public final class JsonMaskerSnapshot {
+    private static final int MAGIC = 0x4A4D534B; // "JMSK"
+    private static final byte VERSION = 3;
+    private static final byte FLAG_ALLOW_MODE = 1;
+    private static final byte FLAG_CASE_SENSITIVE = 1 << 1;
+    private static final byte FLAG_STOP_AFTER_JSON_PATHS_RESOLVED = 1 << 2;
+    private static final byte FLAG_MASK_CARD_NUMBERS = 1 << 3;
+    private static final byte FLAG_MASK_HIGH_ENTROPY_STRINGS = 1 << 4;
+    private static final byte FLAG_NEGATIVE_MATCH = 1;
+    private static final byte BUILT_IN_VALUE_MASKER = 0;
+    private static final byte BOUND_VALUE_MASKER = 1;
+    /** The index of a missing child node or masking config. */
+    private static final int NONE = -1;
+
+    private JsonMaskerSnapshot() {
+        // don't instantiate
+    }
+
+    /**
+     * Exports the precompiled masking config, which must only contain built-in {@link ValueMasker}s.
+     *
+     * @param maskingConfig the JSON masker configuration
+     * @return the snapshot bytes
+     * @throws IllegalArgumentException if the masking config contains a custom {@link ValueMasker}
+     * @see #export(JsonMaskingConfig, Map)
+     */
+    public static byte[] export(JsonMaskingConfig maskingConfig) {
+        return export(maskingConfig, Map.of());
+    }
+
+    /**
+     * Exports the precompiled masking config.
+     *
+     * <p>The snapshot has the following layout (all numbers are big-endian 4 byte integers, byte arrays and strings
+     * are prefixed by their length):
+     *
+     * <ul>
+     *   <li>header: magic number (4 bytes), version (1 byte), flags of the settings (1 byte), the ordinal of the
+     *       {@link JsonMaskingConfig.KeyLookupStrategy} (1 byte) and the secrets to mask in the string values
+     *   <li>the masking configs, the default config first: per config the string, number and boolean maskers, each
+     *       either built-in (kind, description and mask bytes) or the name it is bound to
+     *   <li>the keys, sorted by the lowercase bytes: key flags (1 byte), lowercase bytes, uppercase bytes (only if
+     *       case-insensitive) and the index of the masking config, or {@code -1} for the default config
+     *   <li>the nodes of the radix trie, children before their parents and the root last: per node the prefix, the
+     *       offsets and the indexes of the children, the index of the masking config and the flags
+     *   <li>the JSONPath automaton, if any: the radix trie of the names followed by the transitions of every state
+     * </ul>
+     *
+     * @param maskingConfig the JSON masker configuration
+     * @param valueMaskers the custom {@link ValueMasker}s of the masking config by name
+     * @return the snapshot bytes
+     * @throws IllegalArgumentException if the masking config contains a custom {@link ValueMasker} that is not bound
+     */
+    public static byte[] export(JsonMaskingConfig maskingConfig, Map<String, ? extends ValueMasker> valueMaskers) {
+        KeyMatcher keyMatcher = new KeyMatcher(maskingConfig);
+        SnapshotWriter body = new SnapshotWriter(maskingConfig.getDefaultConfig());
+        KeyMatcher.RadixTrieBuilder.TargetKey[] keys = keyMatcher.getTargetKeys();
+        body.writeInt(keys.length);
+        for (KeyMatcher.RadixTrieBuilder.TargetKey key : keys) {
+            body.writeByte(key.negativeMatch ? FLAG_NEGATIVE_MATCH : 0);
+            body.writeBytes(key.lowercase);
+            if (!maskingConfig.caseSensitiveTargetKeys()) {
+                body.writeBytes(key.uppercase);
+            }
+            body.writeKeyMaskingConfig(key.keyMaskingConfig);
+        }
+        body.writeRadixTrie(keyMatcher.getRootNode());
+        JsonPathAutomaton jsonPathAutomaton = keyMatcher.getJsonPathAutomaton();
+        body.writeBoolean(jsonPathAutomaton != null);
+        if (jsonPathAutomaton != null) {
+            jsonPathAutomaton.writeTo(body);
+        }
+
+        // the header is written last, as the masking configs are collected while writing the body
+        SnapshotWriter out = new SnapshotWriter(maskingConfig.getDefaultConfig());
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(settingsFlags(maskingConfig));
+        out.writeByte((byte) maskingConfig.getKeyLookupStrategy().ordinal());
+        out.writeInt(maskingConfig.getSecretsInStrings().size());
+        for (String secret : maskingConfig.getSecretsInStrings()) {
+            out.writeString(secret);
+        }
+        Map<ValueMasker, String> names = new IdentityHashMap<>();
+        valueMaskers.forEach((name, valueMasker) -> names.put(valueMasker, name));
+        out.writeInt(body.keyMaskingConfigs.size());
+        for (KeyMaskingConfig keyMaskingConfig : body.keyMaskingConfigs) {
+            writeValueMasker(out, keyMaskingConfig.getStringValueMasker(), names);
+            writeValueMasker(out, keyMaskingConfig.getNumberValueMasker(), names);
+            writeValueMasker(out, keyMaskingConfig.getBooleanValueMasker(), names);
+        }
+        out.bytes.write(body.bytes.toByteArray(), 0, body.bytes.size());
+        return out.bytes.toByteArray();
+    }
+
+    /**
+     * Creates a {@link JsonMasker} from the snapshot.
+     *
+     * @param snapshot the snapshot bytes, as returned by {@link #export(JsonMaskingConfig, Map)}
+     * @param valueMaskers the custom {@link ValueMasker}s by the name they were bound to when exporting the snapshot
+     * @return the {@link JsonMasker} instance
+     * @throws IllegalArgumentException if the snapshot is invalid or a custom {@link ValueMasker} is not bound
+     * @see #load(ByteBuffer, Map)
+     */
+    public static JsonMasker load(byte[] snapshot, Map<String, ? extends ValueMasker> valueMaskers) {
+        return load(ByteBuffer.wrap(snapshot), valueMaskers);
+    }
+
+    /**
+     * Creates a {@link JsonMasker} from the snapshot, which can be a memory-mapped file. The snapshot is read from the
+     * current position of the buffer, the buffer's position is not modified.
+     *
+     * <p>The radix trie and the JSONPath automaton are read from the snapshot as is, so neither the target keys nor
+     * the JSONPaths are part of the {@link JsonMaskingConfig} of the returned masker, it only contains the settings
+     * and the default masking config.
+     *
+     * @param snapshot the snapshot bytes, as returned by {@link #export(JsonMaskingConfig, Map)}
+     * @param valueMaskers the custom {@link ValueMasker}s by the name they were bound to when exporting the snapshot
+     * @return the {@link JsonMasker} instance
+     * @throws IllegalArgumentException if the snapshot is invalid or a custom {@link ValueMasker} is not bound
+     */
+    public static JsonMasker load(ByteBuffer snapshot, Map<String, ? extends ValueMasker> valueMaskers) {
+        SnapshotReader in = new SnapshotReader(snapshot.duplicate());
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IllegalArgumentException("Invalid snapshot");
+            }
+            byte version = in.readByte();
+            if (version != VERSION) {
+                throw new IllegalArgumentException(String.format("Unsupported snapshot version %s", version));
+            }
+            byte flags = in.readByte();
+            int keyLookupStrategy = in.readByte();
+            if (keyLookupStrategy < 0 || keyLookupStrategy >= JsonMaskingConfig.KeyLookupStrategy.values().length) {
+                throw new IllegalArgumentException("Invalid snapshot");
+            }
+            boolean caseSensitive = (flags & FLAG_CASE_SENSITIVE) != 0;
+            JsonMaskingConfig.Builder builder = JsonMaskingConfig.builder()
+                    .targetKeyMode(
+                            (flags & FLAG_ALLOW_MODE) != 0
+                                    ? JsonMaskingConfig.TargetKeyMode.ALLOW
+                                    : JsonMaskingConfig.TargetKeyMode.MASK)
+                    .keyLookupStrategy(JsonMaskingConfig.KeyLookupStrategy.values()[keyLookupStrategy]);
+            if (caseSensitive) {
+                builder.caseSensitiveTargetKeys();
+            }
+            if ((flags & FLAG_STOP_AFTER_JSON_PATHS_RESOLVED) != 0) {
+                builder.stopAfterJsonPathsResolved();
+            }
+            if ((flags & FLAG_MASK_CARD_NUMBERS) != 0) {
+                builder.maskCardNumbersInStrings();
+            }
+            if ((flags & FLAG_MASK_HIGH_ENTROPY_STRINGS) != 0) {
+                builder.maskHighEntropyStrings();
+            }
+            int secretCount = in.readCount();
+            if (secretCount > 0) {
+                Set<String> secrets = new HashSet<>();
+                for (int i = 0; i < secretCount; i++) {
+                    secrets.add(in.readString());
+                }
+                builder.maskSecretsInStrings(secrets);
+            }
+            int keyMaskingConfigCount = in.readCount();
+            if (keyMaskingConfigCount == 0) {
+                throw new IllegalArgumentException("Invalid snapshot");
+            }
+            // the default config is part of the masking config, as the masker compares the masking configs by identity
+            builder.maskStringsWith(readValueMasker(in, ValueMasker.StringMasker.class, valueMaskers))
+                    .maskNumbersWith(readValueMasker(in, ValueMasker.NumberMasker.class, valueMaskers))
+                    .maskBooleansWith(readValueMasker(in, ValueMasker.BooleanMasker.class, valueMaskers));
+            JsonMaskingConfig maskingConfig = builder.build();
+            in.keyMaskingConfigs.add(maskingConfig.getDefaultConfig());
+            for (int i = 1; i < keyMaskingConfigCount; i++) {
+                in.keyMaskingConfigs.add(KeyMaskingConfig.builder()
+                        .maskStringsWith(readValueMasker(in, ValueMasker.StringMasker.class, valueMaskers))
+                        .maskNumbersWith(readValueMasker(in, ValueMasker.NumberMasker.class, valueMaskers))
+                        .maskBooleansWith(readValueMasker(in, ValueMasker.BooleanMasker.class, valueMaskers))
+                        .build());
+            }
+
+            KeyMatcher.RadixTrieBuilder.TargetKey[] keys = new KeyMatcher.RadixTrieBuilder.TargetKey[in.readCount()];
+            for (int i = 0; i < keys.length; i++) {
+                byte keyFlags = in.readByte();
+                byte[] lowercase = in.readBytes();
+                byte[] uppercase = caseSensitive ? lowercase : in.readBytes();
+                // the linear key lookup compares the lowercase and uppercase variants byte by byte
+                if (uppercase.length != lowercase.length
+                        || (i > 0 && Arrays.compare(keys[i - 1].lowercase, lowercase) >= 0)) {
+                    throw new IllegalArgumentException("Invalid snapshot");
+                }
+                keys[i] = new KeyMatcher.RadixTrieBuilder.TargetKey(
+                        lowercase,
+                        uppercase,
+                        null,
+                        in.readKeyMaskingConfig(),
+                        (keyFlags & FLAG_NEGATIVE_MATCH) != 0);
+            }
+            KeyMatcher.RadixTrieNode root = in.readRadixTrie();
+            JsonPathAutomaton jsonPathAutomaton = in.readBoolean() ? JsonPathAutomaton.readFrom(in) : null;
+            KeyMatcher keyMatcher = new KeyMatcher(maskingConfig, keys, root, jsonPathAutomaton);
+            return new KeyContainsMasker(maskingConfig, keyMatcher);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid snapshot", e);
+        }
+    }
+
+    private static byte settingsFlags(JsonMaskingConfig maskingConfig) {
+        byte flags = 0;
+        if (maskingConfig.isInAllowMode()) {
+            flags |= FLAG_ALLOW_MODE;
+        }
+        if (maskingConfig.caseSensitiveTargetKeys()) {
+            flags |= FLAG_CASE_SENSITIVE;
+        }
+        if (maskingConfig.stopAfterJsonPathsResolved()) {
+            flags |= FLAG_STOP_AFTER_JSON_PATHS_RESOLVED;
+        }
+        if (maskingConfig.maskCardNumbersInStrings()) {
+            flags |= FLAG_MASK_CARD_NUMBERS;
+        }
+        if (maskingConfig.maskHighEntropyStrings()) {
+            flags |= FLAG_MASK_HIGH_ENTROPY_STRINGS;
+        }
+        return flags;
+    }
+
+    private static void writeValueMasker(SnapshotWriter out, ValueMasker valueMasker, Map<ValueMasker, String> names) {
+        String name = names.get(valueMasker);
+        if (name != null) {
+            out.writeByte(BOUND_VALUE_MASKER);
+            out.writeString(name);
+        } else if (valueMasker instanceof DescriptiveValueMasker
+                && ((DescriptiveValueMasker<?>) valueMasker).isBuiltIn()) {
+            out.writeByte(BUILT_IN_VALUE_MASKER);
+            ((DescriptiveValueMasker<?>) valueMasker).writeTo(out);
+        } else {
+            throw new IllegalArgumentException(
+                    String.format("Value masker '%s' must be bound to a name to be exported", valueMasker));
+        }
+    }
+
+    private static <T extends ValueMasker> T readValueMasker(
+            SnapshotReader in, Class<T> type, Map<String, ? extends ValueMasker> valueMaskers) {
+        byte tag = in.readByte();
+        if (tag == BUILT_IN_VALUE_MASKER) {
+            return type.cast(DescriptiveValueMasker.readFrom(in));
+        }
+        if (tag != BOUND_VALUE_MASKER) {
+            throw new IllegalArgumentException("Invalid snapshot");
+        }
+        String name = in.readString();
+        ValueMasker valueMasker = valueMaskers.get(name);
+        if (valueMasker == null) {
+            throw new IllegalArgumentException(String.format("No value masker is bound to '%s'", name));
+        }
+        if (!type.isInstance(valueMasker)) {
+            throw new IllegalArgumentException(
+                    String.format("Value masker '%s' must be a %s", name, type.getSimpleName()));
+        }
+        return type.cast(valueMasker);
+    }
+
+    /**
+     * Writes the snapshot, see {@link #export(JsonMaskingConfig, Map)}. The masking configs and the nodes of the radix
+     * tries are written as indexes into the tables of the snapshot.
+     */
+    static final class SnapshotWriter {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        /** The masking configs by their index, the default config first. */
+        private final List<KeyMaskingConfig> keyMaskingConfigs = new ArrayList<>();
+
+        private final Map<KeyMaskingConfig, Integer> keyMaskingConfigIndexes = new IdentityHashMap<>();
+
+        private SnapshotWriter(KeyMaskingConfig defaultConfig) {
+            keyMaskingConfigs.add(defaultConfig);
+            keyMaskingConfigIndexes.put(defaultConfig, 0);
+        }
+
+        void writeByte(byte value) {
+            bytes.write(value);
+        }
+
+        void writeBoolean(boolean value) {
+            bytes.write(value ? 1 : 0);
+        }
+
+        void writeInt(int value) {
+            bytes.write(value >>> 24);
+            bytes.write(value >>> 16);
+            bytes.write(value >>> 8);
+            bytes.write(value);
+        }
+
+        void writeInts(int[] values) {
+            writeInt(values.length);
+            for (int value : values) {
+                writeInt(value);
+            }
+        }
+
+        void writeBytes(byte[] values) {
+            writeInt(values.length);
+            bytes.write(values, 0, values.length);
+        }
+
+        void writeString(String value) {
+            writeBytes(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /** Writes the index of the masking config, which is added to the masking configs if it's new. */
+        void writeKeyMaskingConfig(@Nullable KeyMaskingConfig keyMaskingConfig) {
+            if (keyMaskingConfig == null) {
+                writeInt(NONE);
+                return;
+            }
+            Integer index = keyMaskingConfigIndexes.get(keyMaskingConfig);
+            if (index == null) {
+                index = keyMaskingConfigs.size();
+                keyMaskingConfigs.add(keyMaskingConfig);
+                keyMaskingConfigIndexes.put(keyMaskingConfig, index);
+            }
+            writeInt(index);
+        }
+
+        /**
+         * Writes the nodes of the radix trie, children before their parents, so that every node refers to its children
+         * by the index of an already written node. As the lowercase and the uppercase children can be the same node,
+         * every node is written only once.
+         */
+        void writeRadixTrie(KeyMatcher.RadixTrieNode root) {
+            List<KeyMatcher.RadixTrieNode> nodes = new ArrayList<>();
+            Map<KeyMatcher.RadixTrieNode, Integer> indexes = new IdentityHashMap<>();
+            collectNodes(root, nodes, indexes);
+            writeInt(nodes.size());
+            for (KeyMatcher.RadixTrieNode node : nodes) {
+                writeBytes(node.prefixLowercase);
+                writeBytes(node.prefixUppercase);
+                writeInt(node.childrenLowercaseArrayOffset);
+                writeChildren(node.childrenLowercase, indexes);
+                writeInt(node.childrenUppercaseArrayOffset);
+                writeChildren(node.childrenUppercase, indexes);
+                writeKeyMaskingConfig(node.keyMaskingConfig);
+                writeBoolean(node.terminalNode);
+                writeBoolean(node.negativeMatch);
+                writeInt(node.keyId);
+            }
+        }
+
+        private static void collectNodes(
+                KeyMatcher.RadixTrieNode node,
+                List<KeyMatcher.RadixTrieNode> nodes,
+                Map<KeyMatcher.RadixTrieNode, Integer> indexes) {
+            if (indexes.containsKey(node)) {
+                return;
+            }
+            for (KeyMatcher.@Nullable RadixTrieNode[] children :
+                    List.of(childrenOf(node.childrenLowercase), childrenOf(node.childrenUppercase))) {
+                for (KeyMatcher.RadixTrieNode child : children) {
+                    if (child != null) {
+                        collectNodes(child, nodes, indexes);
+                    }
+                }
+            }
+            indexes.put(node, nodes.size());
+            nodes.add(node);
+        }
+
+        private void writeChildren(
+                KeyMatcher.@Nullable RadixTrieNode @Nullable [] children,
+                Map<KeyMatcher.RadixTrieNode, Integer> indexes) {
+            KeyMatcher.@Nullable RadixTrieNode[] nonNullChildren = childrenOf(children);
+            writeInt(nonNullChildren.length);
+            for (KeyMatcher.RadixTrieNode child : nonNullChildren) {
+                writeInt(child != null ? indexes.get(child) : NONE);
+            }
+        }
+
+        private static KeyMatcher.@Nullable RadixTrieNode[] childrenOf(
+                KeyMatcher.@Nullable RadixTrieNode @Nullable [] children) {
+            return children != null ? children : KeyMatcher.RadixTrieNode.EMPTY;
+        }
+    }
+
+    /**
+     * Reads the snapshot straight from the buffer, see {@link #load(ByteBuffer, Map)}. Every length and index is
+     * validated, so that an invalid snapshot fails with an {@link IllegalArgumentException} instead of a masker that
+     * fails while masking.
+     */
+    static final class SnapshotReader {
+        private final ByteBuffer buffer;
+        /** The masking configs by their index, the default config first. */
+        private final List<KeyMaskingConfig> keyMaskingConfigs = new ArrayList<>();
+
+        private SnapshotReader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        byte readByte() {
+            return buffer.get();
+        }
+
+        boolean readBoolean() {
+            return buffer.get() != 0;
+        }
+
+        int readInt() {
+            return buffer.getInt();
+        }
+
+        /** Reads a number of elements, each of which takes at least one byte. */
+        int readCount() {
+            int count = buffer.getInt();
+            if (count < 0 || count > buffer.remaining()) {
+                throw new IllegalArgumentException("Invalid snapshot");
+            }
+            return count;
+        }
+
+        int[] readInts() {
+            int length = readCount();
+            int[] values = new int[length];
+            for (int i = 0; i < length; i++) {
+                values[i] = buffer.getInt();
+            }
+            return values;
+        }
+
+        byte[] readBytes() {
+            byte[] values = new byte[readCount()];
+            buffer.get(values);
+            return values;
+        }
+
+        String readString() {
+            return new String(readBytes(), StandardCharsets.UTF_8);
+        }
+
+        @Nullable
+        KeyMaskingConfig readKeyMaskingConfig() {
+            int index = buffer.getInt();
+            if (index == NONE) {
+                return null;
+            }
+            if (index < 0 || index >= keyMaskingConfigs.size()) {
+                throw new IllegalArgumentException("Invalid snapshot");
+            }
+            return keyMaskingConfigs.get(index);
+        }
+
+        /** Reads the nodes of the radix trie written by {@link SnapshotWriter#writeRadixTrie}, returns the root. */
+        KeyMatcher.RadixTrieNode readRadixTrie() {
+            int nodeCount = readCount();
+            if (nodeCount == 0) {
+                throw new IllegalArgumentException("Invalid snapshot");
+            }
+            KeyMatcher.RadixTrieNode[] nodes = new KeyMatcher.RadixTrieNode[nodeCount];
+            for (int i = 0; i < nodeCount; i++) {
+                byte[] prefixLowercase = readBytes();
+                byte[] prefixUppercase = readBytes();
+                if (prefixUppercase.length != prefixLowercase.length) {
+                    throw new IllegalArgumentException("Invalid snapshot");
+                }
+                KeyMatcher.RadixTrieNode node = new KeyMatcher.RadixTrieNode(prefixLowercase, prefixUppercase);
+                node.childrenLowercaseArrayOffset = readInt();
+                node.childrenLowercase = readChildren(nodes, i);
+                node.childrenUppercaseArrayOffset = readInt();
+                node.childrenUppercase = readChildren(nodes, i);
+                node.keyMaskingConfig = readKeyMaskingConfig();
+                node.terminalNode = readBoolean();
+                node.negativeMatch = readBoolean();
+                node.keyId = readInt();
+                nodes[i] = node;
+            }
+            return nodes[nodeCount - 1];
+        }
+
+        /** Reads the children of a node, which must have been read before the node itself. */
+        private KeyMatcher.@Nullable RadixTrieNode[] readChildren(KeyMatcher.RadixTrieNode[] nodes, int nodeIndex) {
+            int length = readCount();
+            if (length == 0) {
+                return KeyMatcher.RadixTrieNode.EMPTY;
+            }
+            KeyMatcher.@Nullable RadixTrieNode[] children = new KeyMatcher.RadixTrieNode[length];
+            for (int i = 0; i < length; i++) {
+                int index = buffer.getInt();
+                if (index < NONE || index >= nodeIndex) {
+                    throw new IllegalArgumentException("Invalid snapshot");
+                }
+                children[i] = index == NONE ? null : nodes[index];
+            }
+            return children;
+        }
+    }
+}
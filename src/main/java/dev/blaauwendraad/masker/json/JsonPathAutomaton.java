@@ -0,0 +1,596 @@
+package dev.blaauwendraad.masker.json;
+
+import dev.blaauwendraad.masker.json.config.JsonMaskingConfig;
+import dev.blaauwendraad.masker.json.config.KeyMaskingConfig;
+import dev.blaauwendraad.masker.json.path.JsonPath;
+import dev.blaauwendraad.masker.json.path.JsonPathParser;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * The JSONPaths of the masking config compiled into an automaton on the level of the JSONPath segments, which is used
+ * by the {@link JsonPathTracker} to match the JSONPaths during masking.
+ *
+ * <p>Every state of the automaton represents the JSONPath segments matched so far, starting from the root state
+ * ({@code $}). A state has the following transitions:
+ *
+ * <ul>
+ *   <li>name transitions, by the id of the JSON key. The names of all JSONPaths are interned into a separate radix
+ *       trie, so that a JSON key is looked up only once per nesting level, regardless of the number of the active
+ *       states, after which every transition is a single array access
+ *   <li>a wildcard transition, which matches any key or array element
+ *   <li>index selector transitions, which match the array elements by the range of their indexes
+ *   <li>a descendant transition, which is taken without matching a key (as soon as the state is reached), into a
+ *       state that has a wildcard transition to itself, so that the name following the descendant segment can be
+ *       matched at any depth
+ * </ul>
+ *
+ * <p>A state in which a JSONPath ends is a terminal state. When a JSON value is matched by several JSONPaths (e.g.
+ * {@code $.*.b} and {@code $.a.b}), the terminal state with the highest precedence wins, see {@link #precedence(int)}.
+ *
+ * <p>The automaton is immutable, all the transitions are stored in arrays indexed by the state.
+ */
+final class JsonPathAutomaton {
+    /** Represents the absence of a state, e.g. a missing transition. */
+    static final int NO_STATE = -1;
+    /** Returned by {@link #keyId} when the JSON key is not a name of any JSONPath. */
+    static final int NO_KEY = -1;
+    /** The state of the root segment ({@code $}). */
+    static final int ROOT_STATE = 0;
+
+    private static final JsonPathParser JSON_PATH_PARSER = new JsonPathParser();
+    private static final int[] NO_TRANSITIONS = new int[0];
+
+    /** The radix trie of the names of all JSONPaths, see {@link KeyMatcher.RadixTrieBuilder#buildKeyIds}. */
+    private final KeyMatcher.RadixTrieNode keys;
+    /**
+     * The name transitions of every state, indexed by the key id minus the {@link #keyTransitionsOffset} of the state.
+     * Like the children of a {@link KeyMatcher.RadixTrieNode}, only the range between the smallest and the largest key
+     * id of the state is stored.
+     */
+    private final int[][] keyTransitions;
+
+    private final int[] keyTransitionsOffset;
+    private final int[] wildcardTransitions;
+    private final int[] descendantTransitions;
+    /**
+     * The index selectors of every state as triples: the first index (inclusive), the last index (exclusive) and the
+     * state after the index selector.
+     */
+    private final int[][] indexSelectors;
+    /** The end (exclusive) of the index selector with the largest range of every state, or {@code 0} if none. */
+    private final int[] indexSelectorsEnd;
+
+    private final boolean[] terminal;
+    /** For the terminal states, whether the JSONPath is not allowed in ALLOW mode, see {@link KeyMatcher}. */
+    private final boolean[] negativeMatch;
+
+    private final @Nullable KeyMaskingConfig[] keyMaskingConfigs;
+    private final int[] precedence;
+    private final int terminalStateCount;
+
+    private JsonPathAutomaton(Builder builder, KeyMatcher.RadixTrieNode keys) {
+        int stateCount = builder.states.size();
+        this.keys = keys;
+        this.keyTransitions = new int[stateCount][];
+        this.keyTransitionsOffset = new int[stateCount];
+        this.wildcardTransitions = new int[stateCount];
+        this.descendantTransitions = new int[stateCount];
+        this.indexSelectors = new int[stateCount][];
+        this.indexSelectorsEnd = new int[stateCount];
+        this.terminal = new boolean[stateCount];
+        this.negativeMatch = new boolean[stateCount];
+        this.keyMaskingConfigs = new KeyMaskingConfig[stateCount];
+        this.precedence = new int[stateCount];
+        List<TargetJsonPath> targets = new ArrayList<>();
+        for (State state : builder.states) {
+            int id = state.id;
+            keyTransitions[id] = NO_TRANSITIONS;
+            if (!state.keys.isEmpty()) {
+                int minKeyId = Integer.MAX_VALUE;
+                int maxKeyId = Integer.MIN_VALUE;
+                for (String key : state.keys.keySet()) {
+                    int keyId = builder.keyId(key);
+                    minKeyId = Math.min(minKeyId, keyId);
+                    maxKeyId = Math.max(maxKeyId, keyId);
+                }
+                int[] transitions = new int[maxKeyId - minKeyId + 1];
+                Arrays.fill(transitions, NO_STATE);
+                for (Map.Entry<String, State> transition : state.keys.entrySet()) {
+                    transitions[builder.keyId(transition.getKey()) - minKeyId] = transition.getValue().id;
+                }
+                keyTransitions[id] = transitions;
+                keyTransitionsOffset[id] = minKeyId;
+            }
+            wildcardTransitions[id] = state.wildcard != null ? state.wildcard.id : NO_STATE;
+            descendantTransitions[id] = state.descendant != null ? state.descendant.id : NO_STATE;
+            int[] selectors = new int[state.indexSelectors.size() * 3];
+            int i = 0;
+            for (Map.Entry<String, State> transition : state.indexSelectors.entrySet()) {
+                String segment = transition.getKey();
+                int colon = segment.indexOf(':');
+                int from = colon < 0
+                        ? Integer.parseInt(segment.substring(1, segment.length() - 1))
+                        : colon == 1 ? 0 : Integer.parseInt(segment.substring(1, colon));
+                int to = colon < 0
+                        ? from + 1
+                        : colon == segment.length() - 2
+                                ? Integer.MAX_VALUE
+                                : Integer.parseInt(segment.substring(colon + 1, segment.length() - 1));
+                selectors[i++] = from;
+                selectors[i++] = to;
+                selectors[i++] = transition.getValue().id;
+                indexSelectorsEnd[id] = Math.max(indexSelectorsEnd[id], to);
+            }
+            indexSelectors[id] = selectors;
+            TargetJsonPath target = state.target;
+            if (target != null) {
+                terminal[id] = true;
+                negativeMatch[id] = target.negativeMatch;
+                keyMaskingConfigs[id] = target.keyMaskingConfig;
+                targets.add(target);
+            }
+        }
+        targets.sort(TargetJsonPath::compareSpecificity);
+        for (int i = 0; i < targets.size(); i++) {
+            precedence[targets.get(i).state] = i + 1;
+        }
+        this.terminalStateCount = targets.size();
+    }
+
+    /** Reads the automaton written by {@link #writeTo(JsonMaskerSnapshot.SnapshotWriter)}. */
+    private JsonPathAutomaton(JsonMaskerSnapshot.SnapshotReader in) {
+        this.keys = in.readRadixTrie();
+        int stateCount = in.readCount();
+        this.keyTransitions = new int[stateCount][];
+        this.keyTransitionsOffset = new int[stateCount];
+        this.wildcardTransitions = new int[stateCount];
+        this.descendantTransitions = new int[stateCount];
+        this.indexSelectors = new int[stateCount][];
+        this.indexSelectorsEnd = new int[stateCount];
+        this.terminal = new boolean[stateCount];
+        this.negativeMatch = new boolean[stateCount];
+        this.keyMaskingConfigs = new KeyMaskingConfig[stateCount];
+        this.precedence = new int[stateCount];
+        int terminalStates = 0;
+        for (int state = 0; state < stateCount; state++) {
+            int[] transitions = in.readInts();
+            for (int transition : transitions) {
+                readState(transition, stateCount);
+            }
+            keyTransitions[state] = transitions.length == 0 ? NO_TRANSITIONS : transitions;
+            keyTransitionsOffset[state] = in.readInt();
+            wildcardTransitions[state] = readState(in.readInt(), stateCount);
+            descendantTransitions[state] = readState(in.readInt(), stateCount);
+            int[] selectors = in.readInts();
+            if (selectors.length % 3 != 0) {
+                throw new IllegalArgumentException("Invalid snapshot");
+            }
+            for (int i = 2; i < selectors.length; i += 3) {
+                readState(selectors[i], stateCount);
+            }
+            indexSelectors[state] = selectors;
+            indexSelectorsEnd[state] = in.readInt();
+            terminal[state] = in.readBoolean();
+            negativeMatch[state] = in.readBoolean();
+            keyMaskingConfigs[state] = in.readKeyMaskingConfig();
+            precedence[state] = in.readInt();
+            if (terminal[state]) {
+                terminalStates++;
+            }
+        }
+        if (stateCount == 0) {
+            throw new IllegalArgumentException("Invalid snapshot");
+        }
+        this.terminalStateCount = terminalStates;
+    }
+
+    /** Validates a transition read from a snapshot. */
+    private static int readState(int state, int stateCount) {
+        if (state < NO_STATE || state >= stateCount) {
+            throw new IllegalArgumentException("Invalid snapshot");
+        }
+        return state;
+    }
+
+    /**
+     * Compiles the JSONPaths of the masking config, i.e. the target JSONPaths and, in allow mode, the JSONPaths having
+     * a specific masking config.
+     *
+     * @return the automaton, or {@code null} if the masking config does not contain any JSONPaths
+     */
+    static @Nullable JsonPathAutomaton forConfig(JsonMaskingConfig maskingConfig) {
+        Builder builder = new Builder(maskingConfig);
+        for (JsonPath jsonPath : maskingConfig.getTargetJsonPaths()) {
+            builder.add(jsonPath, maskingConfig.getKeyConfig(jsonPath.toString()), false);
+        }
+        if (maskingConfig.isInAllowMode()) {
+            for (Map.Entry<String, KeyMaskingConfig> keyConfig :
+                    maskingConfig.getKeyConfigs().entrySet()) {
+                JsonPath jsonPath = parseJsonPathKey(keyConfig.getKey());
+                if (jsonPath != null) {
+                    builder.add(jsonPath, keyConfig.getValue(), true);
+                }
+            }
+        }
+        if (builder.states.size() == 1 && builder.root.target == null) {
+            return null;
+        }
+        builder.assignKeyIds();
+        return new JsonPathAutomaton(builder, KeyMatcher.RadixTrieBuilder.buildKeyIds(maskingConfig, builder.keys));
+    }
+
+    /**
+     * Reads the automaton from a {@link JsonMaskerSnapshot}, without parsing the JSONPaths again.
+     *
+     * @param in the snapshot, positioned at the automaton
+     * @return the automaton
+     * @throws IllegalArgumentException if the snapshot is invalid
+     */
+    static JsonPathAutomaton readFrom(JsonMaskerSnapshot.SnapshotReader in) {
+        return new JsonPathAutomaton(in);
+    }
+
+    /**
+     * Writes the automaton to a {@link JsonMaskerSnapshot}: the radix trie of the names, followed by the transitions
+     * and the terminal state properties of every state.
+     *
+     * @param out the snapshot to write to
+     */
+    void writeTo(JsonMaskerSnapshot.SnapshotWriter out) {
+        out.writeRadixTrie(keys);
+        out.writeInt(terminal.length);
+        for (int state = 0; state < terminal.length; state++) {
+            out.writeInts(keyTransitions[state]);
+            out.writeInt(keyTransitionsOffset[state]);
+            out.writeInt(wildcardTransitions[state]);
+            out.writeInt(descendantTransitions[state]);
+            out.writeInts(indexSelectors[state]);
+            out.writeInt(indexSelectorsEnd[state]);
+            out.writeBoolean(terminal[state]);
+            out.writeBoolean(negativeMatch[state]);
+            out.writeKeyMaskingConfig(keyMaskingConfigs[state]);
+            out.writeInt(precedence[state]);
+        }
+    }
+
+    /**
+     * Returns the JSONPath if the key of a specific masking config is a JSONPath, which is how the JSONPaths with a
+     * specific masking config are stored in allow mode.
+     *
+     * @param key the key of the specific masking config
+     * @return the JSONPath, or {@code null} if the key is a regular key
+     */
+    static @Nullable JsonPath parseJsonPathKey(String key) {
+        return key.startsWith("$") ? JSON_PATH_PARSER.tryParse(key) : null;
+    }
+
+    /**
+     * Looks up the id of the JSON key in the names of the JSONPaths.
+     *
+     * @param bytes the byte array containing the key
+     * @param offset offset of the key in the bytes array
+     * @param length length of the key in the bytes array
+     * @param keyContainsEscapes whether the key contains an escape character ({@code \\})
+     * @param keysPointer a pointer to the root of {@link #keysRoot()}, which is reset after the look-up
+     * @return the key id, or {@link #NO_KEY} if none of the JSONPaths contains the key
+     */
+    int keyId(
+            byte[] bytes,
+            int offset,
+            int length,
+            boolean keyContainsEscapes,
+            KeyMatcher.RadixTriePointer keysPointer) {
+        try {
+            KeyMatcher.RadixTriePointer node =
+                    KeyMatcher.traverseFrom(keysPointer, bytes, offset, length, keyContainsEscapes);
+            return node != null ? node.keyId() : NO_KEY;
+        } finally {
+            keysPointer.reset();
+        }
+    }
+
+    /** Returns the root of the radix trie of the names of all JSONPaths. */
+    KeyMatcher.RadixTrieNode keysRoot() {
+        return keys;
+    }
+
+    /** Returns the state after matching the key with the given id, or {@link #NO_STATE}. */
+    int keyTransition(int state, int keyId) {
+        int index = keyId - keyTransitionsOffset[state];
+        int[] transitions = keyTransitions[state];
+        return index >= 0 && index < transitions.length ? transitions[index] : NO_STATE;
+    }
+
+    /** Returns the state after matching any key or array element, or {@link #NO_STATE}. */
+    int wildcardTransition(int state) {
+        return wildcardTransitions[state];
+    }
+
+    /**
+     * Returns the state after the descendant segment following the state, or {@link #NO_STATE}. The transition is
+     * taken as soon as the state is reached.
+     */
+    int descendantTransition(int state) {
+        return descendantTransitions[state];
+    }
+
+    /**
+     * Returns the index selectors following the state, as triples of the first index (inclusive), the last index
+     * (exclusive) and the state after the index selector. The returned array must not be modified.
+     */
+    int[] indexSelectors(int state) {
+        return indexSelectors[state];
+    }
+
+    /**
+     * Returns the end (exclusive) of the index selector with the largest range following the state, i.e. none of the
+     * elements starting from this index can be matched by an index selector.
+     */
+    int indexSelectorsEnd(int state) {
+        return indexSelectorsEnd[state];
+    }
+
+    /** Returns whether a JSONPath ends in the state, {@code false} for {@link #NO_STATE}. */
+    boolean isTerminal(int state) {
+        return state != NO_STATE && terminal[state];
+    }
+
+    boolean negativeMatch(int state) {
+        return negativeMatch[state];
+    }
+
+    @Nullable
+    KeyMaskingConfig keyMaskingConfig(int state) {
+        return keyMaskingConfigs[state];
+    }
+
+    /**
+     * Returns the precedence of the terminal state over the other terminal states, or {@code 0} for a non-terminal
+     * state. The precedence is unique for every terminal state, the JSONPaths are compared by the specificity of their
+     * segments from the root: the first segment that differs in specificity decides, e.g. {@code $.a.*} takes
+     * precedence over {@code $.*.b} (a name or an index selector is more specific than an array slice selector, which
+     * is more specific than a wildcard, which is more specific than a descendant segment). If all segments are equally
+     * specific, the longer JSONPath takes precedence (e.g. {@code $..a..b} over {@code $..b}), and otherwise the
+     * JSONPath that is greater.
+     */
+    int precedence(int state) {
+        return precedence[state];
+    }
+
+    int stateCount() {
+        return terminal.length;
+    }
+
+    /**
+     * Returns whether every JSONPath matches at most one value, i.e. none of them contains a wildcard, a descendant
+     * segment or an array slice selector spanning more than one index.
+     */
+    boolean matchesAtMostOneValue() {
+        for (int state = 0; state < terminal.length; state++) {
+            if (wildcardTransitions[state] != NO_STATE || descendantTransitions[state] != NO_STATE) {
+                return false;
+            }
+            int[] selectors = indexSelectors[state];
+            for (int i = 0; i < selectors.length; i += 3) {
+                if (selectors[i + 1] - selectors[i] != 1) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    int terminalStateCount() {
+        return terminalStateCount;
+    }
+
+    /**
+     * Invokes the action for every terminal state that can be reached from the given state by matching at least one
+     * more segment.
+     *
+     * @param state the state to start from
+     * @param action the action to invoke for the terminal states
+     */
+    void forEachNestedTerminalState(int state, IntConsumer action) {
+        int[] transitions = keyTransitions[state];
+        for (int transition : transitions) {
+            visitNestedTerminalState(state, transition, action);
+        }
+        visitNestedTerminalState(state, wildcardTransitions[state], action);
+        int[] selectors = indexSelectors[state];
+        for (int i = 2; i < selectors.length; i += 3) {
+            visitNestedTerminalState(state, selectors[i], action);
+        }
+        int descendant = descendantTransitions[state];
+        if (descendant != NO_STATE) {
+            // the descendant state itself is reached without matching a segment, so it is never terminal
+            forEachNestedTerminalState(descendant, action);
+        }
+    }
+
+    private void visitNestedTerminalState(int state, int nestedState, IntConsumer action) {
+        // the descendant states have a wildcard transition to themselves
+        if (nestedState == NO_STATE || nestedState == state) {
+            return;
+        }
+        if (terminal[nestedState]) {
+            action.accept(nestedState);
+        }
+        forEachNestedTerminalState(nestedState, action);
+    }
+
+    /** A JSONPath ending in a state of the automaton. */
+    private static final class TargetJsonPath {
+        /** The state in which the JSONPath ends. */
+        final int state;
+
+        final String key;
+        final byte[] specificity;
+
+        @Nullable
+        final KeyMaskingConfig keyMaskingConfig;
+
+        final boolean negativeMatch;
+
+        TargetJsonPath(
+                int state, JsonPath jsonPath, @Nullable KeyMaskingConfig keyMaskingConfig, boolean negativeMatch) {
+            this.state = state;
+            this.key = jsonPath.toString();
+            this.keyMaskingConfig = keyMaskingConfig;
+            this.negativeMatch = negativeMatch;
+            String[] segments = jsonPath.segments();
+            this.specificity = new byte[segments.length - 1];
+            for (int i = 1; i < segments.length; i++) {
+                String segment = segments[i];
+                if (JsonPath.isDescendantSegment(segment)) {
+                    specificity[i - 1] = 0;
+                } else if (segment.equals("*")) {
+                    specificity[i - 1] = 1;
+                } else if (JsonPath.isIndexSelector(segment) && segment.indexOf(':') >= 0) {
+                    specificity[i - 1] = 2;
+                } else {
+                    specificity[i - 1] = 3;
+                }
+            }
+        }
+
+        /**
+         * Returns whether this JSONPath takes precedence over the other JSONPath ending in the same state, i.e. the
+         * same JSONPath or (when case-insensitive) a JSONPath differing only in casing. Same as
+         * {@link KeyMatcher.RadixTrieBuilder.TargetKey#takesPrecedenceOver}, the negative matches win, then the
+         * JSONPaths with a specific masking config, and otherwise the JSONPath that is greater.
+         */
+        boolean takesPrecedenceOver(TargetJsonPath other) {
+            if (negativeMatch != other.negativeMatch) {
+                return negativeMatch;
+            }
+            if ((keyMaskingConfig == null) != (other.keyMaskingConfig == null)) {
+                return keyMaskingConfig != null;
+            }
+            return key.compareTo(other.key) >= 0;
+        }
+
+        /** Compares the JSONPaths in the ascending order of their precedence, see {@link #precedence(int)}. */
+        int compareSpecificity(TargetJsonPath other) {
+            int result = Arrays.compare(specificity, other.specificity);
+            return result != 0 ? result : key.compareTo(other.key);
+        }
+    }
+
+    /** A state of the automaton while it is being built. */
+    private static final class State {
+        final int id;
+        /** The name transitions by the name, which is lowercase unless the target keys are case-sensitive. */
+        final Map<String, State> keys = new LinkedHashMap<>();
+        /** The index selector transitions by the normalized index selector, e.g. {@code [0]} or {@code [1:3]}. */
+        final Map<String, State> indexSelectors = new LinkedHashMap<>();
+
+        @Nullable
+        State wildcard;
+
+        @Nullable
+        State descendant;
+
+        @Nullable
+        TargetJsonPath target;
+
+        State(int id) {
+            this.id = id;
+        }
+    }
+
+    /** Builds the automaton as a tree of the JSONPath segments, i.e. JSONPaths sharing a prefix share the states. */
+    private static final class Builder {
+        private final boolean caseSensitiveTargetKeys;
+        private final List<State> states = new ArrayList<>();
+        private final State root = newState();
+        /** The names of all JSONPaths in their original casing, by the name as used in {@link State#keys}. */
+        private final Map<String, String> originalKeys = new HashMap<>();
+        /** The names of all JSONPaths (in their original casing) in the order of their key ids. */
+        private final List<String> keys = new ArrayList<>();
+        /** The key ids by the name as used in {@link State#keys}, see {@link #assignKeyIds()}. */
+        private final Map<String, Integer> keyIds = new HashMap<>();
+
+        Builder(JsonMaskingConfig maskingConfig) {
+            this.caseSensitiveTargetKeys = maskingConfig.caseSensitiveTargetKeys();
+        }
+
+        void add(JsonPath jsonPath, @Nullable KeyMaskingConfig keyMaskingConfig, boolean negativeMatch) {
+            State state = root;
+            String[] segments = jsonPath.segments();
+            // the first segment is always the root
+            for (int i = 1; i < segments.length; i++) {
+                String segment = segments[i];
+                if (JsonPath.isDescendantSegment(segment)) {
+                    if (state.descendant == null) {
+                        State descendant = newState();
+                        descendant.wildcard = descendant;
+                        state.descendant = descendant;
+                    }
+                    state = state.descendant;
+                } else if (segment.equals("*")) {
+                    if (state.wildcard == null) {
+                        state.wildcard = newState();
+                    }
+                    state = state.wildcard;
+                } else if (JsonPath.isIndexSelector(segment)) {
+                    state = state.indexSelectors.computeIfAbsent(segment, s -> newState());
+                } else {
+                    String key = caseSensitiveTargetKeys ? segment : segment.toLowerCase();
+                    originalKeys.putIfAbsent(key, segment);
+                    state = state.keys.computeIfAbsent(key, k -> newState());
+                }
+            }
+            TargetJsonPath target = new TargetJsonPath(state.id, jsonPath, keyMaskingConfig, negativeMatch);
+            if (state.target == null || target.takesPrecedenceOver(state.target)) {
+                state.target = target;
+            }
+        }
+
+        /**
+         * Assigns the key ids to the names by visiting the states breadth-first, so that the names of the transitions
+         * of a state mostly get consecutive ids, which keeps the name transitions of the state compact.
+         */
+        void assignKeyIds() {
+            ArrayDeque<State> queue = new ArrayDeque<>();
+            queue.add(root);
+            while (!queue.isEmpty()) {
+                State state = queue.poll();
+                for (Map.Entry<String, State> transition : state.keys.entrySet()) {
+                    String key = transition.getKey();
+                    if (!keyIds.containsKey(key)) {
+                        keyIds.put(key, keys.size());
+                        keys.add(originalKeys.getOrDefault(key, key));
+                    }
+                    queue.add(transition.getValue());
+                }
+                queue.addAll(state.indexSelectors.values());
+                // the descendant states have a wildcard transition to themselves, which is not visited again
+                if (state.wildcard != null && state.wildcard != state) {
+                    queue.add(state.wildcard);
+                }
+                if (state.descendant != null) {
+                    queue.add(state.descendant);
+                }
+            }
+        }
+
+        int keyId(String key) {
+            return keyIds.getOrDefault(key, NO_KEY);
+        }
+
+        private State newState() {
+            State state = new State(states.size());
+            states.add(state);
+            return state;
+        }
+    }
+}
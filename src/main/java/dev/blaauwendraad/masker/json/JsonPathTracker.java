@@ -1,109 +1,279 @@
 package dev.blaauwendraad.masker.json;
 
-import java.util.ArrayDeque;
-import org.jspecify.annotations.Nullable;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
 
-/** Tracks the currently matched JSONPath segments in the radix trie during masking. */
+/**
+ * Tracks the currently matched JSONPath segments in the {@link JsonPathAutomaton} during masking.
+ *
+ * <p>Matching is done like in a nondeterministic finite automaton: for every JSON nesting level the tracker keeps the
+ * set of active states of the automaton, i.e. the JSONPath segments matched so far. A key (or an array element) of the
+ * next nesting level is matched against every active state of the current level to compute the states of the next
+ * level. The key is looked up only once per nesting level, after which the transition of every active state is a
+ * single array access, see {@link JsonPathAutomaton#keyTransition(int, int)}. The number of active states is bounded by
+ * the number of states of the automaton (duplicates are not added), so the cost of the matching stays linear in the
+ * size of the JSON.
+ *
+ * <p>The tracker does not allocate per JSON key or array: the states of all levels are stored in preallocated arrays
+ * that are only grown when the JSON is nested deeper (or more states are active) than their capacity.
+ */
 class JsonPathTracker {
-    /** A node representing {@code null} to satisfy {@link ArrayDeque}, which does not support it. */
-    private static final KeyMatcher.RadixTriePointer NULL_NODE =
-            new KeyMatcher.RadixTriePointer(new KeyMatcher.RadixTrieNode(new byte[0], new byte[0]), 0);
+    private static final int INITIAL_CAPACITY = 16;
 
-    private final KeyMatcher keyMatcher;
+    private final JsonPathAutomaton automaton;
+    /** Pointer used to look up the keys in the names of the JSONPaths, see {@link JsonPathAutomaton#keyId}. */
+    private final KeyMatcher.RadixTriePointer keysPointer;
     /**
-     * Stack of the segments that reflects the JSON nesting level during matching. If the current JSON key has been
-     * matched against the current JSONPath segment, the {@link KeyMatcher.RadixTriePointer} node is added on top of the
-     * stack. If the current JSON key didn't match the current JSONPath segment, the {@link JsonPathTracker#NULL_NODE}
-     * is added instead to keep track of the nesting level.
+     * The active states of all nesting levels, the states of a level are stored after the states of the enclosing
+     * level.
      */
-    private final ArrayDeque<KeyMatcher.RadixTriePointer> jsonPathSegments = new ArrayDeque<>();
-
-    JsonPathTracker(KeyMatcher keyMatcher, KeyMatcher.RadixTriePointer keyMatcherRootNodePointer) {
-        this.keyMatcher = keyMatcher;
-        try {
-            // The first character is always the '$' character, which is essentially skipped here.
-            if (!keyMatcherRootNodePointer.descent((byte) '$')) {
-                throw new IllegalStateException("JSONPath root node is null");
-            }
-            this.jsonPathSegments.push(keyMatcherRootNodePointer.checkpoint());
-        } finally {
-            keyMatcherRootNodePointer.reset();
-        }
-    }
+    private int[] states = new int[INITIAL_CAPACITY];
 
-    /** Expands the current tracked JSONPath with an array segment. */
-    void pushArraySegment() {
-        jsonPathSegments.push(getWildcardNodeOrNullNode());
-    }
+    private int stateCount;
+    /**
+     * Stack of the nesting levels that reflects the JSON nesting during matching, holding the index of the first
+     * active state of each level. A level without active states means that the current JSON key didn't match any
+     * JSONPath.
+     */
+    private int[] levelStarts = new int[INITIAL_CAPACITY];
+    /**
+     * For the array levels matched by the index selectors, the index of the current array element ({@code -1} before
+     * the first element). Not used for the other levels.
+     */
+    private int[] elementIndexes = new int[INITIAL_CAPACITY];
+    /**
+     * For the array levels matched by the index selectors, the end (exclusive) of the index selector with the largest
+     * range, i.e. none of the elements starting from this index can be matched by an index selector. Computed for the
+     * first element.
+     */
+    private int[] elementIndexesEnd = new int[INITIAL_CAPACITY];
+
+    private int size;
+    /** The end (exclusive) of the index selector with the largest range, see {@link #nextArrayElement()}. */
+    private int indexSelectorsEnd;
+    /**
+     * Whether the JSONPath ending in the state was resolved, i.e. can no longer match any value, see
+     * {@link #resolveCurrentSegment()} and {@link #resolveNestedSegments()}. Empty if the resolution is not tracked.
+     */
+    private final boolean[] resolvedStates;
+
+    private int resolvedStatesCount;
+    /** The {@link #resolve(int)} method reference, created once rather than per {@link #resolveNestedSegments()}. */
+    private final IntConsumer resolver = this::resolve;
 
-    /** Expands the current tracked JSONPath with a value segment. */
-    void pushKeyValueSegment(byte[] bytes, int keyOffset, int keyLength) {
-        jsonPathSegments.push(getKeyValueNodeOrNullNode(bytes, keyOffset, keyLength));
+    JsonPathTracker(JsonPathAutomaton automaton) {
+        this(automaton, false);
     }
 
-    /** Backtracks the current tracked JSONPath to the previous segment. */
-    void backtrack() {
-        jsonPathSegments.pop();
+    /**
+     * Creates the tracker, which optionally tracks which JSONPaths were resolved.
+     *
+     * @param automaton the automaton of the JSONPaths
+     * @param resolveJsonPaths whether the resolution of the JSONPaths is tracked, all JSONPaths must match at most one
+     *     value
+     */
+    JsonPathTracker(JsonPathAutomaton automaton, boolean resolveJsonPaths) {
+        this.automaton = automaton;
+        this.keysPointer = new KeyMatcher.RadixTriePointer(automaton.keysRoot(), 0);
+        this.resolvedStates = new boolean[resolveJsonPaths ? automaton.stateCount() : 0];
+        pushLevel();
+        addState(JsonPathAutomaton.ROOT_STATE);
     }
 
     /**
-     * Traverse the trie node when entering an array. In order to match the array it has to be a wildcard.
+     * Expands the current tracked JSONPath with an array segment. In order to match the array it has to be a wildcard,
+     * an index selector or a descendant segment.
      *
      * <p>For example: For a JSON like this {@code { "holder": [ { "maskMe": "secret" } } } the matching JSONPath has to
-     * be {@code '$.holder.*.maskMe'}, so that entering the array requires a wildcard node.
+     * be {@code '$.holder.*.maskMe'}, {@code '$.holder[0].maskMe'} or {@code '$..maskMe'}, so that entering the array
+     * requires a wildcard transition, an index selector or a descendant segment.
+     *
+     * <p>When the array is matched by the index selectors, every element of the array must be preceded by
+     * {@link #nextArrayElement()}, which matches the index of the element against the index selectors.
+     *
+     * @return whether the array elements are matched by the index selectors
+     */
+    boolean pushArraySegment() {
+        int from = levelStarts[size - 1];
+        int to = stateCount;
+        pushLevel();
+        boolean indexed = addArrayElementStates(from, to, -1);
+        if (indexed) {
+            elementIndexes[size - 1] = -1;
+        }
+        return indexed;
+    }
+
+    /**
+     * Moves the current array segment, which must be matched by the index selectors, to the next element. The states
+     * of the element are the ones after the index selectors that contain the index of the element, in addition to the
+     * wildcards and descendant segments that match every element.
+     *
+     * @return whether the element or any of the following elements can be matched
      */
-    private KeyMatcher.RadixTriePointer getWildcardNodeOrNullNode() {
-        var current = currentNode();
-        if (current == null) {
-            return NULL_NODE;
+    boolean nextArrayElement() {
+        int top = size - 1;
+        int elementIndex = ++elementIndexes[top];
+        stateCount = levelStarts[top];
+        indexSelectorsEnd = 0;
+        boolean indexSelectorsPassed = elementIndex > 0 && elementIndex >= elementIndexesEnd[top];
+        addArrayElementStates(levelStarts[top - 1], levelStarts[top], indexSelectorsPassed ? -1 : elementIndex);
+        if (!indexSelectorsPassed) {
+            elementIndexesEnd[top] = indexSelectorsEnd;
         }
-        try {
-            if (!current.descent((byte) '.')) {
-                return NULL_NODE;
+        return elementIndex < elementIndexesEnd[top] || stateCount > levelStarts[top];
+    }
+
+    /**
+     * Adds the states of an array element to the current level, for the states of the enclosing level between the given
+     * indexes.
+     *
+     * @param elementIndex the index of the element to match against the index selectors, or {@code -1} to only add the
+     *     states matching every element
+     * @return whether any of the states of the enclosing level is followed by the index selectors
+     */
+    private boolean addArrayElementStates(int from, int to, int elementIndex) {
+        boolean indexed = false;
+        for (int i = from; i < to; i++) {
+            int state = states[i];
+            addState(automaton.wildcardTransition(state));
+            int[] indexSelectors = automaton.indexSelectors(state);
+            if (indexSelectors.length == 0) {
+                continue;
             }
-            if (current.isJsonPathWildcard()) {
-                current.descent((byte) '*');
-                return current.checkpoint();
+            indexed = true;
+            if (elementIndex >= 0) {
+                indexSelectorsEnd = Math.max(indexSelectorsEnd, automaton.indexSelectorsEnd(state));
+                for (int j = 0; j < indexSelectors.length; j += 3) {
+                    if (indexSelectors[j] <= elementIndex && elementIndex < indexSelectors[j + 1]) {
+                        addState(indexSelectors[j + 2]);
+                    }
+                }
             }
-            return NULL_NODE;
-        } finally {
-            current.reset();
         }
+        return indexed;
     }
 
     /**
-     * Traverse the trie node when entering a key-value. The matching can be done for the matching key, or through a
-     * wildcard ('*') JSONPath.
+     * Expands the current tracked JSONPath with a value segment. The matching can be done for the matching key, or
+     * through a wildcard ('*') JSONPath, or for the key following a descendant segment.
      */
-    private KeyMatcher.RadixTriePointer getKeyValueNodeOrNullNode(byte[] bytes, int keyOffset, int keyLength) {
-        var current = currentNode();
-        if (current == null) {
-            return NULL_NODE;
+    void pushKeyValueSegment(byte[] bytes, int keyOffset, int keyLength, boolean keyContainsEscapes) {
+        int from = levelStarts[size - 1];
+        int to = stateCount;
+        pushLevel();
+        if (from == to) {
+            // none of the JSONPaths can match the nested keys, so the key does not need to be looked up
+            return;
         }
-        try {
-            if (!current.descent((byte) '.')) {
-                return NULL_NODE;
+        int keyId = keyLength >= 0
+                ? automaton.keyId(bytes, keyOffset, keyLength, keyContainsEscapes, keysPointer)
+                : JsonPathAutomaton.NO_KEY;
+        for (int i = from; i < to; i++) {
+            int state = states[i];
+            addState(automaton.wildcardTransition(state));
+            if (keyId != JsonPathAutomaton.NO_KEY) {
+                addState(automaton.keyTransition(state, keyId));
             }
-            if (current.isJsonPathWildcard()) {
-                current.descent((byte) '*');
-                return current.checkpoint();
-            } else {
-                var child = keyMatcher.traverseFrom(current, bytes, keyOffset, keyLength);
-                if (child != null) {
-                    return child.checkpoint();
-                }
+        }
+    }
+
+    /**
+     * Adds the state to the current level, unless it is absent or already active. If the state is followed by a
+     * descendant segment (e.g. {@code $.a..b} after matching {@code a}), the state after the descendant segment is
+     * added as well.
+     */
+    private void addState(int state) {
+        if (state == JsonPathAutomaton.NO_STATE) {
+            return;
+        }
+        for (int i = levelStarts[size - 1]; i < stateCount; i++) {
+            if (states[i] == state) {
+                return;
+            }
+        }
+        if (stateCount == states.length) {
+            states = Arrays.copyOf(states, stateCount * 2);
+        }
+        states[stateCount++] = state;
+        addState(automaton.descendantTransition(state));
+    }
+
+    /**
+     * Marks the JSONPaths ending at the current segment (if any) as resolved, which must only be called after its value
+     * has been masked. Assuming the JSONPaths match at most one value, the JSONPath can no longer match.
+     *
+     * @return whether all JSONPaths have been resolved
+     */
+    boolean resolveCurrentSegment() {
+        for (int i = levelStarts[size - 1]; i < stateCount; i++) {
+            if (automaton.isTerminal(states[i])) {
+                resolve(states[i]);
+            }
+        }
+        return allJsonPathsResolved();
+    }
+
+    /**
+     * Marks all JSONPaths nested under the current segment as resolved, which must only be called when the object of
+     * the current segment has been closed. Assuming the JSONPaths match at most one value, the object cannot appear
+     * again, so none of the nested JSONPaths can match anymore.
+     *
+     * @return whether all JSONPaths have been resolved
+     */
+    boolean resolveNestedSegments() {
+        for (int i = levelStarts[size - 1]; i < stateCount; i++) {
+            automaton.forEachNestedTerminalState(states[i], resolver);
+        }
+        return allJsonPathsResolved();
+    }
+
+    private boolean allJsonPathsResolved() {
+        return resolvedStatesCount == automaton.terminalStateCount();
+    }
+
+    private void resolve(int terminalState) {
+        if (!resolvedStates[terminalState]) {
+            resolvedStates[terminalState] = true;
+            resolvedStatesCount++;
+        }
+    }
+
+    /** Backtracks the current tracked JSONPath to the previous segment. */
+    void backtrack() {
+        stateCount = levelStarts[--size];
+    }
+
+    /**
+     * Returns the state of the current segment, or {@link JsonPathAutomaton#NO_STATE} if the current JSON key didn't
+     * match any JSONPath. If a JSONPath ends at the current segment, the state is the terminal state of that JSONPath.
+     * When several JSONPaths end at the current segment (e.g. {@code $.*.b} and {@code $.a.b}), the state is the one
+     * with the highest precedence, see {@link JsonPathAutomaton#precedence(int)}.
+     */
+    int currentState() {
+        if (size == 0) {
+            // backtracked from the root
+            return JsonPathAutomaton.NO_STATE;
+        }
+        int from = levelStarts[size - 1];
+        if (from == stateCount) {
+            return JsonPathAutomaton.NO_STATE;
+        }
+        int current = states[from];
+        for (int i = from + 1; i < stateCount; i++) {
+            if (automaton.precedence(states[i]) > automaton.precedence(current)) {
+                current = states[i];
             }
-            return NULL_NODE;
-        } finally {
-            current.reset();
         }
+        return current;
     }
 
-    KeyMatcher.@Nullable RadixTriePointer currentNode() {
-        var peek = jsonPathSegments.peek();
-        if (peek == NULL_NODE) {
-            return null;
+    private void pushLevel() {
+        if (size == levelStarts.length) {
+            levelStarts = Arrays.copyOf(levelStarts, size * 2);
+            elementIndexes = Arrays.copyOf(elementIndexes, size * 2);
+            elementIndexesEnd = Arrays.copyOf(elementIndexesEnd, size * 2);
         }
-        return peek;
+        levelStarts[size++] = stateCount;
     }
 }
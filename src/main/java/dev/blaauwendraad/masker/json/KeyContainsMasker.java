@@ -14,6 +14,44 @@ final class KeyContainsMasker implements JsonMasker {
     private final KeyMatcher keyMatcher;
     /** The masking configuration for the JSON masking process. Package private for unit tests. */
     final JsonMaskingConfig maskingConfig;
+    /** Whether the target keys are allowed rather than masked, see {@link JsonMaskingConfig#isInAllowMode()}. */
+    private final boolean allowMode;
+    /**
+     * Whether only keys are targeted in mask mode, which is the most common configuration. The values are then masked
+     * by the specialized {@link #visitValueByKey(MaskingState, KeyMaskingConfig)}, which doesn't need to check for the
+     * JSONPaths or the allow mode on every key and value.
+     */
+    private final boolean keysOnlyMaskMode;
+    /**
+     * Whether only JSONPaths are targeted in mask mode, so the values that are not on any of the JSONPaths can never be
+     * masked, see {@link #isOutsideOfJsonPaths(JsonPathTracker, KeyMaskingConfig)}.
+     */
+    private final boolean onlyJsonPathsMasked;
+    /**
+     * Whether the masking stops early once all JSONPaths have been resolved, see
+     * {@link JsonMaskingConfig.Builder#stopAfterJsonPathsResolved()}.
+     */
+    private final boolean resolveJsonPaths;
+    /**
+     * Whether the card numbers in the string values that are not masked otherwise are masked, see
+     * {@link JsonMaskingConfig.Builder#maskCardNumbersInStrings()}.
+     */
+    private final boolean maskCardNumbers;
+    /**
+     * The scanner of the known secrets in the string values that are not masked otherwise, see
+     * {@link JsonMaskingConfig.Builder#maskSecretsInStrings(java.util.Set)}, or {@code null} if no secrets are masked.
+     */
+    private final @Nullable SecretScanner secretScanner;
+    /**
+     * Whether the string values that are not masked otherwise are masked if they look like credentials, see
+     * {@link JsonMaskingConfig.Builder#maskHighEntropyStrings()}.
+     */
+    private final boolean maskHighEntropyStrings;
+    /**
+     * Whether the string values that are not masked otherwise are scanned, for high-entropy tokens, card numbers or
+     * secrets.
+     */
+    private final boolean scanStringValues;
 
     /**
      * Creates an instance of an {@link KeyContainsMasker}
@@ -21,8 +59,39 @@ final class KeyContainsMasker implements JsonMasker {
      * @param maskingConfig the {@link JsonMaskingConfig} for the created masker
      */
     KeyContainsMasker(JsonMaskingConfig maskingConfig) {
+        this(maskingConfig, new KeyMatcher(maskingConfig));
+    }
+
+    /**
+     * Creates an instance of an {@link KeyContainsMasker} with an already created {@link KeyMatcher}, e.g. loaded from
+     * a {@link JsonMaskerSnapshot}
+     *
+     * @param maskingConfig the {@link JsonMaskingConfig} for the created masker
+     * @param keyMatcher the {@link KeyMatcher} for the target keys and JSONPaths, which are not necessarily part of the
+     *     masking config
+     */
+    KeyContainsMasker(JsonMaskingConfig maskingConfig, KeyMatcher keyMatcher) {
         this.maskingConfig = maskingConfig;
-        this.keyMatcher = new KeyMatcher(maskingConfig);
+        this.keyMatcher = keyMatcher;
+        this.allowMode = maskingConfig.isInAllowMode();
+        this.keysOnlyMaskMode = !allowMode && keyMatcher.getJsonPathAutomaton() == null;
+        this.maskCardNumbers = maskingConfig.maskCardNumbersInStrings();
+        this.secretScanner = maskingConfig.getSecretsInStrings().isEmpty()
+                ? null
+                : new SecretScanner(maskingConfig.getSecretsInStrings());
+        this.maskHighEntropyStrings = maskingConfig.maskHighEntropyStrings();
+        this.scanStringValues = maskCardNumbers || secretScanner != null || maskHighEntropyStrings;
+        // the target keys and JSONPaths are taken from the key matcher, as the masking config of a masker loaded from
+        // a snapshot doesn't contain them
+        JsonPathAutomaton jsonPathAutomaton = keyMatcher.getJsonPathAutomaton();
+        // the values outside the JSONPaths can't be stepped over when they are scanned
+        this.onlyJsonPathsMasked =
+                !allowMode && !scanStringValues && !keyMatcher.hasTargetKeys() && jsonPathAutomaton != null;
+        // a JSONPath with wildcards or array slices can match any number of values, so it is never resolved
+        this.resolveJsonPaths = onlyJsonPathsMasked
+                && jsonPathAutomaton != null
+                && maskingConfig.stopAfterJsonPathsResolved()
+                && jsonPathAutomaton.matchesAtMostOneValue();
     }
 
     /**
@@ -35,7 +104,7 @@ final class KeyContainsMasker implements JsonMasker {
      */
     @Override
     public byte[] mask(byte[] input) {
-        var pointer = new KeyMatcher.RadixTriePointer(keyMatcher.getRootNode(), 0);
+        var pointer = keyMatcher.newRootNodePointer();
         MaskingState maskingState = new MaskingState(input, pointer);
         mask(maskingState);
         return maskingState.flushReplacementOperations();
@@ -51,7 +120,7 @@ final class KeyContainsMasker implements JsonMasker {
      */
     @Override
     public void mask(InputStream inputStream, OutputStream outputStream) {
-        var pointer = new KeyMatcher.RadixTriePointer(keyMatcher.getRootNode(), 0);
+        var pointer = keyMatcher.newRootNodePointer();
         var maskingState = new BufferedMaskingState(inputStream, outputStream, maskingConfig.bufferSize(), pointer);
         mask(maskingState);
         maskingState.flushCurrentBuffer();
@@ -59,14 +128,24 @@ final class KeyContainsMasker implements JsonMasker {
 
     private void mask(MaskingState maskingState) {
         try {
-            KeyMaskingConfig keyMaskingConfig = maskingConfig.isInAllowMode() ? maskingConfig.getDefaultConfig() : null;
+            if (keysOnlyMaskMode) {
+                while (!maskingState.endOfJson()) {
+                    stepOverWhitespaceCharacters(maskingState);
+                    if (!visitValueByKey(maskingState, null)) {
+                        maskingState.next();
+                    }
+                }
+                return;
+            }
+            KeyMaskingConfig keyMaskingConfig = allowMode ? maskingConfig.getDefaultConfig() : null;
 
             JsonPathTracker jsonPathTracker;
-            if (!maskingConfig.getTargetJsonPaths().isEmpty()) {
+            JsonPathAutomaton jsonPathAutomaton = keyMatcher.getJsonPathAutomaton();
+            if (jsonPathAutomaton != null) {
                 var pointer = maskingState.getKeyMatcherRootNodePointer();
-                jsonPathTracker = new JsonPathTracker(keyMatcher, pointer);
+                jsonPathTracker = new JsonPathTracker(jsonPathAutomaton, resolveJsonPaths);
                 keyMaskingConfig = keyMatcher.getMaskConfigIfMatched(
-                        maskingState.getMessage(), -1, -1, pointer, jsonPathTracker.currentNode());
+                        maskingState.getMessage(), -1, -1, false, pointer, jsonPathTracker.currentState());
             } else {
                 jsonPathTracker = null;
             }
@@ -106,6 +185,24 @@ final class KeyContainsMasker implements JsonMasker {
             case '{':
                 visitObject(maskingState, jsonPathTracker, keyMaskingConfig);
                 break;
+            default:
+                return visitPrimitiveValue(maskingState, keyMaskingConfig);
+        }
+        return true;
+    }
+
+    /**
+     * Visits a primitive value (number, string, boolean or null) and masks it according to the
+     * {@link KeyMaskingConfig}, shared by {@link #visitValue(MaskingState, JsonPathTracker, KeyMaskingConfig)} and
+     * {@link #visitValueByKey(MaskingState, KeyMaskingConfig)}.
+     *
+     * @param maskingState the current masking state
+     * @param keyMaskingConfig if not null it means that the current value is being masked otherwise the value is not
+     *     being masked
+     * @return whether a value was found, if returned false the calling code must advance to avoid infinite loops
+     */
+    private boolean visitPrimitiveValue(MaskingState maskingState, @Nullable KeyMaskingConfig keyMaskingConfig) {
+        switch (maskingState.byteAtCurrentIndex()) {
             case '-':
             case '0':
             case '1':
@@ -126,6 +223,8 @@ final class KeyContainsMasker implements JsonMasker {
             case '"':
                 if (keyMaskingConfig != null) {
                     maskString(maskingState, keyMaskingConfig);
+                } else if (scanStringValues) {
+                    scanStringValue(maskingState);
                 } else {
                     stepOverStringValue(maskingState);
                 }
@@ -153,10 +252,121 @@ final class KeyContainsMasker implements JsonMasker {
         return true;
     }
 
+    /**
+     * Specialized version of {@link #visitValue(MaskingState, JsonPathTracker, KeyMaskingConfig)} for the keys-only
+     * mask mode, see {@link #keysOnlyMaskMode}. Apart from not tracking JSONPaths and allowed keys, it behaves exactly
+     * the same.
+     *
+     * @param maskingState the current masking state
+     * @param keyMaskingConfig if not null it means that the current value is being masked otherwise the value is not
+     *     being masked
+     * @return whether a value was found, if returned false the calling code must advance to avoid infinite loops
+     */
+    private boolean visitValueByKey(MaskingState maskingState, @Nullable KeyMaskingConfig keyMaskingConfig) {
+        if (maskingState.endOfJson()) {
+            return true;
+        }
+        switch (maskingState.byteAtCurrentIndex()) {
+            case '[':
+                visitArrayByKey(maskingState, keyMaskingConfig);
+                break;
+            case '{':
+                visitObjectByKey(maskingState, keyMaskingConfig);
+                break;
+            default:
+                return visitPrimitiveValue(maskingState, keyMaskingConfig);
+        }
+        return true;
+    }
+
+    /**
+     * Visits an array in the keys-only mask mode and invokes {@link #visitValueByKey(MaskingState, KeyMaskingConfig)}
+     * on each element while propagating the {@link KeyMaskingConfig}.
+     *
+     * @param maskingState the current {@link MaskingState}
+     * @param keyMaskingConfig if not {@code null}, it means that the current value is being masked according to the
+     *     {@link KeyMaskingConfig}. Otherwise, the value is not masked
+     */
+    private void visitArrayByKey(MaskingState maskingState, @Nullable KeyMaskingConfig keyMaskingConfig) {
+        while (maskingState.next()) {
+            stepOverWhitespaceCharacters(maskingState);
+            // check if we're in an empty array
+            if (maskingState.byteAtCurrentIndex() == ']') {
+                break;
+            }
+
+            visitValueByKey(maskingState, keyMaskingConfig);
+
+            stepOverWhitespaceCharacters(maskingState);
+            // check if we're at the end of a (non-empty) array
+            if (maskingState.endOfJson() || maskingState.byteAtCurrentIndex() == ']') {
+                break;
+            }
+        }
+        maskingState.next(); // step over array closing square bracket
+    }
+
+    /**
+     * Visits an object in the keys-only mask mode, see {@link #visitObject(MaskingState, JsonPathTracker,
+     * KeyMaskingConfig)}. A value is masked with the config of its key if the key is targeted, or else with the config
+     * of the enclosing object if that is being masked.
+     *
+     * @param maskingState the current {@link MaskingState}
+     * @param parentKeyMaskingConfig if not null it means that the current value is being masked according to the
+     *     {@link KeyMaskingConfig}. Otherwise, the value is not being masked
+     */
+    private void visitObjectByKey(MaskingState maskingState, @Nullable KeyMaskingConfig parentKeyMaskingConfig) {
+        while (maskingState.next()) {
+            stepOverWhitespaceCharacters(maskingState);
+            // check if we're in an empty object
+            if (maskingState.byteAtCurrentIndex() == '}') {
+                break;
+            }
+            maskingState.registerTokenStartIndex();
+
+            boolean keyContainsEscapes = stepOverStringValue(maskingState);
+
+            int keyStartIndex = maskingState.getCurrentTokenStartIndex() + 1; // plus the opening quote
+            int keyLength = maskingState.currentIndex() - keyStartIndex - 1; // minus the closing quote
+            KeyMaskingConfig keyMaskingConfig = keyMatcher.getMaskConfigIfMatched(
+                    maskingState.getMessage(),
+                    keyStartIndex,
+                    keyLength,
+                    keyContainsEscapes,
+                    maskingState.getKeyMatcherRootNodePointer(),
+                    JsonPathAutomaton.NO_STATE);
+
+            maskingState.clearTokenStartIndex();
+            stepOverWhitespaceCharacters(maskingState);
+            // step over the colon ':'
+            maskingState.next();
+            stepOverWhitespaceCharacters(maskingState);
+
+            // fall back to the config of the enclosing object, unless the key has a specific config
+            if (parentKeyMaskingConfig != null
+                    && (keyMaskingConfig == null || keyMaskingConfig == maskingConfig.getDefaultConfig())) {
+                keyMaskingConfig = parentKeyMaskingConfig;
+            }
+            visitValueByKey(maskingState, keyMaskingConfig);
+
+            stepOverWhitespaceCharacters(maskingState);
+            // check if we're at the end of a (non-empty) object
+            if (maskingState.endOfJson() || maskingState.byteAtCurrentIndex() == '}') {
+                break;
+            }
+        }
+        // step over closing curly bracket ending the object
+        maskingState.next();
+    }
+
     /**
      * Visits an array of unknown values (or empty) and invokes {@link #visitValue(MaskingState, JsonPathTracker,
      * KeyMaskingConfig)} on each element while propagating the {@link KeyMaskingConfig}.
      *
+     * <p>When the array is matched by the JSONPath index selectors, the masking config is determined for every element
+     * by its index, like it is for the values of an object by their keys. Once none of the remaining elements can be
+     * matched and only JSONPaths are masked, the remaining elements are stepped over without visiting them.
+     *
      * @param maskingState the current {@link MaskingState}
      * @param jsonPathTracker the current {@link JsonPathTracker}
      * @param keyMaskingConfig if not {@code null}, it means that the current value is being masked according to the
@@ -166,9 +376,11 @@ final class KeyContainsMasker implements JsonMasker {
             MaskingState maskingState,
             @Nullable JsonPathTracker jsonPathTracker,
             @Nullable KeyMaskingConfig keyMaskingConfig) {
-        if (jsonPathTracker != null) {
-            jsonPathTracker.pushArraySegment();
+        if (isOutsideOfJsonPaths(jsonPathTracker, keyMaskingConfig)) {
+            stepOverArray(maskingState);
+            return;
         }
+        boolean indexedArray = jsonPathTracker != null && jsonPathTracker.pushArraySegment();
         while (maskingState.next()) {
             stepOverWhitespaceCharacters(maskingState);
             // check if we're in an empty array
@@ -176,7 +388,15 @@ final class KeyContainsMasker implements JsonMasker {
                 break;
             }
 
-            visitValue(maskingState, jsonPathTracker, keyMaskingConfig);
+            if (indexedArray && jsonPathTracker != null) {
+                if (!jsonPathTracker.nextArrayElement() && onlyJsonPathsMasked && keyMaskingConfig == null) {
+                    stepOverArrayRemainder(maskingState);
+                    break;
+                }
+                visitArrayElement(maskingState, jsonPathTracker, keyMaskingConfig);
+            } else {
+                visitValue(maskingState, jsonPathTracker, keyMaskingConfig);
+            }
 
             stepOverWhitespaceCharacters(maskingState);
             // check if we're at the end of a (non-empty) array
@@ -190,6 +410,41 @@ final class KeyContainsMasker implements JsonMasker {
         }
     }
 
+    /**
+     * Visits an element of an array that is matched by the JSONPath index selectors, after the element has been matched
+     * using {@link JsonPathTracker#nextArrayElement()}. The element is masked if it is matched by an index selector
+     * (or allowed in allow mode), otherwise it falls back to the masking config of the array.
+     *
+     * @param maskingState the current {@link MaskingState}
+     * @param jsonPathTracker the current {@link JsonPathTracker}
+     * @param arrayKeyMaskingConfig if not {@code null}, it means that the array is being masked according to the
+     *     {@link KeyMaskingConfig}. Otherwise, the array is not masked
+     */
+    private void visitArrayElement(
+            MaskingState maskingState,
+            JsonPathTracker jsonPathTracker,
+            @Nullable KeyMaskingConfig arrayKeyMaskingConfig) {
+        KeyMaskingConfig keyMaskingConfig = keyMatcher.getMaskConfigIfMatched(
+                maskingState.getMessage(),
+                -1,
+                -1,
+                false,
+                maskingState.getKeyMatcherRootNodePointer(),
+                jsonPathTracker.currentState());
+        if (allowMode && keyMaskingConfig == null) {
+            stepOverAllowedValue(maskingState);
+            return;
+        }
+        if (arrayKeyMaskingConfig != null
+                && (keyMaskingConfig == null || keyMaskingConfig == maskingConfig.getDefaultConfig())) {
+            keyMaskingConfig = arrayKeyMaskingConfig;
+        }
+        visitValue(maskingState, jsonPathTracker, keyMaskingConfig);
+        if (resolveJsonPaths && jsonPathTracker.resolveCurrentSegment()) {
+            maskingState.skipRemainder();
+        }
+    }
+
     /**
      * Visits an object, iterates over the keys and checks whether key needs to be masked (if
      * {@link JsonMaskingConfig.TargetKeyMode#MASK}) or allowed (if {@link JsonMaskingConfig.TargetKeyMode#ALLOW}). For
@@ -208,6 +463,10 @@ final class KeyContainsMasker implements JsonMasker {
             MaskingState maskingState,
             @Nullable JsonPathTracker jsonPathTracker,
             @Nullable KeyMaskingConfig parentKeyMaskingConfig) {
+        if (isOutsideOfJsonPaths(jsonPathTracker, parentKeyMaskingConfig)) {
+            stepOverObject(maskingState);
+            return;
+        }
         while (maskingState.next()) {
             stepOverWhitespaceCharacters(maskingState);
             // check if we're in an empty object
@@ -217,19 +476,30 @@ final class KeyContainsMasker implements JsonMasker {
             // In case target keys should be considered as allow list, we need to NOT mask certain keys
             maskingState.registerTokenStartIndex();
 
-            stepOverStringValue(maskingState);
+            boolean keyContainsEscapes = stepOverStringValue(maskingState);
 
             int keyStartIndex = maskingState.getCurrentTokenStartIndex() + 1; // plus the opening quote
             int keyLength = maskingState.currentIndex() - keyStartIndex - 1; // minus the closing quote
             var pointer = maskingState.getKeyMatcherRootNodePointer();
             KeyMaskingConfig keyMaskingConfig;
             if (jsonPathTracker != null) {
-                jsonPathTracker.pushKeyValueSegment(maskingState.getMessage(), keyStartIndex, keyLength);
+                jsonPathTracker.pushKeyValueSegment(
+                        maskingState.getMessage(), keyStartIndex, keyLength, keyContainsEscapes);
                 keyMaskingConfig = keyMatcher.getMaskConfigIfMatched(
-                        maskingState.getMessage(), keyStartIndex, keyLength, pointer, jsonPathTracker.currentNode());
+                        maskingState.getMessage(),
+                        keyStartIndex,
+                        keyLength,
+                        keyContainsEscapes,
+                        pointer,
+                        jsonPathTracker.currentState());
             } else {
                 keyMaskingConfig = keyMatcher.getMaskConfigIfMatched(
-                        maskingState.getMessage(), keyStartIndex, keyLength, pointer, null);
+                        maskingState.getMessage(),
+                        keyStartIndex,
+                        keyLength,
+                        keyContainsEscapes,
+                        pointer,
+                        JsonPathAutomaton.NO_STATE);
             }
 
             maskingState.clearTokenStartIndex();
@@ -240,9 +510,9 @@ final class KeyContainsMasker implements JsonMasker {
 
             // if we're in the allow mode, then getting a null as config, means that the key has been explicitly
             // allowed and must not be masked, even if enclosing object is being masked
-            boolean valueAllowed = maskingConfig.isInAllowMode() && keyMaskingConfig == null;
+            boolean valueAllowed = allowMode && keyMaskingConfig == null;
             if (valueAllowed) {
-                stepOverValue(maskingState);
+                stepOverAllowedValue(maskingState);
             } else {
                 // this is where it might get confusing - this method is called when the whole object is being masked
                 // if we got a maskingConfig for the key - we need to mask this key with that config. However, if the
@@ -257,6 +527,9 @@ final class KeyContainsMasker implements JsonMasker {
                 visitValue(maskingState, jsonPathTracker, keyMaskingConfig);
             }
             if (jsonPathTracker != null) {
+                if (resolveJsonPaths && jsonPathTracker.resolveCurrentSegment()) {
+                    maskingState.skipRemainder();
+                }
                 jsonPathTracker.backtrack();
             }
 
@@ -268,6 +541,25 @@ final class KeyContainsMasker implements JsonMasker {
         }
         // step over closing curly bracket ending the object
         maskingState.next();
+        if (resolveJsonPaths && jsonPathTracker != null && jsonPathTracker.resolveNestedSegments()) {
+            maskingState.skipRemainder();
+        }
+    }
+
+    /**
+     * Returns whether the current value (which is not being masked) is outside all target JSONPaths, while only the
+     * JSONPaths are targeted in mask mode. In that case none of the nested values can ever be masked, so the whole
+     * object or array can be stepped over without looking up any of the nested keys.
+     *
+     * @param jsonPathTracker the current {@link JsonPathTracker}
+     * @param keyMaskingConfig if not {@code null}, the current value is being masked
+     */
+    private boolean isOutsideOfJsonPaths(
+            @Nullable JsonPathTracker jsonPathTracker, @Nullable KeyMaskingConfig keyMaskingConfig) {
+        return onlyJsonPathsMasked
+                && keyMaskingConfig == null
+                && jsonPathTracker != null
+                && jsonPathTracker.currentState() == JsonPathAutomaton.NO_STATE;
     }
 
     /**
@@ -285,7 +577,7 @@ final class KeyContainsMasker implements JsonMasker {
         maskingState.registerTokenStartIndex();
         stepOverStringValue(maskingState);
 
-        keyMaskingConfig.getStringValueMasker().maskValue(maskingState);
+        maskValue(keyMaskingConfig.getStringValueMasker(), maskingState);
 
         maskingState.clearTokenStartIndex();
     }
@@ -306,7 +598,7 @@ final class KeyContainsMasker implements JsonMasker {
         maskingState.registerTokenStartIndex();
         stepOverNumericValue(maskingState);
 
-        keyMaskingConfig.getNumberValueMasker().maskValue(maskingState);
+        maskValue(keyMaskingConfig.getNumberValueMasker(), maskingState);
 
         maskingState.clearTokenStartIndex();
     }
@@ -323,11 +615,137 @@ final class KeyContainsMasker implements JsonMasker {
         maskingState.registerTokenStartIndex();
         maskingState.incrementIndex(AsciiCharacter.isLowercaseT(maskingState.byteAtCurrentIndex()) ? 4 : 5);
 
-        keyMaskingConfig.getBooleanValueMasker().maskValue(maskingState);
+        maskValue(keyMaskingConfig.getBooleanValueMasker(), maskingState);
 
         maskingState.clearTokenStartIndex();
     }
 
+    /**
+     * Steps over the string value in the message of the {@link MaskingState}, like
+     * {@link #stepOverStringValue(MaskingState)}, and masks it as a whole if it is a high-entropy token, or else the
+     * secrets and card numbers in it, see {@link HighEntropyDetector}, {@link SecretScanner} and
+     * {@link CardNumberScanner}.
+     *
+     * @param maskingState the current {@link MaskingState} for which the current index must correspond to the opening
+     *     quote of the string value in the input array
+     */
+    private void scanStringValue(MaskingState maskingState) {
+        // the string value must be kept in the (Streaming API) buffer until it has been scanned
+        maskingState.registerTokenStartIndex();
+        stepOverStringValue(maskingState);
+        int contentStartIndex = maskingState.getCurrentTokenStartIndex() + 1; // plus the opening quote
+        int contentEndIndex = maskingState.currentIndex() - 1; // minus the closing quote
+        if (maskHighEntropyStrings
+                && HighEntropyDetector.isHighEntropyToken(maskingState, contentStartIndex, contentEndIndex)) {
+            maskValue(maskingConfig.getDefaultConfig().getStringValueMasker(), maskingState);
+        } else if (secretScanner != null) {
+            secretScanner.maskSecrets(maskingState, contentStartIndex, contentEndIndex, maskCardNumbers);
+        } else if (maskCardNumbers) {
+            CardNumberScanner.maskCardNumbers(maskingState, contentStartIndex, contentEndIndex);
+        }
+        maskingState.clearTokenStartIndex();
+    }
+
+    /**
+     * Steps over the value of an allowed key (in allow mode). If {@link #scanStringValues} is set, the value is scanned
+     * if it's a string value, or else all string values nested in it if it's an object or an array.
+     */
+    private void stepOverAllowedValue(MaskingState maskingState) {
+        if (!scanStringValues) {
+            stepOverValue(maskingState);
+            return;
+        }
+        switch (maskingState.byteAtCurrentIndex()) {
+            case '"':
+                scanStringValue(maskingState);
+                break;
+            case '[':
+                scanArray(maskingState);
+                break;
+            case '{':
+                scanObject(maskingState);
+                break;
+            default:
+                stepOverValue(maskingState);
+                break;
+        }
+    }
+
+    /**
+     * Steps over an allowed array (in allow mode), scanning all string values nested in it, see
+     * {@link #scanStringValue(MaskingState)}. None of the nested values can be masked otherwise, so neither the keys
+     * nor the JSONPaths are matched.
+     *
+     * @param maskingState the current {@link MaskingState} for which the current index must correspond to the opening
+     *     square bracket of the array
+     */
+    private void scanArray(MaskingState maskingState) {
+        while (maskingState.next()) {
+            stepOverWhitespaceCharacters(maskingState);
+            // check if we're in an empty array
+            if (maskingState.byteAtCurrentIndex() == ']') {
+                break;
+            }
+
+            stepOverAllowedValue(maskingState);
+
+            stepOverWhitespaceCharacters(maskingState);
+            // check if we're at the end of a (non-empty) array
+            if (maskingState.endOfJson() || maskingState.byteAtCurrentIndex() == ']') {
+                break;
+            }
+        }
+        maskingState.next(); // step over array closing square bracket
+    }
+
+    /**
+     * Steps over an allowed object (in allow mode), scanning all string values nested in it, see
+     * {@link #scanArray(MaskingState)}.
+     *
+     * @param maskingState the current {@link MaskingState} for which the current index must correspond to the opening
+     *     curly bracket of the object
+     */
+    private void scanObject(MaskingState maskingState) {
+        while (maskingState.next()) {
+            stepOverWhitespaceCharacters(maskingState);
+            // check if we're in an empty object
+            if (maskingState.byteAtCurrentIndex() == '}') {
+                break;
+            }
+
+            stepOverStringValue(maskingState); // the key is never scanned
+            stepOverWhitespaceCharacters(maskingState);
+            // step over the colon ':'
+            maskingState.next();
+            stepOverWhitespaceCharacters(maskingState);
+            stepOverAllowedValue(maskingState);
+
+            stepOverWhitespaceCharacters(maskingState);
+            // check if we're at the end of a (non-empty) object
+            if (maskingState.endOfJson() || maskingState.byteAtCurrentIndex() == '}') {
+                break;
+            }
+        }
+        // step over closing curly bracket ending the object
+        maskingState.next();
+    }
+
+    /**
+     * Masks the current value with the {@link ValueMasker}. The out-of-the-box maskers are all
+     * {@link DescriptiveValueMasker}, which is a final class, so they are called directly and apply the masking without
+     * calling another masker. Only the user-supplied maskers are called through the interface.
+     *
+     * @param valueMasker the {@link ValueMasker} from the {@link KeyMaskingConfig} for the type of the value
+     * @param maskingState the current {@link MaskingState} with the current value registered
+     */
+    private static void maskValue(ValueMasker valueMasker, MaskingState maskingState) {
+        if (valueMasker instanceof DescriptiveValueMasker) {
+            ((DescriptiveValueMasker<?>) valueMasker).maskValue(maskingState);
+        } else {
+            valueMasker.maskValue(maskingState);
+        }
+    }
+
     /**
      * This method assumes the masking state is currently at the first byte of a JSON value which can be any of: array,
      * boolean, object, null, number, or string and increments the current index in the masking state until the current
@@ -404,9 +822,11 @@ final class KeyContainsMasker implements JsonMasker {
      * quote).
      *
      * @param maskingState the current {@link MaskingState}
+     * @return whether the string contains an escape character, which allows to skip the unescaping when matching keys
      */
-    private static void stepOverStringValue(MaskingState maskingState) {
+    private static boolean stepOverStringValue(MaskingState maskingState) {
         boolean isEscapeCharacter = false;
+        boolean containsEscapeCharacter = false;
         while (maskingState.next()) {
             byte b = maskingState.byteAtCurrentIndex();
             if (!isEscapeCharacter && b == '"') {
@@ -414,7 +834,9 @@ final class KeyContainsMasker implements JsonMasker {
                 break;
             }
             isEscapeCharacter = !isEscapeCharacter && b == '\\';
+            containsEscapeCharacter |= isEscapeCharacter;
         }
+        return containsEscapeCharacter;
     }
 
     /**
@@ -452,8 +874,19 @@ final class KeyContainsMasker implements JsonMasker {
     private static void stepOverArray(MaskingState maskingState) {
         // step over opening square bracket
         maskingState.next();
+        stepOverArrayRemainder(maskingState);
+        // step over closing square bracket
+        maskingState.next();
+    }
+
+    /**
+     * This method assumes the masking state is currently inside an array value, but not inside any of its elements, and
+     * increments the current index in the masking state until the current index is at the closing square bracket of
+     * the array.
+     */
+    private static void stepOverArrayRemainder(MaskingState maskingState) {
         int arrayDepth = 1;
-        while (arrayDepth > 0) {
+        while (true) {
             // We need to specifically step over strings to not consider square brackets which are part of a string
             // this will expand until the end of unescaped double quote, so we're guaranteed to never have unescaped
             // quote in this condition
@@ -462,8 +895,9 @@ final class KeyContainsMasker implements JsonMasker {
             } else {
                 if (AsciiCharacter.isSquareBracketOpen(maskingState.byteAtCurrentIndex())) {
                     arrayDepth++;
-                } else if (AsciiCharacter.isSquareBracketClose(maskingState.byteAtCurrentIndex())) {
-                    arrayDepth--;
+                } else if (AsciiCharacter.isSquareBracketClose(maskingState.byteAtCurrentIndex())
+                        && --arrayDepth == 0) {
+                    return;
                 }
                 maskingState.next();
             }
@@ -0,0 +1,31 @@
+package dev.blaauwendraad.masker.json;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Strategy for looking up a JSON key in the set of target keys of the {@link KeyMatcher}. The implementation is chosen
+ * once, when the {@link KeyMatcher} is created, based on the shape of the target key set.
+ *
+ * @see KeyMatcher#selectKeyLookup
+ */
+interface KeyLookup {
+    /**
+     * Looks up the key in the target key set.
+     *
+     * @param bytes the byte array containing the key to be matched
+     * @param offset offset of the key in the bytes array
+     * @param length length of the key in the bytes array
+     * @param keyContainsEscapes whether the key contains an escape character ({@code \\}), if {@code false} the key
+     *     cannot contain unicode escapes
+     * @param keyMatcherRootNodePointer the pointer to the root node of the radix trie, which can be used by the
+     *     implementation for the look-up. The pointer is always reset to the root node before returning
+     * @return the terminal radix trie node of the target key that matched, or {@code null} if the key is not a target
+     *     key
+     */
+    KeyMatcher.@Nullable RadixTrieNode lookup(
+            byte[] bytes,
+            int offset,
+            int length,
+            boolean keyContainsEscapes,
+            KeyMatcher.RadixTriePointer keyMatcherRootNodePointer);
+}
@@ -1,15 +1,13 @@
 package dev.blaauwendraad.masker.json;
 
 import dev.blaauwendraad.masker.json.config.JsonMaskingConfig;
+import dev.blaauwendraad.masker.json.config.JsonMaskingConfig.KeyLookupStrategy;
 import dev.blaauwendraad.masker.json.config.KeyMaskingConfig;
 import dev.blaauwendraad.masker.json.util.Utf8Util;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Objects;
-import java.util.TreeMap;
 import org.jspecify.annotations.Nullable;
 
 /**
@@ -36,172 +34,178 @@ import org.jspecify.annotations.Nullable;
  *
  * <p>We create a radix trie that looks at bytes instead of characters, so that we can use the bytes and offsets
  * directly in the incoming JSON for comparison and make sure there are no allocations at all.
+ *
+ * <p>The look-up of the keys might use a different {@link KeyLookup} strategy depending on the target key set, see
+ * {@link #selectKeyLookup()}. In that case the radix trie is only built when it is needed, i.e. for the first key that
+ * might contain unicode escapes.
+ *
+ * <p>The JSONPaths are not part of the radix trie, they are compiled into a separate {@link JsonPathAutomaton}.
  */
 final class KeyMatcher {
     private static final int SKIP_KEY_LOOKUP = -1;
+    /** The root of an empty radix trie, used for the pointers when the keys are not looked up in the radix trie. */
+    private static final RadixTrieNode EMPTY_ROOT = new RadixTrieNode(new byte[0], new byte[0]);
+    /** {@link KeyLookup} for the masking configs without target keys (e.g. only JSONPaths), which never matches. */
+    private static final KeyLookup NO_KEYS_LOOKUP =
+            (bytes, offset, length, keyContainsEscapes, keyMatcherRootNodePointer) -> null;
+    /**
+     * The maximum number of target keys for which the keys are always matched using the {@link LinearKeyLookup}. For
+     * larger key sets, comparing the JSON key against every target key becomes slower than descending the radix trie.
+     */
+    static final int LINEAR_LOOKUP_MAX_KEYS = 8;
+    /**
+     * The maximum number of target keys for which the keys are matched using the {@link LinearKeyLookup} when only a
+     * few of them share the same length, as only the target keys of the same length as the JSON key are compared.
+     */
+    static final int LINEAR_LOOKUP_MAX_DISTINCT_LENGTH_KEYS = 16;
+
     private final JsonMaskingConfig maskingConfig;
-    /** Used for look-ups in combination with JSONPaths */
-    private final RadixTrieNode root;
+    /** The distinct target keys sorted by their lowercase bytes, from which the radix trie is built. */
+    private final RadixTrieBuilder.TargetKey[] targetKeys;
+    /**
+     * The radix trie of the target keys, see {@link RadixTrieBuilder#forConfig(JsonMaskingConfig)}, or {@code null}
+     * if it was not built yet, see {@link #getRootNode()}. Package private for unit tests.
+     */
+    @Nullable
+    volatile RadixTrieNode root;
+    /** The strategy used for the look-up of the regular keys. Package private for unit tests. */
+    final KeyLookup keyLookup;
+    /** The automaton of the JSONPaths, or {@code null} if the masking config does not contain any JSONPaths. */
+    @Nullable
+    private final JsonPathAutomaton jsonPathAutomaton;
 
     public KeyMatcher(JsonMaskingConfig maskingConfig) {
+        this(maskingConfig, RadixTrieBuilder.forConfig(maskingConfig));
+    }
+
+    /** Creates the key matcher from the radix trie builder, which contains the keys of the masking config. */
+    KeyMatcher(JsonMaskingConfig maskingConfig, RadixTrieBuilder builder) {
         this.maskingConfig = maskingConfig;
-        PreInitTrieNode preInitRootNode = new PreInitTrieNode();
-        maskingConfig.getTargetKeys().forEach(key -> insert(preInitRootNode, key, false));
-        maskingConfig.getTargetJsonPaths().forEach(jsonPath -> insert(preInitRootNode, jsonPath.toString(), false));
-        if (maskingConfig.isInAllowMode()) {
-            // in allow mode we might have a specific configuration for the masking key
-            // see ByteTrie#insert documentation for more details
-            maskingConfig.getKeyConfigs().keySet().forEach(key -> insert(preInitRootNode, key, true));
-        }
-        this.root = compress(preInitRootNode);
+        this.targetKeys = builder.sortedKeys();
+        this.keyLookup = selectKeyLookup();
+        this.jsonPathAutomaton = JsonPathAutomaton.forConfig(maskingConfig);
     }
 
     /**
-     * Compresses a pre-initialization trie node into a permanent {@link KeyMatcher} radix trie node. Compression occurs
-     * only when a node has multiple children sharing the longest common prefix. In such cases, the common prefix is
-     * merged into a continuous prefix to reduce memory usage and optimize the lookups.
-     *
-     * @param node the pre-initialization trie node to be compressed
-     * @return the compressed pre-initialization trie into a post-initialization radix trie node
+     * Creates the key matcher from the already compiled target keys, radix trie and JSONPath automaton of a
+     * {@link JsonMaskerSnapshot}, in which case the masking config doesn't contain the target keys and JSONPaths.
      */
-    static RadixTrieNode compress(PreInitTrieNode node) {
-        List<byte[]> commonPrefix = new ArrayList<>();
-        while (true) {
-            // We keep expanding the common prefix until we
-            // 1. find that the node has more than a single child
-            // 2. represents a full key, regardless of the children (terminal node)
-            // in these cases we convert the common prefix into the radix node
-            if (node.terminalNode || node.childrenLowercase.size() != 1) {
-                return convertToRadixTrieNode(node, commonPrefix);
-            }
-            var childBytes = new byte[2];
-            commonPrefix.add(childBytes);
-            childBytes[0] = node.childrenLowercase.firstKey();
-            if (!node.childrenUppercase.isEmpty()) {
-                childBytes[1] = node.childrenUppercase.firstKey();
-            }
-
-            node = node.childrenLowercase.firstEntry().getValue();
-        }
+    KeyMatcher(
+            JsonMaskingConfig maskingConfig,
+            RadixTrieBuilder.TargetKey[] sortedKeys,
+            RadixTrieNode root,
+            @Nullable JsonPathAutomaton jsonPathAutomaton) {
+        this.maskingConfig = maskingConfig;
+        this.targetKeys = sortedKeys;
+        this.root = root;
+        this.keyLookup = selectKeyLookup();
+        this.jsonPathAutomaton = jsonPathAutomaton;
     }
 
     /**
-     * Converts the common prefix and the pre-initialization trie node into a compressed radix trie node
-     *
-     * @param node the pre-initialization trie node
-     * @param commonPrefix the common prefix in 2-length byte array for lower and upper case, e.g.: {[b,B], [r,R],
-     *     [e,E]}
-     * @return the resulting radix trie node
+     * Creates the key matcher from an already built radix trie, e.g. a copy-on-write update of the radix trie of
+     * another key matcher. The keys are always looked up in the radix trie, so the caller must make sure that the
+     * {@link JsonMaskingConfig#getKeyLookupStrategy()} selects it.
      */
-    static RadixTrieNode convertToRadixTrieNode(PreInitTrieNode node, List<byte[]> commonPrefix) {
-        // reached the end of prefix, create a new node
-        byte[] prefixLowercase = new byte[commonPrefix.size()];
-        byte[] prefixUppercase = new byte[commonPrefix.size()];
-        for (int i = 0; i < commonPrefix.size(); i++) {
-            byte[] prefixes = commonPrefix.get(i);
-            prefixLowercase[i] = prefixes[0];
-            prefixUppercase[i] = prefixes[1];
-        }
-
-        RadixTrieNode radixNode = new RadixTrieNode(prefixLowercase, prefixUppercase);
-        radixNode.terminalNode = node.terminalNode;
-        radixNode.negativeMatch = node.negativeMatch;
-        radixNode.keyMaskingConfig = node.keyMaskingConfig;
-        if (!node.childrenLowercase.isEmpty()) {
-            Map<PreInitTrieNode, RadixTrieNode> transformedNodes = new HashMap<>();
-            int childrenLowercaseArrayOffset = node.childrenLowercase.firstKey();
-            int childrenLowercaseArraySize = node.childrenLowercase.lastKey() - childrenLowercaseArrayOffset + 1;
-            int childrenUppercaseArrayOffset = -1;
-            int childrenUppercaseArraySize = 0;
-            if (!node.childrenUppercase.isEmpty()) {
-                childrenUppercaseArrayOffset = node.childrenUppercase.firstKey();
-                childrenUppercaseArraySize = node.childrenUppercase.lastKey() - childrenUppercaseArrayOffset + 1;
-            }
-            radixNode.childrenLowercaseArrayOffset = childrenLowercaseArrayOffset;
-            radixNode.childrenLowercase = new RadixTrieNode[childrenLowercaseArraySize];
-            radixNode.childrenUppercaseArrayOffset = childrenUppercaseArrayOffset;
-            radixNode.childrenUppercase = new RadixTrieNode[childrenUppercaseArraySize];
+    KeyMatcher(JsonMaskingConfig maskingConfig, RadixTrieNode root) {
+        this.maskingConfig = maskingConfig;
+        this.targetKeys = new RadixTrieBuilder.TargetKey[0]; // not needed, the radix trie is already built
+        this.root = root;
+        this.keyLookup = root.containsKeys() ? this::lookupInRadixTrie : NO_KEYS_LOOKUP;
+        this.jsonPathAutomaton = JsonPathAutomaton.forConfig(maskingConfig);
+    }
 
-            for (Map.Entry<Byte, PreInitTrieNode> e : node.childrenLowercase.entrySet()) {
-                byte b = e.getKey();
-                PreInitTrieNode childNode = e.getValue();
-                radixNode.childrenLowercase[b - radixNode.childrenLowercaseArrayOffset] =
-                        transformedNodes.computeIfAbsent(childNode, KeyMatcher::compress);
-            }
+    /** Returns the automaton of the JSONPaths, or {@code null} if the masking config does not contain any JSONPaths. */
+    @Nullable
+    JsonPathAutomaton getJsonPathAutomaton() {
+        return jsonPathAutomaton;
+    }
 
-            for (Map.Entry<Byte, PreInitTrieNode> e : node.childrenUppercase.entrySet()) {
-                byte b = e.getKey();
-                PreInitTrieNode childNode = e.getValue();
-                radixNode.childrenUppercase[b - radixNode.childrenUppercaseArrayOffset] =
-                        transformedNodes.computeIfAbsent(childNode, KeyMatcher::compress);
-            }
-        }
-        return radixNode;
+    /** Returns the distinct target keys sorted by their lowercase bytes, which must not be modified. */
+    RadixTrieBuilder.TargetKey[] getTargetKeys() {
+        return targetKeys;
     }
 
     /**
-     * Inserts a key into the pre-initialization trie, which is passed as parameter to the method.
+     * Returns whether any regular key can match, i.e. whether the masking config contains target keys or, in allow
+     * mode, keys having a specific masking config.
+     */
+    boolean hasTargetKeys() {
+        return keyLookup != NO_KEYS_LOOKUP;
+    }
+
+    /**
+     * Selects the {@link KeyLookup} strategy for the regular keys, unless overridden by
+     * {@link JsonMaskingConfig#getKeyLookupStrategy()}:
+     *
+     * <ul>
+     *   <li>without target keys (e.g. when only JSONPaths are masked), no key can match, so neither of the strategies
+     *       is needed
+     *   <li>small key sets (up to {@link #LINEAR_LOOKUP_MAX_KEYS}) are matched using {@link LinearKeyLookup}, which
+     *       only compares the JSON keys against the target keys of the same length, using case-insensitive comparison
+     *       unless the target keys are case-sensitive
+     *   <li>medium-sized key sets (up to {@link #LINEAR_LOOKUP_MAX_DISTINCT_LENGTH_KEYS}) are matched using
+     *       {@link LinearKeyLookup} as well if a JSON key is compared against at most {@link #LINEAR_LOOKUP_MAX_KEYS}
+     *       words per 8 bytes, i.e. if only a few target keys share the same length (half as many when
+     *       case-insensitive, as every word is compared against both the lowercase and the uppercase variant)
+     *   <li>all other key sets are matched by descending the radix trie
+     * </ul>
      *
-     * @param node the pre-initialization trie (root) node
-     * @param key the key to insert
-     * @param negativeMatch if {@code true}, the key is not allowed and the trie is in ALLOW mode. For example, config
-     *     {@code builder.allow("name", "age").mask("ssn", KeyMaskingConfig.builder().maskStringsWith("[redacted]")) }
-     *     would only allow {@code name} and {@code age} to be present in the JSON, it would use default configuration
-     *     to mask any other key, but would specifically mask {@code ssn} with a string "[redacted]". To make it
-     *     possible to store just the masking configuration we insert a "negative match" node, that would not be treated
-     *     as a target key, but provide a fast lookup for the configuration
+     * <p>The radix trie is only built right away if it is selected, otherwise {@link LinearKeyLookup} builds it on
+     * demand for the keys that might contain unicode escapes.
+     *
+     * @return the selected strategy
      */
-    void insert(PreInitTrieNode node, String key, boolean negativeMatch) {
-        boolean caseInsensitive = !maskingConfig.caseSensitiveTargetKeys();
-        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
-        byte[] lowerBytes = null;
-        byte[] upperBytes = null;
-        if (caseInsensitive) {
-            lowerBytes = key.toLowerCase().getBytes(StandardCharsets.UTF_8);
-            upperBytes = key.toUpperCase().getBytes(StandardCharsets.UTF_8);
-            /*
-             from inspecting the code, it looks like lower casing a character does not change the byte length
-             on the same encoding, however the documentation explicitly mentions that resulting length might be
-             different so better to fail fast if instead of ignoring that. Given that we're doing that only for
-             target keys, the idea that it's going to have different lengths is quite unlikely.
-            */
-            if (bytes.length != lowerBytes.length || bytes.length != upperBytes.length) {
-                throw new IllegalArgumentException("Case insensitive trie does not support all characters in " + key);
-            }
-        }
-        for (int i = 0; i < bytes.length; i++) {
-            byte b = bytes[i];
-            PreInitTrieNode child = node.child(b);
-            if (child == null) {
-                child = new PreInitTrieNode();
-                if (caseInsensitive) {
-                    Objects.requireNonNull(lowerBytes);
-                    Objects.requireNonNull(upperBytes);
-                    /*
-                     when case-insensitive we need to keep track of siblings to be able to find the correct node
-                     so that we have this structure:
-                     <p>
-                     (h | H) -> (e | E) -> (l | L) -> (l | L) -> (o | O)
-                     <p>
-                     and we can travel the tree forward and kinda sideways
-
-                     Also using both toLowerCase and toUpperCase due to
-                       1. Locale issues (see String#equalsIgnoreCase)
-                       2. So we don't have to convert when searching
-                    */
-                    node.addLowercase(lowerBytes[i], child);
-                    if (lowerBytes[i] != upperBytes[i]) {
-                        node.addUppercase(upperBytes[i], child);
-                    }
-                } else {
-                    node.addLowercase(b, child);
+    private KeyLookup selectKeyLookup() {
+        int size = targetKeys.length;
+        if (size == 0) {
+            return NO_KEYS_LOOKUP;
+        }
+        KeyLookupStrategy strategy = maskingConfig.getKeyLookupStrategy();
+        if (strategy == KeyLookupStrategy.AUTOMATIC) {
+            strategy = prefersLinearLookup() ? KeyLookupStrategy.LINEAR : KeyLookupStrategy.RADIX_TRIE;
+        }
+        if (strategy == KeyLookupStrategy.RADIX_TRIE) {
+            getRootNode();
+            return this::lookupInRadixTrie;
+        }
+        byte[][] lowercaseKeys = new byte[size][];
+        byte[][] uppercaseKeys = new byte[size][];
+        RadixTrieNode[] terminalNodes = new RadixTrieNode[size];
+        for (int i = 0; i < size; i++) {
+            lowercaseKeys[i] = targetKeys[i].lowercase;
+            uppercaseKeys[i] = targetKeys[i].uppercase;
+            terminalNodes[i] = targetKeys[i].terminalNode();
+        }
+        return new LinearKeyLookup(
+                lowercaseKeys,
+                uppercaseKeys,
+                terminalNodes,
+                maskingConfig.caseSensitiveTargetKeys(),
+                this::lookupEscapedKeyInRadixTrie);
+    }
+
+    /** Returns whether the {@link LinearKeyLookup} is expected to be faster than the radix trie for the target keys. */
+    private boolean prefersLinearLookup() {
+        if (targetKeys.length <= LINEAR_LOOKUP_MAX_KEYS) {
+            return true;
+        }
+        if (targetKeys.length > LINEAR_LOOKUP_MAX_DISTINCT_LENGTH_KEYS) {
+            return false;
+        }
+        int wordComparisons = maskingConfig.caseSensitiveTargetKeys() ? 1 : 2;
+        for (RadixTrieBuilder.TargetKey key : targetKeys) {
+            int keysOfSameLength = 1;
+            for (RadixTrieBuilder.TargetKey other : targetKeys) {
+                if (other != key && other.lowercase.length == key.lowercase.length) {
+                    keysOfSameLength++;
                 }
             }
-            node = child;
+            if (keysOfSameLength * wordComparisons > LINEAR_LOOKUP_MAX_KEYS) {
+                return false;
+            }
         }
-        node.keyMaskingConfig = maskingConfig.getKeyConfig(key);
-        node.terminalNode = true;
-        node.negativeMatch = negativeMatch;
+        return true;
     }
 
     /**
@@ -220,6 +224,10 @@ final class KeyMatcher {
      * <p>When key is to be masked (return value != {@code null}) and the key had specific masking config returns that,
      * if not - returns default masking config.
      *
+     * @param keyContainsEscapes whether the key contains an escape character ({@code \\}), as recorded while stepping
+     *     over the key, see {@link #traverseFrom(RadixTriePointer, byte[], int, int, boolean)}
+     * @param jsonPathState the state of the current JSONPath segment, see {@link JsonPathTracker#currentState()}, or
+     *     {@link JsonPathAutomaton#NO_STATE} if the JSONPaths are not tracked
      * @return the config if the key needs to be masked, {@code null} if key does not need to be masked
      */
     @Nullable
@@ -227,29 +235,24 @@ final class KeyMatcher {
             byte[] bytes,
             int keyOffset,
             int keyLength,
+            boolean keyContainsEscapes,
             RadixTriePointer keyMatcherRootNodePointer,
-            @Nullable RadixTriePointer currentJsonPathNode) {
+            int jsonPathState) {
         if (maskingConfig.isInMaskMode()) {
             // The matching in mask mode has two states
             //  1. the key did not match: not in mask list, do not mask (returns {@code null})
             //  2. the key matched: the key is in mask list, mask with its specific config or default the default config
             // (returns {@link KeyMaskingConfig})
             // The operation is performed separately on JSONPath first (more specific) and then on regular key.
-            if (currentJsonPathNode != null && currentJsonPathNode.isTerminalNode()) {
-                return currentJsonPathNode.keyMaskingConfig() != null
-                        ? currentJsonPathNode.keyMaskingConfig()
-                        : maskingConfig.getDefaultConfig();
+            if (jsonPathAutomaton != null && jsonPathAutomaton.isTerminal(jsonPathState)) {
+                KeyMaskingConfig keyMaskingConfig = jsonPathAutomaton.keyMaskingConfig(jsonPathState);
+                return keyMaskingConfig != null ? keyMaskingConfig : maskingConfig.getDefaultConfig();
             }
             if (keyLength != SKIP_KEY_LOOKUP) {
-                try {
-                    var node = traverseFrom(keyMatcherRootNodePointer, bytes, keyOffset, keyLength);
-                    if (node != null && node.isTerminalNode()) {
-                        return node.keyMaskingConfig() != null
-                                ? node.keyMaskingConfig()
-                                : maskingConfig.getDefaultConfig();
-                    }
-                } finally {
-                    keyMatcherRootNodePointer.reset();
+                RadixTrieNode node = keyLookup.lookup(
+                        bytes, keyOffset, keyLength, keyContainsEscapes, keyMatcherRootNodePointer);
+                if (node != null) {
+                    return node.keyMaskingConfig != null ? node.keyMaskingConfig : maskingConfig.getDefaultConfig();
                 }
             }
             return null;
@@ -261,43 +264,92 @@ final class KeyMatcher {
             //  3. the key did not match: not in allow list, mask with a default config (returns default {@link
             // KeyMaskingConfig})
             // The operation is performed separately on JSONPath first (more specific) and then on regular key.
-            if (currentJsonPathNode != null && currentJsonPathNode.isTerminalNode()) {
-                if (currentJsonPathNode.negativeMatch()) {
-                    return currentJsonPathNode.keyMaskingConfig();
+            if (jsonPathAutomaton != null && jsonPathAutomaton.isTerminal(jsonPathState)) {
+                if (jsonPathAutomaton.negativeMatch(jsonPathState)) {
+                    return jsonPathAutomaton.keyMaskingConfig(jsonPathState);
                 }
                 return null;
             }
             if (keyLength != SKIP_KEY_LOOKUP) {
-                try {
-                    var node = traverseFrom(keyMatcherRootNodePointer, bytes, keyOffset, keyLength);
-                    if (node != null && node.isTerminalNode()) {
-                        if (node.negativeMatch()) {
-                            return node.keyMaskingConfig();
-                        }
-                        return null;
+                RadixTrieNode node = keyLookup.lookup(
+                        bytes, keyOffset, keyLength, keyContainsEscapes, keyMatcherRootNodePointer);
+                if (node != null) {
+                    if (node.negativeMatch) {
+                        return node.keyMaskingConfig;
                     }
-                } finally {
-                    keyMatcherRootNodePointer.reset();
+                    return null;
                 }
             }
             return maskingConfig.getDefaultConfig();
         }
     }
 
+    /**
+     * {@link KeyLookup} implementation which descends the radix trie from the root node.
+     *
+     * @see #traverseFrom(RadixTriePointer, byte[], int, int, boolean)
+     */
+    @Nullable
+    private RadixTrieNode lookupInRadixTrie(
+            byte[] bytes,
+            int offset,
+            int length,
+            boolean keyContainsEscapes,
+            RadixTriePointer keyMatcherRootNodePointer) {
+        try {
+            var node = traverseFrom(keyMatcherRootNodePointer, bytes, offset, length, keyContainsEscapes);
+            if (node != null && node.isTerminalNode()) {
+                return node.currentMatchingNode;
+            }
+            return null;
+        } finally {
+            keyMatcherRootNodePointer.reset();
+        }
+    }
+
+    /**
+     * {@link KeyLookup} implementation used by the {@link LinearKeyLookup} for the keys that might contain unicode
+     * escapes. The pointer of the masking state does not point into the radix trie, which might not be built yet, so
+     * a new pointer is created, which is acceptable as such keys are rare.
+     */
+    @Nullable
+    private RadixTrieNode lookupEscapedKeyInRadixTrie(
+            byte[] bytes,
+            int offset,
+            int length,
+            boolean keyContainsEscapes,
+            RadixTriePointer keyMatcherRootNodePointer) {
+        return lookupInRadixTrie(bytes, offset, length, keyContainsEscapes, new RadixTriePointer(getRootNode(), 0));
+    }
+
     /**
      * Traverses the trie node by the key offset in the byte array. The node returned might be a prefix, so
      * {@link RadixTrieNode#terminalNode} needs to be checked additionally to determine whether a full key was matched
      * or only the prefix.
      *
-     * @param node from which node to do the search, either the root node or the existing JSONPath node
+     * <p>The keys in the JSON rarely contain escape characters, so unless the key contains one, every byte of the key
+     * is matched against the trie as is, without checking for the unicode escapes.
+     *
+     * @param node the pointer from which to do the search, usually at the root node
      * @param bytes the byte array containing the key to be matched
      * @param offset offset of the key in the bytes array
      * @param length length of the key in the bytes array
+     * @param keyContainsEscapes whether the key contains an escape character ({@code \\}), if {@code false} the key
+     *     cannot contain unicode escapes
      * @return the node if found, or {@code null} otherwise.
      */
     @Nullable
-    RadixTriePointer traverseFrom(RadixTriePointer node, byte[] bytes, int offset, int length) {
+    static RadixTriePointer traverseFrom(
+            RadixTriePointer node, byte[] bytes, int offset, int length, boolean keyContainsEscapes) {
         int endIndex = offset + length;
+        if (!keyContainsEscapes) {
+            for (int i = offset; i < endIndex; i++) {
+                if (!node.descent(bytes[i])) {
+                    return null;
+                }
+            }
+            return node;
+        }
         for (int i = offset; i < endIndex; i++) {
             // every character of the input key can be escaped \\uXXXX, but since the KeyMatcher uses byte
             // representation of non-escaped characters of the key (e.g. 'key' -> [107, 101, 121]) in UTF-16 format,
@@ -400,12 +452,30 @@ final class KeyMatcher {
         return fromIndex <= toIndex - 6 && bytes[fromIndex] == '\\' && bytes[fromIndex + 1] == 'u';
     }
 
+    /**
+     * Returns the root node of the radix trie, building the radix trie if it was not built yet. The radix trie might
+     * be built concurrently by multiple threads, which is harmless as they all build an identical trie.
+     */
     RadixTrieNode getRootNode() {
+        RadixTrieNode root = this.root;
+        if (root == null) {
+            root = RadixTrieBuilder.presorted(maskingConfig, targetKeys).build();
+            this.root = root;
+        }
         return root;
     }
 
+    /**
+     * Creates the pointer which is passed to the {@link #keyLookup} for a single masking operation. It points to the
+     * root of the radix trie if it was built, otherwise the pointer is not used by the key lookup.
+     */
+    RadixTriePointer newRootNodePointer() {
+        RadixTrieNode root = this.root;
+        return new RadixTriePointer(root != null ? root : EMPTY_ROOT, 0);
+    }
+
     String printTree() {
-        return root.toString();
+        return getRootNode().toString();
     }
 
     /**
@@ -450,6 +520,8 @@ final class KeyMatcher {
          * Used to store the configuration, but indicate that json-masker is in ALLOW mode and the key is not allowed.
          */
         boolean negativeMatch = false;
+        /** For the radix trie of the names of the JSONPaths, the id of the key that ends at this node. */
+        int keyId = -1;
 
         RadixTrieNode(byte[] prefixLowercase, byte[] prefixUppercase) {
             this.prefixLowercase = prefixLowercase;
@@ -484,10 +556,229 @@ final class KeyMatcher {
             }
         }
 
+        /** Returns whether a key ends at this node or any of its descendants. */
+        boolean containsKeys() {
+            if (terminalNode) {
+                return true;
+            }
+            for (RadixTrieNode[] children : new RadixTrieNode[][] {childrenLowercase, childrenUppercase}) {
+                for (RadixTrieNode child : children) {
+                    if (child != null && child.containsKeys()) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
         boolean isTerminalNode(int prefixIndex) {
             return prefixIndex == prefixLowercase.length && terminalNode;
         }
 
+        /**
+         * Returns a new radix trie (with this node as root) which additionally contains the key, or has the masking
+         * configuration of the key replaced if the key was already present. The radix trie is copy-on-write: only the
+         * nodes on the path of the key are copied, all other nodes are shared with this radix trie, which is not
+         * modified and can still be used concurrently.
+         *
+         * @param key the key to insert
+         * @return the root node of the new radix trie
+         */
+        RadixTrieNode withKey(RadixTrieBuilder.TargetKey key) {
+            return withKey(key, 0);
+        }
+
+        private RadixTrieNode withKey(RadixTrieBuilder.TargetKey key, int depth) {
+            int matched = 0;
+            while (matched < prefixLowercase.length
+                    && depth + matched < key.lowercase.length
+                    && prefixLowercase[matched] == key.lowercase[depth + matched]) {
+                matched++;
+            }
+            int prefixEnd = depth + matched;
+            if (matched < prefixLowercase.length) {
+                // the key diverges from (or ends within) the prefix, so the node needs to be split at that point
+                RadixTrieNode splitNode = new RadixTrieNode(
+                        Arrays.copyOf(prefixLowercase, matched), Arrays.copyOf(prefixUppercase, matched));
+                RadixTrieNode prefixRemainder = copy(
+                        Arrays.copyOfRange(prefixLowercase, matched + 1, prefixLowercase.length),
+                        Arrays.copyOfRange(prefixUppercase, matched + 1, prefixUppercase.length));
+                splitNode.setChild(prefixLowercase[matched], prefixUppercase[matched], prefixRemainder, null);
+                if (prefixEnd == key.lowercase.length) {
+                    splitNode.setTerminal(key);
+                } else {
+                    splitNode.setChild(
+                            key.lowercase[prefixEnd], key.uppercase[prefixEnd], leaf(key, prefixEnd + 1), null);
+                }
+                return splitNode;
+            }
+            RadixTrieNode copy = copy(prefixLowercase, prefixUppercase);
+            if (prefixEnd == key.lowercase.length) {
+                copy.setTerminal(key);
+                return copy;
+            }
+            byte lower = key.lowercase[prefixEnd];
+            RadixTrieNode child = lowercaseChild(lower);
+            RadixTrieNode newChild = child != null ? child.withKey(key, prefixEnd + 1) : leaf(key, prefixEnd + 1);
+            copy.setChild(lower, key.uppercase[prefixEnd], newChild, child);
+            return copy;
+        }
+
+        /**
+         * Returns a new radix trie (with this node as root) without the key. Same as for {@link #withKey}, only the
+         * nodes on the path of the key are copied.
+         *
+         * @param lowercaseKey the lowercase bytes of the key to remove
+         * @return the root node of the new radix trie, or this node if the key was not present
+         */
+        RadixTrieNode withoutKey(byte[] lowercaseKey) {
+            RadixTrieNode root = withoutKey(lowercaseKey, 0);
+            return root != null ? root : new RadixTrieNode(new byte[0], new byte[0]);
+        }
+
+        @Nullable
+        private RadixTrieNode withoutKey(byte[] lowercaseKey, int depth) {
+            int prefixEnd = depth + prefixLowercase.length;
+            if (prefixEnd > lowercaseKey.length
+                    || !Arrays.equals(prefixLowercase, 0, prefixLowercase.length, lowercaseKey, depth, prefixEnd)) {
+                return this;
+            }
+            RadixTrieNode copy;
+            if (prefixEnd == lowercaseKey.length) {
+                if (!terminalNode) {
+                    return this;
+                }
+                copy = copy(prefixLowercase, prefixUppercase);
+                copy.terminalNode = false;
+                copy.negativeMatch = false;
+                copy.keyMaskingConfig = null;
+                copy.keyId = -1;
+            } else {
+                byte lower = lowercaseKey[prefixEnd];
+                RadixTrieNode child = lowercaseChild(lower);
+                if (child == null) {
+                    return this;
+                }
+                RadixTrieNode newChild = child.withoutKey(lowercaseKey, prefixEnd + 1);
+                if (newChild == child) {
+                    return this;
+                }
+                copy = copy(prefixLowercase, prefixUppercase);
+                copy.setChild(lower, lower, newChild, child);
+            }
+            // nodes that neither represent a key nor lead to one are removed
+            return copy.terminalNode || copy.hasChildren() ? copy : null;
+        }
+
+        /** Creates a leaf node for the remainder of the key, starting from the given index. */
+        private static RadixTrieNode leaf(RadixTrieBuilder.TargetKey key, int from) {
+            byte[] prefixLowercase = Arrays.copyOfRange(key.lowercase, from, key.lowercase.length);
+            byte[] prefixUppercase = new byte[prefixLowercase.length];
+            for (int i = 0; i < prefixLowercase.length; i++) {
+                byte upper = key.uppercase[from + i];
+                if (upper != prefixLowercase[i]) {
+                    prefixUppercase[i] = upper;
+                }
+            }
+            RadixTrieNode leaf = new RadixTrieNode(prefixLowercase, prefixUppercase);
+            leaf.setTerminal(key);
+            return leaf;
+        }
+
+        /** Creates a copy of this node with a different prefix, the children arrays are shared with this node. */
+        private RadixTrieNode copy(byte[] prefixLowercase, byte[] prefixUppercase) {
+            RadixTrieNode copy = new RadixTrieNode(prefixLowercase, prefixUppercase);
+            copy.childrenLowercase = childrenLowercase;
+            copy.childrenUppercase = childrenUppercase;
+            copy.childrenLowercaseArrayOffset = childrenLowercaseArrayOffset;
+            copy.childrenUppercaseArrayOffset = childrenUppercaseArrayOffset;
+            copy.keyMaskingConfig = keyMaskingConfig;
+            copy.terminalNode = terminalNode;
+            copy.negativeMatch = negativeMatch;
+            copy.keyId = keyId;
+            return copy;
+        }
+
+        private void setTerminal(RadixTrieBuilder.TargetKey key) {
+            terminalNode = true;
+            negativeMatch = key.negativeMatch;
+            keyMaskingConfig = key.keyMaskingConfig;
+        }
+
+        @Nullable
+        private RadixTrieNode lowercaseChild(byte lower) {
+            int index = lower - childrenLowercaseArrayOffset;
+            return index >= 0 && index < childrenLowercase.length ? childrenLowercase[index] : null;
+        }
+
+        private boolean hasChildren() {
+            for (RadixTrieNode child : childrenLowercase) {
+                if (child != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Replaces the child of this (freshly copied) node. The children arrays might be shared with other nodes, so
+         * they are always copied before being modified.
+         *
+         * @param lower the lowercase byte of the child
+         * @param upper the uppercase byte of the child, ignored if the same as lowercase or {@code 0}
+         * @param newChild the new child node, or {@code null} to remove the child
+         * @param oldChild the child node being replaced, all the uppercase references to it are replaced as well
+         */
+        private void setChild(
+                byte lower, byte upper, @Nullable RadixTrieNode newChild, @Nullable RadixTrieNode oldChild) {
+            int lowercaseOffset = childrenLowercase.length == 0 ? lower : Math.min(childrenLowercaseArrayOffset, lower);
+            childrenLowercase =
+                    childrenArrayWith(childrenLowercase, childrenLowercaseArrayOffset, lowercaseOffset, lower);
+            childrenLowercaseArrayOffset = lowercaseOffset;
+            childrenLowercase[lower - childrenLowercaseArrayOffset] = newChild;
+
+            boolean hasUppercase = upper != lower && upper != 0 && newChild != null;
+            if (hasUppercase) {
+                int uppercaseOffset =
+                        childrenUppercase.length == 0 ? upper : Math.min(childrenUppercaseArrayOffset, upper);
+                childrenUppercase =
+                        childrenArrayWith(childrenUppercase, childrenUppercaseArrayOffset, uppercaseOffset, upper);
+                childrenUppercaseArrayOffset = uppercaseOffset;
+            } else {
+                childrenUppercase = childrenUppercase.clone();
+            }
+            if (oldChild != null) {
+                for (int i = 0; i < childrenUppercase.length; i++) {
+                    if (childrenUppercase[i] == oldChild) {
+                        childrenUppercase[i] = newChild;
+                    }
+                }
+            }
+            if (hasUppercase) {
+                childrenUppercase[upper - childrenUppercaseArrayOffset] = newChild;
+            }
+        }
+
+        /**
+         * Returns a copy of the children array, extended if necessary to fit the given byte.
+         *
+         * @param children the children array
+         * @param childrenArrayOffset the current offset of the children array
+         * @param newChildrenArrayOffset the offset of the returned children array, which must fit both the current
+         *     children and the given byte
+         * @param b the byte that must fit into the returned children array
+         */
+        private static @Nullable RadixTrieNode[] childrenArrayWith(
+                @Nullable RadixTrieNode[] children, int childrenArrayOffset, int newChildrenArrayOffset, byte b) {
+            if (children.length == 0) {
+                return new RadixTrieNode[1];
+            }
+            int end = Math.max(childrenArrayOffset + children.length, b + 1);
+            @Nullable RadixTrieNode[] copy = new RadixTrieNode[end - newChildrenArrayOffset];
+            System.arraycopy(children, 0, copy, childrenArrayOffset - newChildrenArrayOffset, children.length);
+            return copy;
+        }
+
         @Override
         public String toString() {
             return toString(0);
@@ -520,50 +811,302 @@ final class KeyMatcher {
     }
 
     /**
-     * This TrieNode represents a temporary trie that is being built. After all keys are inserted, this node is
-     * compressed into a {@link RadixTrieNode} for more efficient memory layout.
+     * Builds the {@link RadixTrieNode} radix trie from the inserted keys in bulk.
+     *
+     * <p>Instead of inserting the keys one by one into an intermediate (uncompressed) trie, the keys are sorted once by
+     * their (lowercase) bytes. After sorting, all keys sharing a prefix form a contiguous range, so the radix trie can
+     * be constructed directly, level by level: the common prefix of a range becomes the prefix of the radix node and
+     * the range is split into the child ranges by the first byte after the common prefix. This keeps the construction
+     * time and the allocations proportional to the total length of the keys, which matters for large key sets.
      */
-    static class PreInitTrieNode {
-        /** @see RadixTrieNode#childrenLowercase */
-        TreeMap<Byte, PreInitTrieNode> childrenLowercase = new TreeMap<>();
+    static class RadixTrieBuilder {
+        private final JsonMaskingConfig maskingConfig;
+        private final List<TargetKey> insertedKeys = new ArrayList<>();
+        /** The inserted keys sorted by the lowercase bytes, without duplicates, see {@link #sortedKeys()}. */
+        private TargetKey @Nullable [] sortedKeys;
 
-        /** @see RadixTrieNode#childrenUppercase */
-        TreeMap<Byte, PreInitTrieNode> childrenUppercase = new TreeMap<>();
+        RadixTrieBuilder(JsonMaskingConfig maskingConfig) {
+            this.maskingConfig = maskingConfig;
+        }
 
-        /** @see RadixTrieNode#keyMaskingConfig */
-        @Nullable
-        KeyMaskingConfig keyMaskingConfig = null;
+        /**
+         * Creates a builder containing all keys that need to be inserted into the radix trie for the masking config,
+         * i.e. the target keys and, in allow mode, the keys having a specific masking config. The JSONPaths are
+         * compiled into the {@link JsonPathAutomaton} instead.
+         */
+        static RadixTrieBuilder forConfig(JsonMaskingConfig maskingConfig) {
+            RadixTrieBuilder builder = new RadixTrieBuilder(maskingConfig);
+            maskingConfig.getTargetKeys().forEach(key -> builder.insert(key, false));
+            if (maskingConfig.isInAllowMode()) {
+                // in allow mode we might have a specific configuration for the masking key
+                // see RadixTrieBuilder#insert documentation for more details
+                for (String key : maskingConfig.getKeyConfigs().keySet()) {
+                    if (JsonPathAutomaton.parseJsonPathKey(key) == null) {
+                        builder.insert(key, true);
+                    }
+                }
+            }
+            return builder;
+        }
 
-        /** @see RadixTrieNode#terminalNode */
-        boolean terminalNode = false;
+        /**
+         * Builds the radix trie of the keys, in which the terminal node of every key holds the index of the key in the
+         * list as its {@link RadixTrieNode#keyId}. The keys must be distinct (also ignoring the casing, unless the
+         * target keys are case-sensitive).
+         *
+         * @param maskingConfig the masking config, which defines the case sensitivity
+         * @param keys the keys by their id
+         * @return the root node of the radix trie
+         */
+        static RadixTrieNode buildKeyIds(JsonMaskingConfig maskingConfig, List<String> keys) {
+            RadixTrieBuilder builder = new RadixTrieBuilder(maskingConfig);
+            keys.forEach(key -> builder.insert(key, false));
+            RadixTrieNode root = builder.build();
+            for (int i = 0; i < keys.size(); i++) {
+                RadixTriePointer pointer = new RadixTriePointer(root, 0);
+                for (byte b : keys.get(i).getBytes(StandardCharsets.UTF_8)) {
+                    pointer.descent(b);
+                }
+                pointer.currentMatchingNode.keyId = i;
+            }
+            return root;
+        }
 
-        /** @see RadixTrieNode#negativeMatch */
-        boolean negativeMatch = false;
+        /**
+         * Creates a builder from the keys which are already sorted and deduplicated, as returned by
+         * {@link #sortedKeys()}.
+         */
+        static RadixTrieBuilder presorted(JsonMaskingConfig maskingConfig, TargetKey[] sortedKeys) {
+            RadixTrieBuilder builder = new RadixTrieBuilder(maskingConfig);
+            builder.sortedKeys = sortedKeys;
+            return builder;
+        }
 
-        /** @see RadixTrieNode#child(byte, int) */
-        @Nullable
-        PreInitTrieNode child(byte b) {
-            PreInitTrieNode child = childrenLowercase.get(b);
-            if (child != null) {
-                return child;
+        /**
+         * Inserts a key into the builder. When the same key is inserted multiple times (which includes keys differing
+         * only in casing when case-insensitive), only one of them is kept, see {@link TargetKey#takesPrecedenceOver}.
+         *
+         * @param key the key to insert
+         * @param negativeMatch if {@code true}, the key is not allowed and the trie is in ALLOW mode. For example,
+         *     config {@code builder.allow("name", "age").mask("ssn", ssnConfig)} would only allow {@code name} and
+         *     {@code age} to be present in the JSON, it would use default configuration to mask any other key, but
+         *     would specifically mask {@code ssn} with the {@code ssnConfig} (e.g. with a string "[redacted]"). To make
+         *     it possible to store just the masking configuration we insert a "negative match" node, that would
+         *     not be treated as a target key, but provide a fast lookup for the configuration
+         */
+        void insert(String key, boolean negativeMatch) {
+            insertedKeys.add(TargetKey.of(maskingConfig, key, negativeMatch));
+        }
+
+        /**
+         * Returns the inserted keys sorted by their lowercase bytes. When the same key was inserted multiple times,
+         * only the one taking precedence is kept.
+         */
+        TargetKey[] sortedKeys() {
+            if (sortedKeys == null) {
+                TargetKey[] keys = insertedKeys.toArray(new TargetKey[0]);
+                Arrays.sort(keys, (a, b) -> Arrays.compare(a.lowercase, b.lowercase));
+                int size = 0;
+                for (TargetKey key : keys) {
+                    if (size > 0 && Arrays.equals(keys[size - 1].lowercase, key.lowercase)) {
+                        if (key.takesPrecedenceOver(keys[size - 1])) {
+                            keys[size - 1] = key;
+                        }
+                    } else {
+                        keys[size++] = key;
+                    }
+                }
+                sortedKeys = Arrays.copyOf(keys, size);
             }
-            return childrenUppercase.get(b);
+            return sortedKeys;
         }
 
         /**
-         * Adds a new child to the trie. When case-insensitivity is enabled this must represent the lower-case byte,
-         * otherwise is just a byte in original case.
+         * Builds the radix trie from the inserted keys.
+         *
+         * @return the root node of the radix trie
          */
-        void addLowercase(Byte b, PreInitTrieNode child) {
-            childrenLowercase.put(b, child);
+        RadixTrieNode build() {
+            TargetKey[] keys = sortedKeys();
+            if (keys.length == 0) {
+                return new RadixTrieNode(new byte[0], new byte[0]);
+            }
+            return build(keys, 0, keys.length, 0);
+        }
+
+        /** Returns the number of distinct keys. */
+        int size() {
+            return sortedKeys().length;
+        }
+
+        /**
+         * Builds the radix trie node for the range of the sorted keys, which all share the same prefix up to the
+         * {@code depth}.
+         *
+         * @param keys the sorted keys
+         * @param from the index of the first key in the range (inclusive)
+         * @param to the index of the last key in the range (exclusive)
+         * @param depth the length of the prefix shared by all the keys in the range, which is already represented by
+         *     the parent nodes
+         * @return the radix trie node for the range
+         */
+        private RadixTrieNode build(TargetKey[] keys, int from, int to, int depth) {
+            TargetKey first = keys[from];
+            TargetKey last = keys[to - 1];
+            // We keep expanding the common prefix until we
+            // 1. find that the keys differ, i.e. the node would have more than a single child
+            // 2. reach the end of the (shortest) key, i.e. the node represents a full key (terminal node)
+            // since the keys are sorted, the first and the last key in the range are sufficient to check both
+            int prefixEnd = depth;
+            while (first.lowercase.length > prefixEnd && first.lowercase[prefixEnd] == last.lowercase[prefixEnd]) {
+                prefixEnd++;
+            }
+            byte[] prefixLowercase = Arrays.copyOfRange(first.lowercase, depth, prefixEnd);
+            byte[] prefixUppercase = new byte[prefixLowercase.length];
+            for (int i = 0; i < prefixLowercase.length; i++) {
+                byte upper = first.uppercase[depth + i];
+                if (upper != prefixLowercase[i]) {
+                    prefixUppercase[i] = upper;
+                }
+            }
+            RadixTrieNode radixNode = new RadixTrieNode(prefixLowercase, prefixUppercase);
+            int childrenFrom = from;
+            if (first.lowercase.length == prefixEnd) {
+                radixNode.terminalNode = true;
+                radixNode.negativeMatch = first.negativeMatch;
+                radixNode.keyMaskingConfig = first.keyMaskingConfig;
+                childrenFrom++;
+            }
+            if (childrenFrom == to) {
+                return radixNode;
+            }
+            // the lowercase bytes are sorted, so the first and the last key define the range of the children array
+            int childrenLowercaseArrayOffset = keys[childrenFrom].lowercase[prefixEnd];
+            radixNode.childrenLowercaseArrayOffset = childrenLowercaseArrayOffset;
+            radixNode.childrenLowercase =
+                    new RadixTrieNode[last.lowercase[prefixEnd] - childrenLowercaseArrayOffset + 1];
+            int minUppercase = Integer.MAX_VALUE;
+            int maxUppercase = Integer.MIN_VALUE;
+            for (int i = childrenFrom; i < to; i++) {
+                byte upper = keys[i].uppercase[prefixEnd];
+                if (upper != keys[i].lowercase[prefixEnd]) {
+                    minUppercase = Math.min(minUppercase, upper);
+                    maxUppercase = Math.max(maxUppercase, upper);
+                }
+            }
+            if (minUppercase <= maxUppercase) {
+                radixNode.childrenUppercaseArrayOffset = minUppercase;
+                radixNode.childrenUppercase = new RadixTrieNode[maxUppercase - minUppercase + 1];
+            }
+            int childFrom = childrenFrom;
+            while (childFrom < to) {
+                byte lower = keys[childFrom].lowercase[prefixEnd];
+                int childTo = childFrom + 1;
+                while (childTo < to && keys[childTo].lowercase[prefixEnd] == lower) {
+                    childTo++;
+                }
+                RadixTrieNode childNode = build(keys, childFrom, childTo, prefixEnd + 1);
+                radixNode.childrenLowercase[lower - radixNode.childrenLowercaseArrayOffset] = childNode;
+                for (int i = childFrom; i < childTo; i++) {
+                    byte upper = keys[i].uppercase[prefixEnd];
+                    if (upper != lower) {
+                        radixNode.childrenUppercase[upper - radixNode.childrenUppercaseArrayOffset] = childNode;
+                    }
+                }
+                childFrom = childTo;
+            }
+            return radixNode;
         }
 
         /**
-         * Adds a child using an equivalent upper-case byte of the child already inserted. When case-insensitivity is
-         * enabled this must represent the upper-case byte, otherwise must not be called.
+         * A key inserted into the {@link RadixTrieBuilder}. When case-sensitive, the lowercase and the uppercase bytes
+         * are both the original bytes of the key.
          */
-        void addUppercase(Byte b, PreInitTrieNode child) {
-            childrenUppercase.put(b, child);
+        static final class TargetKey {
+            final byte[] lowercase;
+            final byte[] uppercase;
+            /** The original key, only present if the key has a specific masking config. */
+            @Nullable
+            final String keyMaskingConfigKey;
+
+            @Nullable
+            final KeyMaskingConfig keyMaskingConfig;
+
+            final boolean negativeMatch;
+
+            TargetKey(
+                    byte[] lowercase,
+                    byte[] uppercase,
+                    @Nullable String keyMaskingConfigKey,
+                    @Nullable KeyMaskingConfig keyMaskingConfig,
+                    boolean negativeMatch) {
+                this.lowercase = lowercase;
+                this.uppercase = uppercase;
+                this.keyMaskingConfigKey = keyMaskingConfigKey;
+                this.keyMaskingConfig = keyMaskingConfig;
+                this.negativeMatch = negativeMatch;
+            }
+
+            /**
+             * Creates the target key for the key of the masking config.
+             *
+             * @see RadixTrieBuilder#insert(String, boolean)
+             */
+            static TargetKey of(JsonMaskingConfig maskingConfig, String key, boolean negativeMatch) {
+                byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+                byte[] lowerBytes = bytes;
+                byte[] upperBytes = bytes;
+                if (!maskingConfig.caseSensitiveTargetKeys()) {
+                    /*
+                     Using both toLowerCase and toUpperCase due to
+                       1. Locale issues (see String#equalsIgnoreCase)
+                       2. So we don't have to convert when searching
+                    */
+                    lowerBytes = key.toLowerCase().getBytes(StandardCharsets.UTF_8);
+                    upperBytes = key.toUpperCase().getBytes(StandardCharsets.UTF_8);
+                    /*
+                     from inspecting the code, it looks like lower casing a character does not change the byte length
+                     on the same encoding, however the documentation explicitly mentions that resulting length might be
+                     different so better to fail fast if instead of ignoring that. Given that we're doing that only for
+                     target keys, the idea that it's going to have different lengths is quite unlikely.
+                    */
+                    if (bytes.length != lowerBytes.length || bytes.length != upperBytes.length) {
+                        throw new IllegalArgumentException(
+                                "Case insensitive trie does not support all characters in " + key);
+                    }
+                }
+                KeyMaskingConfig keyMaskingConfig = maskingConfig.getKeyConfig(key);
+                return new TargetKey(
+                        lowerBytes, upperBytes, keyMaskingConfig != null ? key : null, keyMaskingConfig, negativeMatch);
+            }
+
+            /**
+             * Creates a radix trie node holding the masking configuration of this key, which is not part of any radix
+             * trie, for the key lookups that match the keys without a radix trie.
+             */
+            RadixTrieNode terminalNode() {
+                RadixTrieNode node = new RadixTrieNode(lowercase, uppercase);
+                node.terminalNode = true;
+                node.negativeMatch = negativeMatch;
+                node.keyMaskingConfig = keyMaskingConfig;
+                return node;
+            }
+
+            /**
+             * Returns whether this key takes precedence over the other key that maps to the same trie node, i.e. the
+             * same key or (when case-insensitive) a key differing only in casing. The negative matches win over the
+             * regular keys, then the keys with a specific masking config win over the keys without one, and otherwise
+             * the key that is greater wins, so the result does not depend on the insertion order.
+             */
+            boolean takesPrecedenceOver(TargetKey other) {
+                if (negativeMatch != other.negativeMatch) {
+                    return negativeMatch;
+                }
+                if (keyMaskingConfigKey == null || other.keyMaskingConfigKey == null) {
+                    return keyMaskingConfigKey != null || other.keyMaskingConfigKey == null;
+                }
+                return keyMaskingConfigKey.compareTo(other.keyMaskingConfigKey) >= 0;
+            }
         }
     }
 
@@ -609,27 +1152,13 @@ final class KeyMatcher {
             return true;
         }
 
-        /**
-         * Check if the current matching node has a wildcard child that is terminal node ('.*') or has another segment
-         * after it ('.*.')
-         */
-        boolean isJsonPathWildcard() {
-            return currentMatchingNode.child((byte) '*', currentMatchingNodePrefixIndex) != null
-                    && (currentMatchingNode.isTerminalNode(currentMatchingNodePrefixIndex + 1)
-                            || currentMatchingNode.child((byte) '.', currentMatchingNodePrefixIndex + 1) != null);
-        }
-
         boolean isTerminalNode() {
             return currentMatchingNode.isTerminalNode(currentMatchingNodePrefixIndex);
         }
 
-        boolean negativeMatch() {
-            return currentMatchingNode.negativeMatch;
-        }
-
-        @Nullable
-        KeyMaskingConfig keyMaskingConfig() {
-            return currentMatchingNode.keyMaskingConfig;
+        /** Returns the {@link RadixTrieNode#keyId} of the key that ends at the current position, or {@code -1}. */
+        int keyId() {
+            return isTerminalNode() ? currentMatchingNode.keyId : -1;
         }
 
         /**
@@ -641,17 +1170,6 @@ final class KeyMatcher {
             currentMatchingNodePrefixIndex = startingNodePrefixIndex;
         }
 
-        /**
-         * Creates a {@link RadixTriePointer} instance which is essentially a checkpoint with the current matching node
-         * and the current prefix index as new starting point.
-         *
-         * @return a new {@link RadixTriePointer} instance with the current matching node and prefix index as starting
-         *     point
-         */
-        RadixTriePointer checkpoint() {
-            return new RadixTriePointer(this.currentMatchingNode, this.currentMatchingNodePrefixIndex);
-        }
-
         /**
          * Returns a string representation of the current state of the {@link RadixTriePointer}, only used for debugging
          * purposes.
@@ -0,0 +1,103 @@
+package dev.blaauwendraad.masker.json;
+
+import dev.blaauwendraad.masker.json.util.SwarUtil;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * {@link KeyLookup} for small target key sets, which compares the JSON key against every target key of the same length
+ * instead of descending the radix trie byte by byte.
+ *
+ * <p>For a handful of target keys, the length check alone rejects most of the JSON keys and the remaining candidates
+ * are compared 8 bytes at a time, see {@link SwarUtil}. For case-insensitive matching, each 8-byte word is
+ * compared against both the lowercase and the uppercase variant of the target key and every byte must be equal to one
+ * of the two.
+ *
+ * <p>JSON keys may contain unicode escapes (e.g. {@code \\u0041}), which makes the raw key longer than the target key
+ * it represents. Such keys are delegated to the radix trie, which knows how to decode the escapes, but only if the key
+ * contains an escape character at all.
+ */
+final class LinearKeyLookup implements KeyLookup {
+    /**
+     * The smallest number of bytes that the escaping of a single character can add to the key, i.e. the 3-byte UTF-8
+     * character encoded as 6-byte {@code \\uXXXX} sequence.
+     */
+    private static final int MIN_ESCAPE_OVERHEAD = 3;
+
+    private final byte[][] lowercaseKeys;
+    private final byte[][] uppercaseKeys;
+    private final KeyMatcher.RadixTrieNode[] terminalNodes;
+    private final boolean caseSensitive;
+    private final int minEscapedKeyLength;
+    /** Used for the keys which might contain unicode escapes. */
+    private final KeyLookup escapedKeyLookup;
+
+    LinearKeyLookup(
+            byte[][] lowercaseKeys,
+            byte[][] uppercaseKeys,
+            KeyMatcher.RadixTrieNode[] terminalNodes,
+            boolean caseSensitive,
+            KeyLookup escapedKeyLookup) {
+        this.lowercaseKeys = lowercaseKeys;
+        this.uppercaseKeys = uppercaseKeys;
+        this.terminalNodes = terminalNodes;
+        this.caseSensitive = caseSensitive;
+        this.escapedKeyLookup = escapedKeyLookup;
+        int minKeyLength = Integer.MAX_VALUE - MIN_ESCAPE_OVERHEAD;
+        for (byte[] key : lowercaseKeys) {
+            minKeyLength = Math.min(minKeyLength, key.length);
+        }
+        this.minEscapedKeyLength = minKeyLength + MIN_ESCAPE_OVERHEAD;
+    }
+
+    @Override
+    public KeyMatcher.@Nullable RadixTrieNode lookup(
+            byte[] bytes,
+            int offset,
+            int length,
+            boolean keyContainsEscapes,
+            KeyMatcher.RadixTriePointer keyMatcherRootNodePointer) {
+        for (int i = 0; i < lowercaseKeys.length; i++) {
+            if (lowercaseKeys[i].length == length && matches(i, bytes, offset, length)) {
+                return terminalNodes[i];
+            }
+        }
+        if (keyContainsEscapes && length >= minEscapedKeyLength) {
+            return escapedKeyLookup.lookup(bytes, offset, length, keyContainsEscapes, keyMatcherRootNodePointer);
+        }
+        return null;
+    }
+
+    private boolean matches(int keyIndex, byte[] bytes, int offset, int length) {
+        byte[] lowercase = lowercaseKeys[keyIndex];
+        byte[] uppercase = uppercaseKeys[keyIndex];
+        int i = 0;
+        if (caseSensitive) {
+            for (; i + Long.BYTES <= length; i += Long.BYTES) {
+                if (SwarUtil.getWord(bytes, offset + i) != SwarUtil.getWord(lowercase, i)) {
+                    return false;
+                }
+            }
+            for (; i < length; i++) {
+                if (bytes[offset + i] != lowercase[i]) {
+                    return false;
+                }
+            }
+        } else {
+            for (; i + Long.BYTES <= length; i += Long.BYTES) {
+                long word = SwarUtil.getWord(bytes, offset + i);
+                long equalToLowercase = SwarUtil.zeroBytes(word ^ SwarUtil.getWord(lowercase, i));
+                long equalToUppercase = SwarUtil.zeroBytes(word ^ SwarUtil.getWord(uppercase, i));
+                if ((equalToLowercase | equalToUppercase) != SwarUtil.HIGH_BITS) {
+                    return false;
+                }
+            }
+            for (; i < length; i++) {
+                byte b = bytes[offset + i];
+                if (b != lowercase[i] && b != uppercase[i]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -2,15 +2,21 @@ package dev.blaauwendraad.masker.json;
 
 import dev.blaauwendraad.masker.json.util.Utf8Util;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
+import org.jspecify.annotations.Nullable;
 
 /**
  * Represents the state of the {@link JsonMasker} at a given point in time during the {@link JsonMasker#mask(byte[])}
  * operation.
  */
 class MaskingState implements ValueMaskerContext {
+    private static final byte[] NO_MASK = new byte[0];
+
     protected byte[] message;
     protected int messageLength;
     protected int currentIndex = 0;
@@ -33,6 +39,16 @@ class MaskingState implements ValueMaskerContext {
     protected int currentTokenStartIndex = -1;
 
     private KeyMatcher.RadixTriePointer keyMatcherRootNodePointer;
+    /** Created on the first value masked by {@link ValueMaskers#withTextMasker(TextValueMasker)}. */
+    private @Nullable DecodedTextBuffer decodedTextBuffer;
+    /** Created on the first value checked by {@link HighEntropyDetector}, one count for every ASCII byte. */
+    private int @Nullable [] entropyHistogram;
+    /**
+     * The replacements of which the masks are resolved by a {@link BatchTextValueMasker} right before the replacement
+     * operations are flushed, empty unless {@link ValueMaskers#withBatchTextFunction(java.util.function.Function)} is
+     * used.
+     */
+    private final List<DeferredReplacement> deferredReplacements = new ArrayList<>();
 
     public MaskingState(byte[] message, KeyMatcher.RadixTriePointer keyMatcherRootNodePointer) {
         this.message = message;
@@ -43,23 +59,44 @@ class MaskingState implements ValueMaskerContext {
     /**
      * Advances to the next byte in the message or (Streaming API) buffer, expanding the buffer if necessary.
      *
+     * <p>This method, as well as {@link #endOfJson()}, is final so that the calls from the masker are monomorphic and
+     * can be inlined, also when both the in-memory and the streaming API are used in the same JVM. The streaming API
+     * only hooks in through {@link #reloadBuffer()} once the end of the buffer has been reached.
+     *
      * @return {@code true} if the current index is within the bounds of the message or if the (Streaming API) buffer
      *     was successfully reloaded and more data is available in the stream, {@code false} otherwise
      */
-    public boolean next() {
-        return ++currentIndex < messageLength;
+    public final boolean next() {
+        return ++currentIndex < messageLength || reloadBuffer();
     }
 
     public void incrementIndex(int length) {
         currentIndex += length;
     }
 
+    /**
+     * Skips the remainder of the message, which is kept as is. Used when none of the remaining values can be masked.
+     */
+    void skipRemainder() {
+        currentIndex = messageLength;
+    }
+
     public byte byteAtCurrentIndex() {
         return message[currentIndex];
     }
 
-    public boolean endOfJson() {
-        return currentIndex >= messageLength;
+    public final boolean endOfJson() {
+        return currentIndex >= messageLength && !reloadBuffer();
+    }
+
+    /**
+     * Called when the current index has reached the end of the message. The in-memory message has no more data, the
+     * (Streaming API) buffer is reloaded from the input stream.
+     *
+     * @return {@code true} if more data is available, {@code false} otherwise
+     */
+    protected boolean reloadBuffer() {
+        return false;
     }
 
     public int currentIndex() {
@@ -71,9 +108,8 @@ class MaskingState implements ValueMaskerContext {
     }
 
     /**
-     * Replaces a target value (byte slice) with a mask byte. If lengths of both target value and mask are equal, the
-     * replacement is done in-place, otherwise a replacement operation is recorded to be performed as a batch using
-     * {@link #flushReplacementOperations()}.
+     * Replaces a target value (byte slice) with a mask byte. The message itself is never modified, the replacement
+     * operation is recorded to be performed as a batch using {@link #flushReplacementOperations()}.
      *
      * @param startIndex the start index of the target value in the byte array
      * @param length the length of the target value to be replaced
@@ -88,18 +124,84 @@ class MaskingState implements ValueMaskerContext {
         replacementOperationsTotalDifference += replacementOperation.difference();
     }
 
+    /**
+     * Same as {@link #replaceTargetValueWith(int, int, byte[], int)}, but uses a slice of the given array as the mask.
+     * The replacement is only performed by {@link #flushReplacementOperations()}, so the slice is copied as the array
+     * may be reused by the caller.
+     */
+    void replaceTargetValueWith(
+            int startIndex, int length, byte[] mask, int maskOffset, int maskLength, int maskRepeat) {
+        replaceTargetValueWith(
+                startIndex, length, Arrays.copyOfRange(mask, maskOffset, maskOffset + maskLength), maskRepeat);
+    }
+
+    /**
+     * Records a replacement of the current value of which the mask is resolved by the {@link BatchTextValueMasker}
+     * together with the other values of the message, right before the replacement operations are flushed.
+     *
+     * @param masker the masker to resolve the mask with
+     * @param value the decoded current value
+     * @return {@code true} if the replacement is deferred, {@code false} if the masker must replace the value right
+     *     away
+     */
+    boolean deferReplacement(BatchTextValueMasker masker, String value) {
+        ReplacementOperation replacementOperation =
+                new ReplacementOperation(getCurrentTokenStartIndex(), byteLength(), NO_MASK, 1);
+        // the difference is only known once the mask is resolved
+        replacementOperations.add(replacementOperation);
+        deferredReplacements.add(new DeferredReplacement(masker, value, replacementOperation));
+        return true;
+    }
+
+    /**
+     * Resolves the masks of the deferred replacements, calling every {@link BatchTextValueMasker} once with all its
+     * values in the order of the message.
+     */
+    private void resolveDeferredReplacements() {
+        List<BatchTextValueMasker> maskers = new ArrayList<>();
+        for (DeferredReplacement deferredReplacement : deferredReplacements) {
+            if (!maskers.contains(deferredReplacement.masker)) {
+                maskers.add(deferredReplacement.masker);
+            }
+        }
+        for (BatchTextValueMasker masker : maskers) {
+            List<ReplacementOperation> batch = new ArrayList<>();
+            List<String> values = new ArrayList<>();
+            for (DeferredReplacement deferredReplacement : deferredReplacements) {
+                if (deferredReplacement.masker == masker) {
+                    batch.add(deferredReplacement.replacementOperation);
+                    values.add(deferredReplacement.value);
+                }
+            }
+            byte[][] masks = masker.maskAll(values);
+            for (int i = 0; i < masks.length; i++) {
+                ReplacementOperation replacementOperation = batch.get(i);
+                replacementOperation.mask = masks[i];
+                replacementOperationsTotalDifference += replacementOperation.difference();
+            }
+        }
+        deferredReplacements.clear();
+    }
+
     /**
      * Performs all replacement operations to the message array, must be called at the end of the replacements.
      *
      * <p>For every operation that required resizing of the original array, to avoid copying the array multiple times,
      * those operations were stored in a list and can be performed in one go, thus resizing the array only once.
      *
-     * <p>Replacement operation is only recorded if the length of the target value is different from the length of the
-     * mask, otherwise the replacement must have been done in-place.
+     * <p>If no replacement operation was recorded, the original message array itself is returned, which allows
+     * {@link JsonMasker#mask(String)} to return the input without decoding it.
      *
-     * @return the message array with all replacement operations performed.
+     * <p>The masks of the deferred replacements (see {@link #deferReplacement(BatchTextValueMasker, String)}) are
+     * resolved first.
+     *
+     * @return the message array with all replacement operations performed, or the original message array if there
+     *     were none
      */
     public byte[] flushReplacementOperations() {
+        if (!deferredReplacements.isEmpty()) {
+            resolveDeferredReplacements();
+        }
         if (replacementOperations.isEmpty()) {
             return message;
         }
@@ -120,15 +222,13 @@ class MaskingState implements ValueMaskerContext {
             // Copy everything from message up until replacement operation start index
             System.arraycopy(message, index, newMessage, index + offset, replacementOperation.startIndex - index);
             // Insert the mask bytes
-            int length = replacementOperation.mask.length;
-            for (int i = 0; i < replacementOperation.maskRepeat; i++) {
-                System.arraycopy(
-                        replacementOperation.mask,
-                        0,
-                        newMessage,
-                        replacementOperation.startIndex + offset + i * length,
-                        length);
-            }
+            fillMask(
+                    replacementOperation.mask,
+                    0,
+                    replacementOperation.mask.length,
+                    replacementOperation.maskRepeat,
+                    newMessage,
+                    replacementOperation.startIndex + offset);
             // Adjust index and offset to continue copying from the end of the replacement operation
             index = replacementOperation.startIndex + replacementOperation.length;
             offset += replacementOperation.difference();
@@ -175,6 +275,27 @@ class MaskingState implements ValueMaskerContext {
         this.currentTokenStartIndex = -1;
     }
 
+    /**
+     * Returns the buffer for masking values based on their decoded text, which is reused for all values of the message.
+     */
+    DecodedTextBuffer getDecodedTextBuffer() {
+        if (decodedTextBuffer == null) {
+            decodedTextBuffer = new DecodedTextBuffer();
+        }
+        return decodedTextBuffer;
+    }
+
+    /**
+     * Returns the byte histogram for computing the entropy of a string value, which is reused for all values of the
+     * message. All the counts must be cleared again after use.
+     */
+    int[] getEntropyHistogram() {
+        if (entropyHistogram == null) {
+            entropyHistogram = new int[128];
+        }
+        return entropyHistogram;
+    }
+
     public KeyMatcher.RadixTriePointer getKeyMatcherRootNodePointer() {
         return keyMatcherRootNodePointer;
     }
@@ -190,6 +311,31 @@ class MaskingState implements ValueMaskerContext {
         return Math.min(currentIndex, messageLength) - getCurrentTokenStartIndex();
     }
 
+    @Override
+    public void getBytes(int fromIndex, int length, byte[] destination, int destinationOffset) {
+        Objects.checkFromIndexSize(fromIndex, length, byteLength());
+        System.arraycopy(message, getCurrentTokenStartIndex() + fromIndex, destination, destinationOffset, length);
+    }
+
+    @Override
+    public ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(message, getCurrentTokenStartIndex(), byteLength())
+                .slice()
+                .asReadOnlyBuffer();
+    }
+
+    @Override
+    public int indexOf(byte value, int fromIndex) {
+        int offset = getCurrentTokenStartIndex();
+        int end = offset + byteLength();
+        for (int i = offset + Math.max(fromIndex, 0); i < end; i++) {
+            if (message[i] == value) {
+                return i - offset;
+            }
+        }
+        return -1;
+    }
+
     @Override
     public void replaceBytes(int fromIndex, int length, byte[] mask, int maskRepeat) {
         checkCurrentValueBounds(fromIndex);
@@ -197,6 +343,15 @@ class MaskingState implements ValueMaskerContext {
         replaceTargetValueWith(getCurrentTokenStartIndex() + fromIndex, length, mask, maskRepeat);
     }
 
+    @Override
+    public void replaceBytes(int fromIndex, int length, byte[] mask, int maskOffset, int maskLength, int maskRepeat) {
+        checkCurrentValueBounds(fromIndex);
+        checkCurrentValueBounds(fromIndex + length - 1);
+        Objects.checkFromIndexSize(maskOffset, maskLength, mask.length);
+        replaceTargetValueWith(
+                getCurrentTokenStartIndex() + fromIndex, length, mask, maskOffset, maskLength, maskRepeat);
+    }
+
     @Override
     public int countNonVisibleCharacters(int fromIndex, int length) {
         checkCurrentValueBounds(fromIndex);
@@ -248,6 +403,39 @@ class MaskingState implements ValueMaskerContext {
         return sb.toString();
     }
 
+    /**
+     * Writes the mask the given number of times into the destination. A single byte mask (e.g. of
+     * {@link ValueMaskers#eachCharacterWith(String)}) is written with a single fill, a longer mask is copied once and
+     * then the written masks are doubled until the mask has been repeated enough times.
+     *
+     * @param mask the array containing the mask
+     * @param maskOffset the index of the mask in the array
+     * @param maskLength the length of the mask
+     * @param maskRepeat the number of times to write the mask
+     * @param destination the array to write the masks into
+     * @param destinationOffset the index in the destination to write the first mask at
+     */
+    static void fillMask(
+            byte[] mask, int maskOffset, int maskLength, int maskRepeat, byte[] destination, int destinationOffset) {
+        int totalLength = maskLength * maskRepeat;
+        if (maskLength == 1) {
+            Arrays.fill(destination, destinationOffset, destinationOffset + totalLength, mask[maskOffset]);
+            return;
+        }
+        if (totalLength == 0) {
+            return;
+        }
+        System.arraycopy(mask, maskOffset, destination, destinationOffset, maskLength);
+        for (int filled = maskLength; filled < totalLength; filled *= 2) {
+            System.arraycopy(
+                    destination,
+                    destinationOffset,
+                    destination,
+                    destinationOffset + filled,
+                    Math.min(filled, totalLength - filled));
+        }
+    }
+
     /**
      * Represents a delayed replacement that requires resizing of the message byte array. In order to avoid resizing on
      * every mask, we store the replacement operations in a list and apply them all at once at the end, thus making only
@@ -258,7 +446,8 @@ class MaskingState implements ValueMaskerContext {
     private static final class ReplacementOperation {
         private final int startIndex;
         private final int length;
-        private final byte[] mask;
+        /** Assigned after construction when the replacement is deferred. */
+        private byte[] mask;
         private final int maskRepeat;
 
         /**
@@ -282,4 +471,21 @@ class MaskingState implements ValueMaskerContext {
             return mask.length * maskRepeat - length;
         }
     }
+
+    /**
+     * A replacement operation of which the mask is resolved by a {@link BatchTextValueMasker}.
+     *
+     * @see #deferReplacement(BatchTextValueMasker, String)
+     */
+    private static final class DeferredReplacement {
+        private final BatchTextValueMasker masker;
+        private final String value;
+        private final ReplacementOperation replacementOperation;
+
+        DeferredReplacement(BatchTextValueMasker masker, String value, ReplacementOperation replacementOperation) {
+            this.masker = masker;
+            this.value = value;
+            this.replacementOperation = replacementOperation;
+        }
+    }
 }
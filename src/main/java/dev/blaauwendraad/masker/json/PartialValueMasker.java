@@ -0,0 +1,160 @@
+package dev.blaauwendraad.masker.json;
+
+import dev.blaauwendraad.masker.json.util.Utf8Util;
+import java.util.Arrays;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * {@link ValueMasker} that keeps the first and last characters of a string value and masks the characters in between,
+ * see {@link ValueMaskers#keepFirstAndLast(int, int, String, boolean, boolean)}.
+ *
+ * <p>The characters are counted on the JSON encoded bytes directly, without decoding the value: a character is a UTF-8
+ * encoded code point or an escape sequence (a unicode escape sequence counts as a single character, so a surrogate
+ * pair counts as two). The masked characters are replaced with a single {@link ValueMaskerContext#replaceBytes} call.
+ */
+final class PartialValueMasker implements ValueMasker.StringMasker {
+    private final int keepFirst;
+    private final int keepLast;
+    private final byte[] mask;
+    private final boolean preserveLength;
+    private final boolean keepSeparators;
+
+    /**
+     * Creates the masker.
+     *
+     * @param keepFirst the number of leading characters to keep
+     * @param keepLast the number of trailing characters to keep
+     * @param mask the JSON encoded mask
+     * @param preserveLength whether every masked character is replaced by the mask, rather than every run of masked
+     *     characters
+     * @param keepSeparators whether the spaces and dashes are kept, in which case they are not counted as characters
+     * @throws IllegalArgumentException if the number of characters to keep is negative
+     */
+    PartialValueMasker(int keepFirst, int keepLast, byte[] mask, boolean preserveLength, boolean keepSeparators) {
+        if (keepFirst < 0 || keepLast < 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Number of characters to keep must not be negative, but was %s and %s", keepFirst, keepLast));
+        }
+        this.keepFirst = keepFirst;
+        this.keepLast = keepLast;
+        this.mask = mask;
+        this.preserveLength = preserveLength;
+        this.keepSeparators = keepSeparators;
+    }
+
+    /**
+     * Reads the masker written by {@link #writeTo(JsonMaskerSnapshot.SnapshotWriter)}.
+     *
+     * @param in the snapshot, positioned at the masker
+     * @return the masker
+     * @throws IllegalArgumentException if the snapshot is invalid
+     */
+    static PartialValueMasker readFrom(JsonMaskerSnapshot.SnapshotReader in) {
+        return new PartialValueMasker(in.readInt(), in.readInt(), in.readBytes(), in.readBoolean(), in.readBoolean());
+    }
+
+    /**
+     * Writes the masker to a {@link JsonMaskerSnapshot}.
+     *
+     * @param out the snapshot to write to
+     */
+    void writeTo(JsonMaskerSnapshot.SnapshotWriter out) {
+        out.writeInt(keepFirst);
+        out.writeInt(keepLast);
+        out.writeBytes(mask);
+        out.writeBoolean(preserveLength);
+        out.writeBoolean(keepSeparators);
+    }
+
+    @Override
+    public void maskValue(ValueMaskerContext context) {
+        int valueEndIndex = context.byteLength() - 1; // minus the closing quote
+        int characters = 0;
+        for (int index = 1; index < valueEndIndex; index += characterLength(context, index)) {
+            if (!isSeparator(context.getByte(index))) {
+                characters++;
+            }
+        }
+        // when there is nothing left to mask, all characters are masked rather than revealing the whole value
+        boolean maskAll = characters <= keepFirst + keepLast;
+        int firstMasked = maskAll ? 0 : keepFirst;
+        int lastMasked = maskAll ? characters : characters - keepLast; // exclusive
+        if (firstMasked == lastMasked) {
+            return; // empty string
+        }
+
+        // find the range of bytes from the first to the last masked character
+        int maskStartIndex = -1;
+        int maskEndIndex = -1;
+        int character = 0;
+        for (int index = 1; index < valueEndIndex; index += characterLength(context, index)) {
+            if (isSeparator(context.getByte(index))) {
+                continue;
+            }
+            if (character == firstMasked) {
+                maskStartIndex = index;
+            }
+            character++;
+            if (character == lastMasked) {
+                maskEndIndex = index + characterLength(context, index);
+                break;
+            }
+        }
+        int maskedLength = maskEndIndex - maskStartIndex;
+        if (!keepSeparators) {
+            context.replaceBytes(maskStartIndex, maskedLength, mask, preserveLength ? lastMasked - firstMasked : 1);
+            return;
+        }
+
+        // every masked byte is replaced by at most the whole mask, and every kept separator by itself
+        byte[] maskedValue = new byte[maskedLength * Math.max(1, mask.length)];
+        int length = 0;
+        boolean maskingRun = false;
+        for (int index = maskStartIndex; index < maskEndIndex; index += characterLength(context, index)) {
+            byte b = context.getByte(index);
+            if (isSeparator(b)) {
+                maskedValue[length++] = b;
+                maskingRun = false;
+            } else if (preserveLength || !maskingRun) {
+                System.arraycopy(mask, 0, maskedValue, length, mask.length);
+                length += mask.length;
+                maskingRun = true;
+            }
+        }
+        context.replaceBytes(maskStartIndex, maskedLength, maskedValue, 0, length, 1);
+    }
+
+    /** Returns the number of bytes of the character (code point or escape sequence) at the given index. */
+    private static int characterLength(ValueMaskerContext context, int index) {
+        byte b = context.getByte(index);
+        if (b == '\\') {
+            return context.getByte(index + 1) == 'u' ? 6 : 2;
+        }
+        return Utf8Util.getCodePointByteLength(b);
+    }
+
+    private boolean isSeparator(byte b) {
+        return keepSeparators && (b == ' ' || b == '-');
+    }
+
+    @Override
+    public boolean equals(@Nullable Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PartialValueMasker)) {
+            return false;
+        }
+        PartialValueMasker other = (PartialValueMasker) o;
+        return keepFirst == other.keepFirst
+                && keepLast == other.keepLast
+                && preserveLength == other.preserveLength
+                && keepSeparators == other.keepSeparators
+                && Arrays.equals(mask, other.mask);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * keepFirst + keepLast) + Arrays.hashCode(mask);
+    }
+}
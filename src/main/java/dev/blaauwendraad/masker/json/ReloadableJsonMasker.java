@@ -0,0 +1,299 @@
+package dev.blaauwendraad.masker.json;
+
+import dev.blaauwendraad.masker.json.config.JsonMaskingConfig;
+import dev.blaauwendraad.masker.json.config.JsonMaskingConfig.KeyLookupStrategy;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A {@link JsonMasker} of which the masking configuration (e.g. the target keys) can be replaced at runtime, without
+ * creating a new {@link JsonMasker} instance.
+ *
+ * <p>Masking is lock-free: every {@code mask} call uses the masker that was current when the call started, so the
+ * concurrent calls continue masking with the old configuration while the new one is being prepared, and all subsequent
+ * calls use the new configuration once the {@link #reload(JsonMaskingConfig)} returns.
+ *
+ * <p>When only a small part of the target keys changes, the look-up trie is updated copy-on-write: only the trie nodes
+ * on the path of the changed keys are copied. Otherwise, the trie is rebuilt from scratch. To find the changed keys,
+ * {@link #reload(JsonMaskingConfig)} compares all keys of both configurations, which is much cheaper than building the
+ * trie, but still proportional to the size of the whole key set. When the caller knows which keys changed,
+ * {@link #reload(JsonMaskingConfig, Set)} skips the comparison, so the cost of the reload is proportional to the number
+ * of the changed keys. The trie is only updated if the keys are looked up in it, see
+ * {@link JsonMaskingConfig#getKeyLookupStrategy()}. The JSONPaths are not part of the look-up trie, their
+ * {@link JsonPathAutomaton} is always rebuilt.
+ */
+public final class ReloadableJsonMasker implements JsonMasker {
+    /**
+     * The maximum fraction of the changed keys for which the look-up trie is updated copy-on-write. For larger changes
+     * it is cheaper to build a new trie, which is also more compact.
+     */
+    private static final int MAX_CHANGED_KEYS_FRACTION = 16;
+
+    private volatile KeyContainsMasker delegate;
+
+    // The following fields are only accessed by the (synchronized) reload, never by the masking itself
+    /** The key matcher of the current delegate. Package private for unit tests. */
+    KeyMatcher keyMatcher;
+    /**
+     * All keys inserted into the look-up trie, with {@code true} for the negative matches, see {@link KeyMatcher}.
+     * Updated in place by the copy-on-write updates.
+     */
+    private Map<String, Boolean> insertedKeys;
+    /**
+     * The inserted keys by their lowercase form (unless case-sensitive), since the keys that differ only in casing
+     * share the same trie node. Only created on the first copy-on-write update, and updated in place afterwards.
+     */
+    private @Nullable Map<String, Set<String>> insertedKeysByTrieKey;
+
+    /**
+     * Creates a {@link ReloadableJsonMasker} with the provided {@link JsonMaskingConfig}.
+     *
+     * @param maskingConfig the initial JSON masker configuration
+     */
+    public ReloadableJsonMasker(JsonMaskingConfig maskingConfig) {
+        this.keyMatcher = new KeyMatcher(maskingConfig);
+        this.delegate = new KeyContainsMasker(maskingConfig, keyMatcher);
+        this.insertedKeys = insertedKeys(maskingConfig);
+    }
+
+    /** Returns the {@link JsonMaskingConfig} currently used for masking. */
+    public JsonMaskingConfig getMaskingConfig() {
+        return delegate.maskingConfig;
+    }
+
+    /**
+     * Replaces the masking configuration. The masking calls that are in progress complete with the previous
+     * configuration, the calls started after this method returns use the new configuration.
+     *
+     * @param maskingConfig the new JSON masker configuration
+     */
+    public synchronized void reload(JsonMaskingConfig maskingConfig) {
+        Map<String, Boolean> newInsertedKeys = insertedKeys(maskingConfig);
+        List<String> changedKeys = null;
+        if (canUpdateTrie(maskingConfig, newInsertedKeys.size())) {
+            changedKeys = changedKeys(
+                    delegate.maskingConfig,
+                    maskingConfig,
+                    newInsertedKeys,
+                    newInsertedKeys.size() / MAX_CHANGED_KEYS_FRACTION);
+        }
+        if (changedKeys == null) {
+            rebuild(maskingConfig, newInsertedKeys);
+        } else {
+            update(maskingConfig, changedKeys);
+        }
+    }
+
+    /**
+     * Replaces the masking configuration, like {@link #reload(JsonMaskingConfig)}, but only updates the look-up trie
+     * for the given keys instead of comparing all keys of the current and the new configuration. The keys that are not
+     * given are assumed to be unchanged, so the given keys must include every key that was added to or removed from
+     * the target keys (or, in allow mode, the keys having a specific masking configuration), and every key of which
+     * the {@link dev.blaauwendraad.masker.json.config.KeyMaskingConfig} was replaced.
+     *
+     * <p>If the case sensitivity or the target key mode changed, the keys are not looked up in the radix trie, or too
+     * many keys changed, the trie is rebuilt from scratch like in {@link #reload(JsonMaskingConfig)}.
+     *
+     * @param maskingConfig the new JSON masker configuration
+     * @param changedKeys the keys that were added, removed or of which the masking configuration was replaced
+     */
+    public synchronized void reload(JsonMaskingConfig maskingConfig, Set<String> changedKeys) {
+        if (canUpdateTrie(maskingConfig, insertedKeys.size())
+                && changedKeys.size() <= insertedKeys.size() / MAX_CHANGED_KEYS_FRACTION) {
+            update(maskingConfig, changedKeys);
+        } else {
+            rebuild(maskingConfig, insertedKeys(maskingConfig));
+        }
+    }
+
+    /**
+     * Returns whether the look-up trie of the current {@link KeyMatcher} can be updated copy-on-write for the new
+     * masking config, i.e. whether the keys are inserted in the same way and the keys of the new masking config are
+     * looked up in the radix trie, see {@link #usesRadixTrie(JsonMaskingConfig, int)}.
+     */
+    private boolean canUpdateTrie(JsonMaskingConfig maskingConfig, int insertedKeyCount) {
+        JsonMaskingConfig currentConfig = delegate.maskingConfig;
+        return maskingConfig.caseSensitiveTargetKeys() == currentConfig.caseSensitiveTargetKeys()
+                && maskingConfig.isInAllowMode() == currentConfig.isInAllowMode()
+                && usesRadixTrie(maskingConfig, insertedKeyCount);
+    }
+
+    /**
+     * Returns whether the {@link KeyMatcher} of the masking config looks up the keys in the radix trie, given the
+     * number of distinct keys in the trie (or an upper bound of it). With {@link KeyLookupStrategy#AUTOMATIC}, the
+     * {@link LinearKeyLookup} might be selected for up to {@link KeyMatcher#LINEAR_LOOKUP_MAX_DISTINCT_LENGTH_KEYS}
+     * keys, depending on their lengths, so the radix trie is only assumed for the larger key sets.
+     */
+    private static boolean usesRadixTrie(JsonMaskingConfig maskingConfig, int trieKeyCount) {
+        KeyLookupStrategy strategy = maskingConfig.getKeyLookupStrategy();
+        return strategy == KeyLookupStrategy.RADIX_TRIE
+                || (strategy == KeyLookupStrategy.AUTOMATIC
+                        && trieKeyCount > KeyMatcher.LINEAR_LOOKUP_MAX_DISTINCT_LENGTH_KEYS);
+    }
+
+    private void rebuild(JsonMaskingConfig maskingConfig, Map<String, Boolean> newInsertedKeys) {
+        keyMatcher = new KeyMatcher(maskingConfig);
+        insertedKeys = newInsertedKeys;
+        insertedKeysByTrieKey = null;
+        delegate = new KeyContainsMasker(maskingConfig, keyMatcher);
+    }
+
+    private void update(JsonMaskingConfig maskingConfig, Collection<String> changedKeys) {
+        KeyMatcher.RadixTrieNode root;
+        try {
+            root = updateTrie(maskingConfig, changedKeys);
+        } catch (RuntimeException e) {
+            // the inserted keys might be partially updated, so they are recomputed from the current masking config
+            insertedKeys = insertedKeys(delegate.maskingConfig);
+            insertedKeysByTrieKey = null;
+            throw e;
+        }
+        if (!usesRadixTrie(maskingConfig, Objects.requireNonNull(insertedKeysByTrieKey).size())) {
+            // the key set shrunk to a size for which another key lookup strategy might be selected
+            rebuild(maskingConfig, insertedKeys);
+            return;
+        }
+        keyMatcher = new KeyMatcher(maskingConfig, root);
+        delegate = new KeyContainsMasker(maskingConfig, keyMatcher);
+    }
+
+    @Override
+    public byte[] mask(byte[] input) {
+        return delegate.mask(input);
+    }
+
+    @Override
+    public void mask(InputStream inputStream, OutputStream outputStream) {
+        delegate.mask(inputStream, outputStream);
+    }
+
+    /**
+     * Returns the keys that were added, removed or for which the masking configuration changed, or {@code null} if
+     * there are more than {@code maxChangedKeys} of them. The masking configurations are compared by value, so a
+     * separately built but equal configuration doesn't change the key.
+     */
+    private @Nullable List<String> changedKeys(
+            JsonMaskingConfig currentConfig,
+            JsonMaskingConfig maskingConfig,
+            Map<String, Boolean> newInsertedKeys,
+            int maxChangedKeys) {
+        List<String> changedKeys = new ArrayList<>();
+        for (String key : insertedKeys.keySet()) {
+            if (!newInsertedKeys.containsKey(key) && !addChangedKey(changedKeys, key, maxChangedKeys)) {
+                return null;
+            }
+        }
+        for (Map.Entry<String, Boolean> entry : newInsertedKeys.entrySet()) {
+            String key = entry.getKey();
+            if ((!entry.getValue().equals(insertedKeys.get(key))
+                            || !Objects.equals(currentConfig.getKeyConfig(key), maskingConfig.getKeyConfig(key)))
+                    && !addChangedKey(changedKeys, key, maxChangedKeys)) {
+                return null;
+            }
+        }
+        return changedKeys;
+    }
+
+    private static boolean addChangedKey(List<String> changedKeys, String key, int maxChangedKeys) {
+        changedKeys.add(key);
+        return changedKeys.size() <= maxChangedKeys;
+    }
+
+    /**
+     * Updates the look-up trie of the current {@link KeyMatcher} copy-on-write, by re-inserting or removing the trie
+     * keys of all changed keys. The inserted keys are updated along the way.
+     */
+    private KeyMatcher.RadixTrieNode updateTrie(JsonMaskingConfig maskingConfig, Collection<String> changedKeys) {
+        Map<String, Set<String>> keysByTrieKey = insertedKeysByTrieKey;
+        if (keysByTrieKey == null) {
+            keysByTrieKey = new HashMap<>();
+            for (String key : insertedKeys.keySet()) {
+                keysByTrieKey
+                        .computeIfAbsent(trieKey(maskingConfig, key), k -> new LinkedHashSet<>())
+                        .add(key);
+            }
+            insertedKeysByTrieKey = keysByTrieKey;
+        }
+        Set<String> changedTrieKeys = new LinkedHashSet<>();
+        for (String key : changedKeys) {
+            String trieKey = trieKey(maskingConfig, key);
+            changedTrieKeys.add(trieKey);
+            Set<String> keys = keysByTrieKey.computeIfAbsent(trieKey, k -> new LinkedHashSet<>());
+            Boolean negativeMatch = insertedKey(maskingConfig, key);
+            if (negativeMatch != null) {
+                insertedKeys.put(key, negativeMatch);
+                keys.add(key);
+            } else {
+                insertedKeys.remove(key);
+                keys.remove(key);
+            }
+        }
+        KeyMatcher.RadixTrieNode root = keyMatcher.getRootNode();
+        for (String trieKey : changedTrieKeys) {
+            Set<String> keys = Objects.requireNonNull(keysByTrieKey.get(trieKey));
+            if (keys.isEmpty()) {
+                keysByTrieKey.remove(trieKey);
+                root = root.withoutKey(trieKey.getBytes(StandardCharsets.UTF_8));
+            } else {
+                KeyMatcher.RadixTrieBuilder.TargetKey targetKey = null;
+                for (String key : keys) {
+                    KeyMatcher.RadixTrieBuilder.TargetKey candidate = KeyMatcher.RadixTrieBuilder.TargetKey.of(
+                            maskingConfig, key, Boolean.TRUE.equals(insertedKeys.get(key)));
+                    if (targetKey == null || candidate.takesPrecedenceOver(targetKey)) {
+                        targetKey = candidate;
+                    }
+                }
+                root = root.withKey(Objects.requireNonNull(targetKey));
+            }
+        }
+        return root;
+    }
+
+    private static String trieKey(JsonMaskingConfig maskingConfig, String key) {
+        return maskingConfig.caseSensitiveTargetKeys() ? key : key.toLowerCase();
+    }
+
+    /**
+     * Returns all keys inserted into the look-up trie of the masking config, in the same order as in
+     * {@link KeyMatcher.RadixTrieBuilder#forConfig(JsonMaskingConfig)}.
+     */
+    private static Map<String, Boolean> insertedKeys(JsonMaskingConfig maskingConfig) {
+        Map<String, Boolean> insertedKeys = new LinkedHashMap<>();
+        for (String key : maskingConfig.getTargetKeys()) {
+            insertedKeys.put(key, false);
+        }
+        if (maskingConfig.isInAllowMode()) {
+            for (String key : maskingConfig.getKeyConfigs().keySet()) {
+                if (JsonPathAutomaton.parseJsonPathKey(key) == null) {
+                    insertedKeys.put(key, true);
+                }
+            }
+        }
+        return insertedKeys;
+    }
+
+    /**
+     * Returns whether the key is inserted into the look-up trie of the masking config, see
+     * {@link #insertedKeys(JsonMaskingConfig)}: {@code true} for a negative match, {@code false} for a regular match
+     * and {@code null} if the key is not inserted.
+     */
+    private static @Nullable Boolean insertedKey(JsonMaskingConfig maskingConfig, String key) {
+        if (maskingConfig.isInAllowMode()
+                && maskingConfig.getKeyConfig(key) != null
+                && JsonPathAutomaton.parseJsonPathKey(key) == null) {
+            return true;
+        }
+        return maskingConfig.getTargetKeys().contains(key) ? false : null;
+    }
+}
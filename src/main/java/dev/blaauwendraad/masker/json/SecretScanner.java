@@ -0,0 +1,211 @@
+package dev.blaauwendraad.masker.json;
+
+import dev.blaauwendraad.masker.json.util.Utf8Util;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * Detects and masks known secrets (literal strings) in the string values of the JSON, see
+ * {@link dev.blaauwendraad.masker.json.config.JsonMaskingConfig.Builder#maskSecretsInStrings(Set)}.
+ *
+ * <p>The secrets are compiled into an Aho-Corasick automaton once, when the {@link JsonMasker} is created, so a string
+ * value is scanned in a single pass regardless of the number of secrets. The automaton is stored as a deterministic
+ * transition table over the bytes, where the bytes are first mapped to classes: all bytes that don't occur in any of
+ * the secrets share a single class, which keeps the table small. Every byte of a string value then costs two array
+ * accesses.
+ *
+ * <p>The secrets are matched against the JSON encoded bytes of the string values, i.e. a secret containing a character
+ * that must be escaped in JSON is matched against its escape sequence. A match that starts in the middle of an escape
+ * sequence (e.g. the {@code n} of {@code \n}) is ignored. The overlapping and adjacent matches are merged, and every
+ * merged match is replaced by {@code ***}.
+ *
+ * <p>The automaton is immutable, so the scanner is thread-safe.
+ */
+final class SecretScanner {
+    /** The root state of the automaton, which is also used as the absence of a match state. */
+    private static final int ROOT = 0;
+    private static final byte[] MASK = "***".getBytes(StandardCharsets.UTF_8);
+
+    /** The class of every byte, where {@code 0} is the class of the bytes that don't occur in any of the secrets. */
+    private final int[] byteClasses;
+    /** The number of byte classes, i.e. the length of the row of a state in the {@link #transitions}. */
+    private final int classes;
+    /** The transitions of the automaton, indexed by the state times the number of classes plus the byte class. */
+    private final int[] transitions;
+    /** The failure transitions, i.e. the state of the longest proper suffix of a state that is in the automaton. */
+    private final int[] failures;
+    /**
+     * The longest state matching a secret in the chain of failure transitions starting at a state (including the state
+     * itself), or {@link #ROOT} if none of the states in the chain matches a secret.
+     */
+    private final int[] matches;
+    /** The length of the matched secret of every state, or {@code 0} if the state doesn't match a secret. */
+    private final int[] matchLengths;
+
+    /**
+     * Compiles the secrets into the automaton.
+     *
+     * @param secrets the secrets to mask, none of which may be empty
+     */
+    SecretScanner(Set<String> secrets) {
+        byte[][] patterns = secrets.stream()
+                .map(secret -> Utf8Util.jsonEncode(secret, false).getBytes(StandardCharsets.UTF_8))
+                .toArray(byte[][]::new);
+        this.byteClasses = new int[256];
+        int classCount = 1;
+        int maxStates = 1;
+        for (byte[] pattern : patterns) {
+            for (byte b : pattern) {
+                if (byteClasses[b & 0xFF] == 0) {
+                    byteClasses[b & 0xFF] = classCount++;
+                }
+            }
+            maxStates += pattern.length;
+        }
+        this.classes = classCount;
+
+        // build the trie of the secrets, a missing transition points to the root (which is never a child)
+        int[] transitions = new int[maxStates * classes];
+        int[] matchLengths = new int[maxStates];
+        int states = 1;
+        for (byte[] pattern : patterns) {
+            int state = ROOT;
+            for (byte b : pattern) {
+                int transition = state * classes + byteClasses[b & 0xFF];
+                if (transitions[transition] == ROOT) {
+                    transitions[transition] = states++;
+                }
+                state = transitions[transition];
+            }
+            matchLengths[state] = pattern.length;
+        }
+
+        // complete the trie into the automaton in breadth-first order, so the failure transition of a state (which is
+        // less deep) is always completed before the state itself
+        int[] failures = new int[states];
+        int[] matches = new int[states];
+        Queue<Integer> queue = new ArrayDeque<>();
+        queue.add(ROOT);
+        while (!queue.isEmpty()) {
+            int state = queue.remove();
+            int failure = failures[state];
+            for (int byteClass = 0; byteClass < classes; byteClass++) {
+                int transition = state * classes + byteClass;
+                int child = transitions[transition];
+                int failureTransition = state == ROOT ? ROOT : transitions[failure * classes + byteClass];
+                if (child == ROOT) {
+                    transitions[transition] = failureTransition;
+                } else {
+                    failures[child] = failureTransition;
+                    matches[child] = matchLengths[child] != 0 ? child : matches[failureTransition];
+                    queue.add(child);
+                }
+            }
+        }
+        this.transitions = Arrays.copyOf(transitions, states * classes);
+        this.failures = failures;
+        this.matches = matches;
+        this.matchLengths = Arrays.copyOf(matchLengths, states);
+    }
+
+    /**
+     * Masks the secrets in the given range of the message of the masking state, which must be the content of a string
+     * value (i.e. without the quotes).
+     *
+     * @param maskingState the current masking state
+     * @param fromIndex the index of the first byte of the string value content in the message
+     * @param toIndex the index after the last byte of the string value content in the message
+     * @param maskCardNumbers whether the card numbers in the parts of the string value that are not secrets must be
+     *     masked as well, see {@link CardNumberScanner}
+     */
+    void maskSecrets(MaskingState maskingState, int fromIndex, int toIndex, boolean maskCardNumbers) {
+        byte[] message = maskingState.getMessage();
+        // the start and end indexes of the merged matches, allocated on the first match since secrets are rare
+        int[] matchedRanges = null;
+        int matchedRangesLength = 0;
+        int state = ROOT;
+        for (int index = fromIndex; index < toIndex; index++) {
+            state = transitions[state * classes + byteClasses[message[index] & 0xFF]];
+            if (matches[state] == ROOT) {
+                continue;
+            }
+            int endIndex = index + 1;
+            int startIndex = findMatchStartIndex(message, fromIndex, endIndex, state);
+            if (startIndex < 0) {
+                continue;
+            }
+            if (matchedRanges == null) {
+                matchedRanges = new int[8];
+            }
+            // the matches are found in the order of their end, so a match can only overlap the last merged matches
+            while (matchedRangesLength > 0 && matchedRanges[matchedRangesLength - 1] >= startIndex) {
+                startIndex = Math.min(startIndex, matchedRanges[matchedRangesLength - 2]);
+                matchedRangesLength -= 2;
+            }
+            if (matchedRangesLength == matchedRanges.length) {
+                matchedRanges = Arrays.copyOf(matchedRanges, matchedRanges.length * 2);
+            }
+            matchedRanges[matchedRangesLength++] = startIndex;
+            matchedRanges[matchedRangesLength++] = endIndex;
+        }
+        int index = fromIndex;
+        if (matchedRanges != null) {
+            for (int i = 0; i < matchedRangesLength; i += 2) {
+                if (maskCardNumbers) {
+                    CardNumberScanner.maskCardNumbers(maskingState, index, matchedRanges[i]);
+                }
+                int length = matchedRanges[i + 1] - matchedRanges[i];
+                maskingState.replaceTargetValueWith(matchedRanges[i], length, MASK, 1);
+                index = matchedRanges[i + 1];
+            }
+        }
+        if (maskCardNumbers) {
+            CardNumberScanner.maskCardNumbers(maskingState, index, toIndex);
+        }
+    }
+
+    /**
+     * Finds the start of the longest secret matched by the state that doesn't start in the middle of an escape
+     * sequence. Since the secrets are JSON encoded, such a match also doesn't end in the middle of an escape sequence.
+     *
+     * @return the index of the first byte of the match, or {@code -1} if there is no such match
+     */
+    private int findMatchStartIndex(byte[] message, int fromIndex, int endIndex, int state) {
+        for (int match = matches[state]; match != ROOT; match = matches[failures[match]]) {
+            int startIndex = endIndex - matchLengths[match];
+            if (!isInEscapeSequence(message, fromIndex, startIndex)) {
+                return startIndex;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks whether the byte at the given index is part of an escape sequence, other than its backslash. An escape
+     * sequence is at most 6 bytes long ({@code \}{@code uXXXX}) and only its first byte can be a backslash, so only the
+     * nearest backslash before the index has to be checked.
+     */
+    private static boolean isInEscapeSequence(byte[] message, int fromIndex, int index) {
+        for (int i = index - 1; i >= Math.max(fromIndex, index - 5); i--) {
+            if (message[i] == '\\') {
+                if (!startsEscapeSequence(message, fromIndex, i)) {
+                    return false; // the backslash is escaped, so the escape sequence ends before the index
+                }
+                return index < i + (message[i + 1] == 'u' ? 6 : 2);
+            }
+        }
+        return false;
+    }
+
+    /** Checks whether the backslash at the given index starts an escape sequence, i.e. it is not escaped itself. */
+    private static boolean startsEscapeSequence(byte[] message, int fromIndex, int index) {
+        int precedingBackslashes = 0;
+        while (index - precedingBackslashes > fromIndex && message[index - precedingBackslashes - 1] == '\\') {
+            precedingBackslashes++;
+        }
+        return precedingBackslashes % 2 == 0;
+    }
+}
@@ -0,0 +1,25 @@
+package dev.blaauwendraad.masker.json;
+
+/**
+ * Masks a JSON value based on its decoded text, see {@link ValueMaskers#withTextMasker(TextValueMasker)}.
+ *
+ * <p>Unlike the function of {@link ValueMaskers#withTextFunction(java.util.function.Function)}, the decoded value and
+ * the masked value are not allocated for every masked value: the decoded value is a {@link CharSequence} view of a
+ * buffer and the masked value is appended to a {@link StringBuilder}, both of which are reused for all values masked by
+ * the same {@link JsonMasker#mask(byte[])} call.
+ */
+@FunctionalInterface
+public interface TextValueMasker {
+    /**
+     * Masks the decoded text of a JSON value. For JSON strings, the value is decoded and doesn't include the quotes.
+     * For the other JSON types, the value is the textual representation of the value.
+     *
+     * @param value the decoded value, which is only valid during the call since the underlying buffer is reused for the
+     *     next value. Use {@link CharSequence#toString()} to retain it
+     * @param maskedValue an empty {@link StringBuilder} to append the masked value to, which is encoded into a JSON
+     *     string regardless of the JSON type of the original value
+     * @return {@code true} to replace the value with the masked value, {@code false} to replace the value with the
+     *     {@code null} JSON literal
+     */
+    boolean mask(CharSequence value, StringBuilder maskedValue);
+}
@@ -1,5 +1,9 @@
 package dev.blaauwendraad.masker.json;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
 /**
  * Represents the original value that is currently being masked. The context is passed to
  * {@link ValueMasker#maskValue(ValueMaskerContext)} to allow the implementation to replace the JSON value with a custom
@@ -9,6 +13,11 @@ package dev.blaauwendraad.masker.json;
  * on index. The index includes the JSON value in its entirety which means that for example for strings the opening and
  * closing quotes are included. The reason for this is that the API becomes more flexible as it enables strings to be
  * replaced by {@code null}, for example.
+ *
+ * <p>Reading a long value byte by byte using {@link #getByte(int)} checks the bounds of every index, the bulk accessors
+ * ({@link #getBytes(int, int, byte[], int)}, {@link #asByteBuffer()} and {@link #indexOf(byte, int)}) only check the
+ * bounds once. The default implementations fall back to {@link #getByte(int)}, the implementation used by the
+ * {@link JsonMasker} overrides them to access the underlying bytes directly.
  */
 public interface ValueMaskerContext {
     /**
@@ -21,6 +30,50 @@ public interface ValueMaskerContext {
     /** Returns the length of the original value that is being masked in bytes. */
     int byteLength();
 
+    /**
+     * Copies a range of bytes of the original value into the destination array.
+     *
+     * @param fromIndex index in the original value from which the copying should start
+     * @param length number of bytes to copy
+     * @param destination the array to copy the bytes into
+     * @param destinationOffset index in the destination array at which the first byte is written
+     * @throws IndexOutOfBoundsException if the range is out of the bounds of the original value or of the destination
+     */
+    default void getBytes(int fromIndex, int length, byte[] destination, int destinationOffset) {
+        Objects.checkFromIndexSize(destinationOffset, length, destination.length);
+        for (int i = 0; i < length; i++) {
+            destination[destinationOffset + i] = getByte(fromIndex + i);
+        }
+    }
+
+    /**
+     * Returns a read-only {@link ByteBuffer} of the original value, from index {@code 0} to {@link #byteLength()}.
+     *
+     * <p>Note: the buffer is only valid during the {@link ValueMasker#maskValue(ValueMaskerContext)} call, since the
+     * underlying bytes may be reused for the next values afterward.
+     */
+    default ByteBuffer asByteBuffer() {
+        byte[] bytes = new byte[byteLength()];
+        getBytes(0, bytes.length, bytes, 0);
+        return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the index of the first occurrence of the byte in the original value, starting from the given index.
+     *
+     * @param value the byte to search for
+     * @param fromIndex index in the original value from which the search should start
+     * @return the index of the byte, or {@code -1} if the byte does not occur from the given index
+     */
+    default int indexOf(byte value, int fromIndex) {
+        for (int i = Math.max(fromIndex, 0); i < byteLength(); i++) {
+            if (getByte(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     /**
      * Indicates that the bytes of the original value (or part of the value) needs to be replaced with a mask.
      *
@@ -38,6 +91,24 @@ public interface ValueMaskerContext {
      */
     void replaceBytes(int fromIndex, int length, byte[] mask, int maskRepeat);
 
+    /**
+     * Same as {@link #replaceBytes(int, int, byte[], int)}, but uses a slice of the given array as the mask, which
+     * allows to reuse a single buffer to build the masks of many values. The slice is copied if it has to be retained,
+     * so the array can be modified once the method returns.
+     *
+     * @param fromIndex index from which the replacement should start. For string values, the opening quote is included
+     * @param length length of the value to mask. relative to the fromIndex. For string values the closing quote is
+     *     included
+     * @param mask the array containing the mask to replace the original value with
+     * @param maskOffset index in the array of the first byte of the mask
+     * @param maskLength length of the mask
+     * @param maskRepeat number of times to repeat the mask, for static masks the value should be 1
+     */
+    default void replaceBytes(int fromIndex, int length, byte[] mask, int maskOffset, int maskLength, int maskRepeat) {
+        Objects.checkFromIndexSize(maskOffset, maskLength, mask.length);
+        replaceBytes(fromIndex, length, Arrays.copyOfRange(mask, maskOffset, maskOffset + maskLength), maskRepeat);
+    }
+
     /**
      * Returns the number of non-visible, human-readable characters in the original value.
      *
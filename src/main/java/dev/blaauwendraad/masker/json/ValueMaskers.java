@@ -3,6 +3,7 @@ package dev.blaauwendraad.masker.json;
 import dev.blaauwendraad.masker.json.config.KeyMaskingConfig;
 import dev.blaauwendraad.masker.json.util.Utf8Util;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Objects;
 import java.util.function.Function;
 import org.jspecify.annotations.Nullable;
@@ -34,7 +35,7 @@ public final class ValueMaskers {
     public static ValueMasker.AnyValueMasker with(String value) {
         String replacement = Utf8Util.jsonEncode(value, true);
         byte[] replacementBytes = replacement.getBytes(StandardCharsets.UTF_8);
-        return describe(replacement, context -> context.replaceBytes(0, context.byteLength(), replacementBytes, 1));
+        return DescriptiveValueMasker.builtIn(replacement, DescriptiveValueMasker.Kind.REPLACE, replacementBytes);
     }
 
     /**
@@ -44,8 +45,8 @@ public final class ValueMaskers {
      */
     public static ValueMasker.AnyValueMasker with(int value) {
         byte[] replacementBytes = String.valueOf(value).getBytes(StandardCharsets.UTF_8);
-        return describe(
-                String.valueOf(value), context -> context.replaceBytes(0, context.byteLength(), replacementBytes, 1));
+        return DescriptiveValueMasker.builtIn(
+                String.valueOf(value), DescriptiveValueMasker.Kind.REPLACE, replacementBytes);
     }
 
     /**
@@ -55,15 +56,14 @@ public final class ValueMaskers {
      */
     public static ValueMasker.AnyValueMasker with(boolean value) {
         byte[] replacementBytes = String.valueOf(value).getBytes(StandardCharsets.UTF_8);
-        return describe(
-                String.valueOf(value), context -> context.replaceBytes(0, context.byteLength(), replacementBytes, 1));
+        return DescriptiveValueMasker.builtIn(
+                String.valueOf(value), DescriptiveValueMasker.Kind.REPLACE, replacementBytes);
     }
 
     /** Masks a target value with {@code null}. */
     public static ValueMasker.AnyValueMasker withNull() {
         byte[] replacementBytes = "null".getBytes(StandardCharsets.UTF_8);
-        return describe(
-                "null (literal)", context -> context.replaceBytes(0, context.byteLength(), replacementBytes, 1));
+        return DescriptiveValueMasker.builtIn("null (literal)", DescriptiveValueMasker.Kind.REPLACE, replacementBytes);
     }
 
     /**
@@ -79,20 +79,10 @@ public final class ValueMaskers {
     public static ValueMasker.StringMasker eachCharacterWith(String value) {
         String replacement = Utf8Util.jsonEncode(value, false);
         byte[] replacementBytes = replacement.getBytes(StandardCharsets.UTF_8);
-        return describe(String.format("every character as %s", replacement), context -> {
-            /*
-            So we don't add asterisks for escape characters or additional encoding bytes (which are not part of the String length)
-
-            The actual length of the string is the length minus escape characters (which are not part of the
-            string length). Also, unicode characters are denoted as 4-hex digits but represent actually
-            just one character, so for each of them 3 asterisks should be removed.
-             */
-            int stringValueStart = 1; // skip the opening quote
-            int stringValueLength = context.byteLength() - 2; // skip both quotes
-            int nonVisibleCharacters = context.countNonVisibleCharacters(stringValueStart, stringValueLength);
-            int maskLength = stringValueLength - nonVisibleCharacters;
-            context.replaceBytes(stringValueStart, stringValueLength, replacementBytes, maskLength);
-        });
+        return DescriptiveValueMasker.builtIn(
+                String.format("every character as %s", replacement),
+                DescriptiveValueMasker.Kind.EACH_CHARACTER,
+                replacementBytes);
     }
 
     /**
@@ -106,9 +96,10 @@ public final class ValueMaskers {
                     "Masking digit must be between 1 and 9 to avoid leading zeroes which is invalid in JSON");
         }
         byte[] replacementBytes = String.valueOf(digit).getBytes(StandardCharsets.UTF_8);
-        return describe(
+        return DescriptiveValueMasker.builtIn(
                 String.format("every digit as integer: %s", digit),
-                context -> context.replaceBytes(0, context.byteLength(), replacementBytes, context.byteLength()));
+                DescriptiveValueMasker.Kind.EACH_DIGIT,
+                replacementBytes);
     }
 
     /**
@@ -126,11 +117,8 @@ public final class ValueMaskers {
             int totalMaskLength = originalValueBytesLength * maskValueBytes.length;
             byte[] mask = new byte[2 + totalMaskLength]; // 2 for the opening and closing quotes
             mask[0] = '\"';
-            for (int i = 0; i < totalMaskLength; i += maskValueBytes.length) {
-                for (int j = 0; j < maskValueBytes.length; j++) {
-                    mask[1 + i + j] = maskValueBytes[j]; // 1 to step over the opening quote of the mask
-                }
-            }
+            // 1 to step over the opening quote of the mask
+            MaskingState.fillMask(maskValueBytes, 0, maskValueBytes.length, originalValueBytesLength, mask, 1);
             mask[totalMaskLength + 1] = '\"';
             context.replaceBytes(0, context.byteLength(), mask, 1);
         });
@@ -144,7 +132,7 @@ public final class ValueMaskers {
      * @see KeyMaskingConfig.Builder#maskNumbersWith(ValueMasker.NumberMasker)
      */
     public static ValueMasker.AnyValueMasker noop() {
-        return describe("<no masking>", context -> {});
+        return DescriptiveValueMasker.builtIn("<no masking>", DescriptiveValueMasker.Kind.NOOP, new byte[0]);
     }
 
     /**
@@ -167,27 +155,80 @@ public final class ValueMaskers {
     public static ValueMasker.StringMasker email(
             int keepPrefixLength, int keepSuffixLength, boolean keepDomain, String mask) {
         byte[] replacementBytes = mask.getBytes(StandardCharsets.UTF_8);
-        return describe(
+        return DescriptiveValueMasker.email(
                 String.format(
                         "email, keep prefix: %s, keep suffix: %s, keep domain: %s",
                         keepPrefixLength, keepSuffixLength, keepDomain),
-                context -> {
-                    int prefixLength = keepPrefixLength + 1; // add opening quote
-                    int suffixLength = keepSuffixLength + 1; // keep closing quote
-                    if (keepDomain) {
-                        for (int i = 0; i < context.byteLength(); i++) {
-                            if (context.getByte(i) == '@') {
-                                // include domain in the suffix
-                                suffixLength = context.byteLength() - i + keepSuffixLength;
-                                break;
-                            }
-                        }
-                    }
-                    int maskLength = context.byteLength() - prefixLength - suffixLength;
-                    if (maskLength > 0) {
-                        context.replaceBytes(prefixLength, maskLength, replacementBytes, 1);
-                    }
-                });
+                replacementBytes,
+                keepPrefixLength,
+                keepSuffixLength,
+                keepDomain);
+    }
+
+    /**
+     * Masks all characters of a target string value except for the given number of leading characters, keeping the
+     * length of the value.
+     *
+     * <p>For example, {@literal "maskMe": "Johnson" -> "maskMe": "J******"}.
+     *
+     * @param count the number of leading characters to keep unmasked
+     * @see #keepFirstAndLast(int, int, String, boolean, boolean)
+     */
+    public static ValueMasker.StringMasker keepFirst(int count) {
+        return keepFirstAndLast(count, 0, "*", true, false);
+    }
+
+    /**
+     * Masks all characters of a target string value except for the given number of trailing characters, keeping the
+     * length of the value and the separators (spaces and dashes).
+     *
+     * <p>For example, {@literal "maskMe": "NL91 ABNA 0417 1643 00" -> "maskMe": "**** **** **** **43 00"}.
+     *
+     * @param count the number of trailing characters (not counting the separators) to keep unmasked
+     * @see #keepFirstAndLast(int, int, String, boolean, boolean)
+     */
+    public static ValueMasker.StringMasker keepLast(int count) {
+        return keepFirstAndLast(0, count, "*", true, true);
+    }
+
+    /**
+     * Masks the characters of a target string value between the given number of leading and trailing characters. The
+     * characters are counted as code points (an escape sequence counts as a single character) directly on the UTF-8
+     * encoded bytes, without decoding the value. When the value doesn't have more characters than the characters to
+     * keep, all characters are masked.
+     *
+     * <p>For example:
+     *
+     * <ul>
+     *   <li>{@code keepFirstAndLast(1, 1, "*", true, false)}: "maskMe": "M&uuml;ller" -&gt; "maskMe": "M****r"
+     *   <li>{@code keepFirstAndLast(1, 1, "***", false, false)}: "maskMe": "M&uuml;ller" -&gt; "maskMe": "M***r"
+     *   <li>{@code keepFirstAndLast(0, 4, "#", true, true)}: {@literal "maskMe": "+31 6-1234 5678" -> "maskMe":
+     *       "### #-#### 5678"}
+     *   <li>{@code keepFirstAndLast(0, 4, "***", false, true)}: {@literal "maskMe": "+31 6-1234 5678" -> "maskMe":
+     *       "*** ***-*** 5678"}
+     * </ul>
+     *
+     * @param keepFirst the number of leading characters to keep unmasked
+     * @param keepLast the number of trailing characters to keep unmasked
+     * @param mask the mask for a masked character, or for a run of masked characters if the length is not preserved
+     * @param preserveLength if true - every masked character is replaced by the mask, otherwise every run of masked
+     *     characters is replaced by the mask once
+     * @param keepSeparators if true - the spaces and dashes remain unmasked and are not counted as characters
+     * @throws IllegalArgumentException if the number of characters to keep is negative
+     */
+    public static ValueMasker.StringMasker keepFirstAndLast(
+            int keepFirst, int keepLast, String mask, boolean preserveLength, boolean keepSeparators) {
+        String replacement = Utf8Util.jsonEncode(mask, false);
+        return describe(
+                String.format(
+                        "keep first: %s, keep last: %s, mask: %s, preserve length: %s, keep separators: %s",
+                        keepFirst, keepLast, replacement, preserveLength, keepSeparators),
+                new PartialValueMasker(
+                        keepFirst,
+                        keepLast,
+                        replacement.getBytes(StandardCharsets.UTF_8),
+                        preserveLength,
+                        keepSeparators));
     }
 
     /**
@@ -459,4 +500,107 @@ public final class ValueMaskers {
             context.replaceBytes(0, context.byteLength(), replacementBytes, 1);
         });
     }
+
+    /**
+     * Masks a target value by applying the provided {@link TextValueMasker} on the textual representation of the
+     * original value, like {@link ValueMaskers#withTextFunction(Function)} does, but without allocating the decoded and
+     * the masked values for every target value.
+     *
+     * <p>The {@link TextValueMasker} receives the decoded value as a {@link CharSequence} and appends the masked value
+     * to a {@link StringBuilder}, which is encoded into a JSON string regardless of the JSON type of the original
+     * value. Both are backed by buffers that are reused for all values masked by the same
+     * {@link JsonMasker#mask(byte[])} call, so the decoded value must not be retained after the masker returns (use
+     * {@link CharSequence#toString()} if needed). If the masker returns {@code false}, the target value will be
+     * replaced with {@code null} JSON literal.
+     *
+     * <p>For example, keeping the last 4 characters:
+     *
+     * <pre>{@code
+     * ValueMaskers.withTextMasker((value, maskedValue) -> {
+     *     maskedValue.append("***").append(value, Math.max(0, value.length() - 4), value.length());
+     *     return true;
+     * });
+     * }</pre>
+     *
+     * @see ValueMaskers#withTextFunction(Function)
+     */
+    public static ValueMasker.AnyValueMasker withTextMasker(TextValueMasker masker) {
+        return describe(String.format("withTextMasker (%s)", masker), context -> {
+            DecodedTextBuffer decodedTextBuffer = context instanceof MaskingState
+                    ? ((MaskingState) context).getDecodedTextBuffer()
+                    : new DecodedTextBuffer();
+            decodedTextBuffer.mask(context, masker);
+        });
+    }
+
+    /**
+     * Masks the target values in batches by applying the provided {@link Function} on the textual representation of
+     * all target values of a JSON message at once, which is useful when masking requires a round trip to a
+     * (tokenization) service that accepts batches. The values are passed into the function and the masked values are
+     * encoded in the same way as for {@link ValueMaskers#withTextFunction(Function)}.
+     *
+     * <p>When masking a {@code byte[]} or a {@link String}, the target values are only collected during the scan of
+     * the message and the function is called once with all of them, in the order of the message, right before the
+     * replacements are applied. The function must return a list with a masked value (or {@code null} to replace the
+     * value with {@code null} JSON literal) for every value, in the same order. When masking a stream, the masked
+     * values are written to the output right away, so the function is called once for every target value instead.
+     *
+     * <p>For example:
+     *
+     * <pre>{@code
+     * ValueMaskers.withBatchTextFunction(values -> tokenizationClient.tokenize(values));
+     * }</pre>
+     *
+     * @param masker the function that masks a batch of values
+     * @see ValueMaskers#withTextFunction(Function)
+     */
+    public static ValueMasker.AnyValueMasker withBatchTextFunction(
+            Function<List<String>, List<@Nullable String>> masker) {
+        return new BatchTextValueMasker(masker);
+    }
+
+    /**
+     * Masks a target value with the hex encoded keyed hash (HMAC) of the original value, which allows to correlate the
+     * masked values (e.g. the same user id in different log entries) without revealing them. The value is hashed as it
+     * appears in the JSON: for strings, the bytes between the quotes (without unescaping), for the other JSON types,
+     * the textual representation. The target value is replaced with a JSON string containing the first
+     * {@code outputLength} hex characters of the hash.
+     *
+     * <p>For example, {@code ValueMaskers.hmac(key, "HmacSHA256", 16)} masks {@literal "maskMe": "secret"} as
+     * {@literal "maskMe": "<16 hex characters>"}, where equal values always result in the same hash for the same key.
+     *
+     * <p>The {@link javax.crypto.Mac} instances and the buffers for the value, the hash and the mask are pooled and
+     * reused, so masking a value only allocates when a value is larger than any value hashed before by the same
+     * pooled instance. The masker can safely be used from multiple (virtual) threads.
+     *
+     * @param key the secret key, which is not part of the description of the masker
+     * @param algorithm the name of the HMAC algorithm, e.g. {@code HmacSHA256}
+     * @param outputLength the number of hex characters of the hash to keep, between 1 and twice the length of the hash
+     * @throws IllegalArgumentException if the algorithm is not supported, the key is empty or invalid, or the output
+     *     length is out of range
+     */
+    public static ValueMasker.AnyValueMasker hmac(byte[] key, String algorithm, int outputLength) {
+        return describe(
+                String.format("hmac (%s, %s)", algorithm, outputLength),
+                new HmacValueMasker(key, algorithm, outputLength));
+    }
+
+    /**
+     * Memoizes the masked values of the provided {@link ValueMasker}, which is useful for expensive maskers (e.g. a
+     * {@link ValueMaskers#withRawValueFunction(Function)} calling tokenization code) when the same values repeat across
+     * JSON documents. A cached value is masked without calling the masker and without decoding the value into a
+     * {@link String}.
+     *
+     * <p>The cache is keyed by the bytes of the original value and holds at most {@code maxEntries} values, evicting
+     * the values that haven't been used recently. Note that the bound is the number of values, not the number of bytes.
+     * The masker must be deterministic, i.e. always mask the same value in the same way. The returned
+     * {@link CachingValueMasker} is thread-safe and provides the number of cache hits and misses.
+     *
+     * @param masker the masker to memoize
+     * @param maxEntries the maximum number of cached values
+     * @throws IllegalArgumentException if {@code maxEntries} is not positive
+     */
+    public static CachingValueMasker cached(ValueMasker.AnyValueMasker masker, int maxEntries) {
+        return new CachingValueMasker(masker, maxEntries);
+    }
 }
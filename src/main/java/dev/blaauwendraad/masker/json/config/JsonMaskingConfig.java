@@ -24,6 +24,16 @@ public final class JsonMaskingConfig {
     private final Set<JsonPath> targetJsonPaths;
     /** @see JsonMaskingConfig.Builder#caseSensitiveTargetKeys */
     private final boolean caseSensitiveTargetKeys;
+    /** @see JsonMaskingConfig.Builder#stopAfterJsonPathsResolved */
+    private final boolean stopAfterJsonPathsResolved;
+    /** @see JsonMaskingConfig.Builder#maskCardNumbersInStrings */
+    private final boolean maskCardNumbersInStrings;
+    /** @see JsonMaskingConfig.Builder#maskSecretsInStrings */
+    private final Set<String> secretsInStrings;
+    /** @see JsonMaskingConfig.Builder#maskHighEntropyStrings */
+    private final boolean maskHighEntropyStrings;
+    /** @see JsonMaskingConfig.Builder#keyLookupStrategy */
+    private final KeyLookupStrategy keyLookupStrategy;
     /**
      * Not configurable. Specifies the initial size of the byte array buffer in streaming mode Package private for unit
      * tests
@@ -41,6 +51,11 @@ public final class JsonMaskingConfig {
         this.targetKeys = builder.targetKeys;
         this.targetJsonPaths = builder.targetJsonPaths;
         this.caseSensitiveTargetKeys = builder.caseSensitiveTargetKeys != null && builder.caseSensitiveTargetKeys;
+        this.stopAfterJsonPathsResolved = builder.stopAfterJsonPathsResolved;
+        this.maskCardNumbersInStrings = builder.maskCardNumbersInStrings;
+        this.secretsInStrings = builder.secretsInStrings;
+        this.maskHighEntropyStrings = builder.maskHighEntropyStrings;
+        this.keyLookupStrategy = builder.keyLookupStrategy;
         this.defaultConfig = builder.defaultConfigBuilder.build();
         this.targetKeyConfigs = builder.targetKeyConfigs;
     }
@@ -91,6 +106,56 @@ public final class JsonMaskingConfig {
         return caseSensitiveTargetKeys;
     }
 
+    /**
+     * Tests if the masking may stop once all target JSONPaths have been resolved.
+     *
+     * @return {@code true} if the masking may stop early, {@code false} otherwise
+     * @see JsonMaskingConfig.Builder#stopAfterJsonPathsResolved
+     */
+    public boolean stopAfterJsonPathsResolved() {
+        return stopAfterJsonPathsResolved;
+    }
+
+    /**
+     * Tests if the card numbers in the string values that are not masked otherwise must be masked.
+     *
+     * @return {@code true} if the card numbers must be masked, {@code false} otherwise
+     * @see JsonMaskingConfig.Builder#maskCardNumbersInStrings
+     */
+    public boolean maskCardNumbersInStrings() {
+        return maskCardNumbersInStrings;
+    }
+
+    /**
+     * Returns the known secrets that must be masked wherever they occur in the string values.
+     *
+     * @return the secrets to mask, empty if no secrets are masked
+     * @see JsonMaskingConfig.Builder#maskSecretsInStrings
+     */
+    public Set<String> getSecretsInStrings() {
+        return secretsInStrings;
+    }
+
+    /**
+     * Tests if the string values that are not masked otherwise must be masked when they look like credentials.
+     *
+     * @return {@code true} if the high-entropy string values must be masked, {@code false} otherwise
+     * @see JsonMaskingConfig.Builder#maskHighEntropyStrings
+     */
+    public boolean maskHighEntropyStrings() {
+        return maskHighEntropyStrings;
+    }
+
+    /**
+     * Returns the strategy used to look up the JSON keys in the target keys.
+     *
+     * @return the key lookup strategy
+     * @see JsonMaskingConfig.Builder#keyLookupStrategy
+     */
+    public KeyLookupStrategy getKeyLookupStrategy() {
+        return keyLookupStrategy;
+    }
+
     public int bufferSize() {
         return bufferSize;
     }
@@ -149,6 +214,16 @@ public final class JsonMaskingConfig {
         @Nullable
         private Boolean caseSensitiveTargetKeys;
 
+        private boolean stopAfterJsonPathsResolved;
+
+        private boolean maskCardNumbersInStrings;
+
+        private final Set<String> secretsInStrings = new HashSet<>();
+
+        private boolean maskHighEntropyStrings;
+
+        private KeyLookupStrategy keyLookupStrategy = KeyLookupStrategy.AUTOMATIC;
+
         private final KeyMaskingConfig.Builder defaultConfigBuilder = KeyMaskingConfig.builder();
         private final Map<String, KeyMaskingConfig> targetKeyConfigs = new HashMap<>();
 
@@ -382,6 +457,26 @@ public final class JsonMaskingConfig {
             return this;
         }
 
+        /**
+         * Sets the target key mode without providing any target keys or JSONPaths, e.g. for a config that only masks
+         * the values found by {@link #maskSecretsInStrings(Set)}, or for the settings of a masker loaded from a
+         * {@link dev.blaauwendraad.masker.json.JsonMaskerSnapshot}, which contains the target keys and JSONPaths.
+         *
+         * <p>In {@link TargetKeyMode#MASK} mode without target keys, only the values found by scanning the string
+         * values are masked, while in {@link TargetKeyMode#ALLOW} mode without target keys, all values are masked.
+         *
+         * @param targetKeyMode the target key mode
+         * @return the builder instance
+         */
+        public Builder targetKeyMode(TargetKeyMode targetKeyMode) {
+            if (this.targetKeyMode != null && this.targetKeyMode != targetKeyMode) {
+                throw new IllegalArgumentException(String.format(
+                        "Cannot set target key mode to %s when in %s mode", targetKeyMode, this.targetKeyMode));
+            }
+            this.targetKeyMode = Objects.requireNonNull(targetKeyMode);
+            return this;
+        }
+
         /**
          * Configures whether the target keys are considered case-sensitive (e.g. cvv != CVV)
          *
@@ -397,6 +492,130 @@ public final class JsonMaskingConfig {
             return this;
         }
 
+        /**
+         * Stops masking as soon as all target JSONPaths have been resolved, i.e. their values were masked or their
+         * parent object was closed without containing them, and copies the remainder of the input as is. This avoids
+         * scanning the rest of large JSON documents (e.g. an event body) when only a few values near the beginning
+         * (e.g. in the header) need to be masked.
+         *
+         * <p>Only has effect when only JSONPaths without wildcards are masked, i.e. there are no target keys and the
+         * masker is not in allow mode. It assumes that the input is a single JSON document in which every JSONPath
+         * matches at most one value: if the JSON contains duplicate keys (or keys differing only in casing, unless
+         * {@link #caseSensitiveTargetKeys()} is set), some of the values might not be masked.
+         *
+         * <p>Default value: false (the whole input is always scanned)
+         *
+         * @return the builder instance
+         */
+        public Builder stopAfterJsonPathsResolved() {
+            this.stopAfterJsonPathsResolved = true;
+            return this;
+        }
+
+        /**
+         * Masks the card numbers (PANs) contained in the string values that are not masked otherwise, e.g. in free text
+         * fields like {@literal "note": "paid with 4111 1111 1111 1111" -> "note": "paid with **** **** **** ****"}.
+         *
+         * <p>A card number is a sequence of 13 to 19 digits, optionally grouped by single spaces or dashes, that is not
+         * directly preceded or followed by a letter or a digit and that passes the Luhn checksum. Only the digits of
+         * the card number are masked, every digit with {@code *}. The string values are scanned while stepping over
+         * them, i.e. in the same pass over the JSON. In allow mode, the string values of the allowed keys are scanned,
+         * including the string values nested in allowed objects or arrays.
+         *
+         * <p>Default value: false (only the values of the target keys and JSONPaths are masked)
+         *
+         * @return the builder instance
+         */
+        public Builder maskCardNumbersInStrings() {
+            this.maskCardNumbersInStrings = true;
+            return this;
+        }
+
+        /**
+         * Masks the given known secrets (e.g. leaked API tokens or internal hostnames) wherever they occur in the
+         * string values, e.g. for the secret {@code s3cr3t} {@literal "url": "https://s3cr3t@host" -> "url":
+         * "https://***@host"}.
+         *
+         * @param secrets the secrets to mask, at least one, none of which may be empty
+         * @return the builder instance
+         * @throws IllegalArgumentException if no secrets are given or any of the secrets is empty
+         * @see #maskSecretsInStrings(Set)
+         */
+        public Builder maskSecretsInStrings(String... secrets) {
+            return maskSecretsInStrings(Set.of(secrets));
+        }
+
+        /**
+         * Masks the given known secrets (e.g. leaked API tokens or internal hostnames) wherever they occur in the
+         * string values, under any key.
+         *
+         * <p>The secrets are compiled into a single automaton when the {@link dev.blaauwendraad.masker.json.JsonMasker}
+         * is created, so the string values are scanned for all secrets at once while stepping over them, in the same
+         * pass over the JSON. The secrets are matched case-sensitively against the string values as they occur in the
+         * JSON, i.e. a secret that is written (partially) as unicode escape sequences in the JSON is not matched. Every
+         * occurrence is replaced by {@code ***}, overlapping occurrences are masked as one. Like
+         * {@link #maskCardNumbersInStrings()}, the string values that are masked otherwise are not scanned, and in
+         * allow mode only the (nested) string values of the allowed keys are scanned.
+         *
+         * <p>The secrets are added to the secrets of the previous calls. An empty secret would match everywhere, so it
+         * is rejected, like an empty set of secrets.
+         *
+         * @param secrets the secrets to mask, at least one, none of which may be empty
+         * @return the builder instance
+         * @throws IllegalArgumentException if no secrets are given or any of the secrets is empty
+         */
+        public Builder maskSecretsInStrings(Set<String> secrets) {
+            if (secrets.isEmpty()) {
+                throw new IllegalArgumentException("At least one secret must be provided");
+            }
+            for (String secret : secrets) {
+                if (secret.isEmpty()) {
+                    throw new IllegalArgumentException("Secret must not be empty");
+                }
+            }
+            secretsInStrings.addAll(secrets);
+            return this;
+        }
+
+        /**
+         * Masks the string values that are not masked otherwise when they look like credentials (API keys, access
+         * tokens, JWTs, etc.), e.g. {@literal "x": "ghp_R2d8XqP0vLm4Tz9KsW1b" -> "x": "***"}. Such values are masked
+         * as a whole with the default string masking configuration.
+         *
+         * <p>A string value looks like a credential if it is at least 20 characters long, consists only of the
+         * characters of the hex, base64 and base64url alphabets (and {@code .} for a JWT), contains both a letter and a
+         * digit, and has a high Shannon entropy per byte: at least 3 bits if it consists of hex digits only, or else at
+         * least 4 bits. Since free text almost always contains a character outside of these alphabets (e.g. a space)
+         * within the first few characters, the overhead on the other string values is small. Note that random
+         * identifiers in these alphabets (e.g. a UUID without dashes) are masked as well. Like
+         * {@link #maskCardNumbersInStrings()}, the string values are checked while stepping over them, and in allow
+         * mode only the (nested) string values of the allowed keys are checked.
+         *
+         * <p>Default value: false (only the values of the target keys and JSONPaths are masked)
+         *
+         * @return the builder instance
+         */
+        public Builder maskHighEntropyStrings() {
+            this.maskHighEntropyStrings = true;
+            return this;
+        }
+
+        /**
+         * Overrides the strategy used to look up the JSON keys in the target keys. By default, the strategy is
+         * selected when the {@link dev.blaauwendraad.masker.json.JsonMasker} is created, based on the number of target
+         * keys, their lengths and the case sensitivity, which should only be overridden when benchmarks on the actual
+         * JSON show that another strategy is faster.
+         *
+         * <p>Default value: {@link KeyLookupStrategy#AUTOMATIC}
+         *
+         * @param keyLookupStrategy the strategy to use
+         * @return the builder instance
+         */
+        public Builder keyLookupStrategy(KeyLookupStrategy keyLookupStrategy) {
+            this.keyLookupStrategy = Objects.requireNonNull(keyLookupStrategy);
+            return this;
+        }
+
         /**
          * Mask all string values with the provided value. For example, {@literal "maskMe": "secret" -> "maskMe":
          * "***"}.
@@ -548,7 +767,6 @@ public final class JsonMaskingConfig {
          * @return the new instance
          */
         public JsonMaskingConfig build() {
-            JSON_PATH_PARSER.checkAmbiguity(targetJsonPaths);
             return new JsonMaskingConfig(this);
         }
     }
@@ -566,4 +784,23 @@ public final class JsonMaskingConfig {
          */
         MASK
     }
+
+    /** Defines how the JSON keys are looked up in the target keys. */
+    public enum KeyLookupStrategy {
+        /**
+         * Selects the {@link #LINEAR} strategy for small key sets and for medium-sized key sets of which only a few
+         * keys share the same length, and the {@link #RADIX_TRIE} strategy otherwise.
+         */
+        AUTOMATIC,
+        /**
+         * Compares the JSON key against every target key of the same length, 8 bytes at a time. Fastest for a handful
+         * of target keys, but the cost of a lookup grows with the number of target keys.
+         */
+        LINEAR,
+        /**
+         * Descends a radix trie of the target keys byte by byte, so the cost of a lookup only depends on the length of
+         * the JSON key.
+         */
+        RADIX_TRIE
+    }
 }
@@ -40,6 +40,30 @@ public final class KeyMaskingConfig {
         return maskBooleansWith;
     }
 
+    /**
+     * Two configs are equal if they use equal value maskers. The out-of-the-box value maskers of {@link ValueMaskers}
+     * are equal if they were created with the same arguments, any other value masker is only equal to itself unless it
+     * implements {@link Object#equals(Object)}.
+     */
+    @Override
+    public boolean equals(@Nullable Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof KeyMaskingConfig)) {
+            return false;
+        }
+        KeyMaskingConfig other = (KeyMaskingConfig) o;
+        return maskStringsWith.equals(other.maskStringsWith)
+                && maskNumbersWith.equals(other.maskNumbersWith)
+                && maskBooleansWith.equals(other.maskBooleansWith);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(maskStringsWith, maskNumbersWith, maskBooleansWith);
+    }
+
     @Override
     public String toString() {
         return String.format(
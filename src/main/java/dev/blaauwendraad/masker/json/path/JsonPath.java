@@ -21,9 +21,47 @@ public final class JsonPath {
         return segments.length != 0 ? segments[segments.length - 1] : null;
     }
 
+    /**
+     * Returns whether the segment is a descendant segment, which is stored as {@code ..} by {@link JsonPathParser} and
+     * is always followed by a name segment.
+     *
+     * @param segment the segment of a jsonpath
+     * @return whether the segment selects the descendants at any depth
+     */
+    public static boolean isDescendantSegment(String segment) {
+        return segment.equals("..");
+    }
+
+    /**
+     * Returns whether the segment is an index selector (e.g. {@code [0]}) or an array slice selector (e.g.
+     * {@code [0:3]}), which are stored in the normalized form produced by {@link JsonPathParser}.
+     *
+     * @param segment the segment of a jsonpath
+     * @return whether the segment selects array elements by their index
+     */
+    public static boolean isIndexSelector(String segment) {
+        return !segment.isEmpty() && segment.charAt(0) == '[';
+    }
+
+    /**
+     * Returns the string representation of the jsonpath in the dot notation, with the index selectors in the bracket
+     * notation (e.g. {@code $.items[0].card}) and the descendant segments as {@code ..} (e.g. {@code $..card}). The
+     * representation is also used as the key in the look-up trie, where the index selectors are distinguished from the
+     * names by the preceding {@code [} instead of {@code .}.
+     */
     @Override
     public String toString() {
-        return String.join(".", segments);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < segments.length; i++) {
+            if (i > 0
+                    && !isIndexSelector(segments[i])
+                    && !isDescendantSegment(segments[i])
+                    && !isDescendantSegment(segments[i - 1])) {
+                sb.append('.');
+            }
+            sb.append(segments[i]);
+        }
+        return sb.toString();
     }
 
     @Override
@@ -1,11 +1,8 @@
 package dev.blaauwendraad.masker.json.path;
 
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
-import java.util.stream.Collectors;
 import org.jspecify.annotations.Nullable;
 
 /**
@@ -14,25 +11,20 @@ import org.jspecify.annotations.Nullable;
  * <p>The following features from jsonpath specification are not supported:
  *
  * <ul>
- *   <li>Descendant segments
+ *   <li>Descendant segments that are not followed by a name, e.g. {@code $..*}, {@code $..[*]} or {@code $..[0]}
  *   <li>Child segments
  *   <li>Name selectors
- *   <li>Array slice selectors
- *   <li>Index selectors
+ *   <li>Negative indexes and steps in index and array slice selectors
  *   <li>Filter selectors
  *   <li>Function extensions
  *   <li>Escape characters
  * </ul>
  *
- * <p>The parser makes a couple of additional restrictions:
+ * <p>Index selectors ({@code $.a[0]}) and array slice selectors ({@code $.a[0:3]}, {@code $.a[2:]}) must use the
+ * bracket notation, and are stored as segments in the normalized form, e.g. {@code [0]} or {@code [0:3]}. Descendant
+ * segments ({@code $..a} or {@code $..[a]}) are stored as a separate {@code ..} segment, followed by the name segment.
  *
- * <ul>
- *   <li>Numbers as key names are disallowed
- *   <li>A set of input jsonpath literals must not be ambiguous
- * </ul>
- *
- * An example of ambiguous set of queries is {@code $.*.b} and {@code $.a.b}. In this case, we cannot match forward the
- * segments.
+ * <p>The parser makes an additional restriction: numbers as key names are disallowed.
  */
 public class JsonPathParser {
 
@@ -54,11 +46,26 @@ public class JsonPathParser {
             throw new IllegalArgumentException(
                     String.format(ERROR_PREFIX, literal) + "Escape characters are not supported.");
         }
-        if (literal.contains("..")) {
-            throw new IllegalArgumentException(
-                    String.format(ERROR_PREFIX, literal) + "Descendant segments are not supported.");
+        List<String> segments = new ArrayList<>();
+        // every descendant segment is followed by a name (either in the dot or in the bracket notation), which is
+        // parsed as if it was a child of the root
+        String[] parts = literal.split("\\.\\.", -1);
+        segments.addAll(parseSegments(parts[0], literal, parts.length == 1));
+        for (int i = 1; i < parts.length; i++) {
+            String part = parts[i];
+            if (part.isEmpty() || part.startsWith(".") || part.startsWith("*") || part.startsWith("[*")) {
+                throw descendantSegmentNotFollowedByName(literal);
+            }
+            List<String> partSegments =
+                    parseSegments((part.startsWith("[") ? "$" : "$.") + part, literal, i == parts.length - 1);
+            if (partSegments.size() < 2
+                    || partSegments.get(1).isEmpty()
+                    || JsonPath.isIndexSelector(partSegments.get(1))) {
+                throw descendantSegmentNotFollowedByName(literal);
+            }
+            segments.add("..");
+            segments.addAll(partSegments.subList(1, partSegments.size()));
         }
-        List<String> segments = parseSegments(literal);
         segments.forEach(segment -> validateSegment(segment, literal));
         return new JsonPath(segments.toArray(String[]::new));
     }
@@ -79,34 +86,53 @@ public class JsonPathParser {
         }
     }
 
-    private List<String> parseSegments(String literal) {
+    private static IllegalArgumentException descendantSegmentNotFollowedByName(String literal) {
+        return new IllegalArgumentException(String.format(ERROR_PREFIX, literal)
+                + "Descendant segments must be followed by a name, e.g. '$..name' or '$..[name]'.");
+    }
+
+    /**
+     * Parses the segments of the part of the literal without descendant segments.
+     *
+     * @param part the part of the literal, starting with the root node identifier
+     * @param literal the whole literal, used for the error messages
+     * @param last whether the part is at the end of the literal
+     */
+    private List<String> parseSegments(String part, String literal, boolean last) {
         List<String> segments = new ArrayList<>();
         segments.add("$");
-        if (literal.equals("$")) {
+        if (part.equals("$")) {
             return segments;
         }
         StringBuilder segment = new StringBuilder();
-        for (int i = 2; i < literal.length() - 1; i++) {
-            char symbol = literal.charAt(i);
-            char nextSymbol = literal.charAt(i + 1);
+        // whether the current segment is in the bracket notation, which is required for the index selectors
+        boolean bracketed = part.charAt(1) == '[';
+        for (int i = 2; i < part.length() - 1; i++) {
+            char symbol = part.charAt(i);
+            char nextSymbol = part.charAt(i + 1);
             if (symbol == '.' || (symbol == '[' && segment.length() != 0)) {
-                segments.add(segment.toString());
+                segments.add(toSegment(segment.toString(), bracketed, literal));
                 segment = new StringBuilder();
+                bracketed = symbol == '[';
             } else if ((symbol == ']' && nextSymbol == '.') || (symbol == ']' && nextSymbol == '[')) {
-                segments.add(segment.toString());
+                segments.add(toSegment(segment.toString(), bracketed, literal));
                 segment = new StringBuilder();
+                bracketed = nextSymbol == '[';
                 i++; // NOSONAR this statement skips the next segment delimiter symbol
             } else if (symbol != '[') {
                 segment.append(symbol);
+            } else {
+                bracketed = true;
             }
         }
-        if (literal.charAt(literal.length() - 1) != ']' && literal.charAt(literal.length() - 1) != '.') {
-            segment.append(literal.charAt(literal.length() - 1));
+        if (part.charAt(part.length() - 1) != ']' && part.charAt(part.length() - 1) != '.') {
+            segment.append(part.charAt(part.length() - 1));
         }
-        if (segment.length() != 0 || literal.endsWith("[]")) {
-            segments.add(segment.toString());
+        if (segment.length() != 0 || part.endsWith("[]")) {
+            segments.add(toSegment(segment.toString(), bracketed, literal));
         }
-        if (segments.size() > 1
+        if (last
+                && segments.size() > 1
                 && segments.get(segments.size() - 1).equals("*")
                 && !segments.get(segments.size() - 2).equals("*")) {
             throw new IllegalArgumentException(
@@ -116,7 +142,71 @@ public class JsonPathParser {
         return segments;
     }
 
+    /**
+     * Converts the index selectors and array slice selectors in the bracket notation into the normalized form, e.g.
+     * {@code 007} into {@code [7]} and {@code 1:} into {@code [1:]}. Other segments are returned as is.
+     */
+    private String toSegment(String segment, boolean bracketed, String literal) {
+        if (!bracketed || !(isNumber(segment) || segment.contains(":"))) {
+            return segment;
+        }
+        String[] bounds = segment.split(":", -1);
+        if (bounds.length > 2) {
+            throw new IllegalArgumentException(
+                    String.format(ERROR_PREFIX, literal) + "Array slice selectors with a step are not supported.");
+        }
+        if (bounds.length == 1) {
+            return "[" + parseIndex(bounds[0], literal) + "]";
+        }
+        String start = bounds[0].isEmpty() ? "" : String.valueOf(parseIndex(bounds[0], literal));
+        String end = bounds[1].isEmpty() ? "" : String.valueOf(parseIndex(bounds[1], literal));
+        String normalized = "[" + start + ":" + end + "]";
+        if (indexSelectorStart(normalized) >= indexSelectorEnd(normalized)) {
+            throw new IllegalArgumentException(
+                    String.format(ERROR_PREFIX, literal) + "Array slice selector does not select any elements.");
+        }
+        return normalized;
+    }
+
+    private int parseIndex(String index, String literal) {
+        int value;
+        try {
+            value = Integer.parseInt(index.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(
+                    String.format(ERROR_PREFIX, literal) + "Invalid array index '" + index + "'.");
+        }
+        if (value < 0) {
+            throw new IllegalArgumentException(
+                    String.format(ERROR_PREFIX, literal) + "Negative array indexes are not supported.");
+        }
+        return value;
+    }
+
+    /** Returns the first index (inclusive) selected by the normalized index selector. */
+    private static int indexSelectorStart(String segment) {
+        int colon = segment.indexOf(':');
+        if (colon == 1) {
+            return 0;
+        }
+        return Integer.parseInt(segment.substring(1, colon < 0 ? segment.length() - 1 : colon));
+    }
+
+    /** Returns the last index (exclusive) selected by the normalized index selector. */
+    private static int indexSelectorEnd(String segment) {
+        int colon = segment.indexOf(':');
+        if (colon < 0) {
+            return indexSelectorStart(segment) + 1;
+        } else if (colon == segment.length() - 2) {
+            return Integer.MAX_VALUE;
+        }
+        return Integer.parseInt(segment.substring(colon + 1, segment.length() - 1));
+    }
+
     private void validateSegment(String segment, String literal) {
+        if (JsonPath.isIndexSelector(segment)) {
+            return;
+        }
         if (isNumber(segment)) {
             throw new IllegalArgumentException(
                     String.format(ERROR_PREFIX, literal) + "Numbers as key names are not supported.");
@@ -124,8 +214,8 @@ public class JsonPathParser {
             throw new IllegalArgumentException(
                     String.format(ERROR_PREFIX, literal) + "Filter selectors are not supported.");
         } else if (segment.contains(":")) {
-            throw new IllegalArgumentException(
-                    String.format(ERROR_PREFIX, literal) + "Array slice selectors are not supported.");
+            throw new IllegalArgumentException(String.format(ERROR_PREFIX, literal)
+                    + "Array slice selectors must use the bracket notation, e.g. '[0:3]'.");
         } else if (segment.contains("(")) {
             throw new IllegalArgumentException(
                     String.format(ERROR_PREFIX, literal) + "Function extensions are not supported.");
@@ -142,32 +232,15 @@ public class JsonPathParser {
     }
 
     /**
-     * Validates if the input set of JSONPath queries contains ambiguous segments. Throws
-     * {@code java.lang.IllegalArgumentException#IllegalArgumentException} if it does.
-     *
-     * <p>The method does a lexical sort of input jsonpath queries, iterates over sorted values and checks if any local
-     * pair is ambiguous.
+     * Used to validate that the input set of JSONPath queries doesn't contain ambiguous segments, e.g. {@code $.*.b}
+     * and {@code $.a.b}.
      *
      * @param jsonPaths input set of jsonpath queries
+     * @deprecated overlapping JSONPaths are no longer ambiguous, as the most specific JSONPath matching a value is used
+     *     to mask it, so this method doesn't reject any set of JSONPaths anymore.
      */
+    @Deprecated
     public void checkAmbiguity(Set<JsonPath> jsonPaths) {
-        List<JsonPath> jsonPathList = jsonPaths.stream()
-                .sorted(Comparator.comparing(JsonPath::toString))
-                .collect(Collectors.toList());
-        for (int i = 1; i < jsonPathList.size(); i++) {
-            JsonPath current = jsonPathList.get(i - 1);
-            JsonPath next = jsonPathList.get(i);
-            for (int j = 0; j < current.segments().length; j++) {
-                if (!current.segments()[j].equals(next.segments()[j])) {
-                    if (current.segments()[j].equals("*") || next.segments()[j].equals("*")) {
-                        String commonPath = String.join(".", Arrays.copyOfRange(current.segments(), 0, j));
-                        throw new IllegalArgumentException(String.format(
-                                "'%s' and '%s' JSONPath keys combination is not supported: ambiguity at segment %d with shared path %s.",
-                                current, next, j, commonPath));
-                    }
-                    break;
-                }
-            }
-        }
+        // the JSONPaths have been validated when they were parsed and any set of them can be matched
     }
 }
@@ -0,0 +1,90 @@
+package dev.blaauwendraad.masker.json.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Utilities to process 8 bytes at a time as a single {@code long} word (SWAR - SIMD within a register). The words are
+ * read in little-endian byte order, so the first byte of the array is the lowest byte of the word.
+ */
+public final class SwarUtil {
+    private static final VarHandle LONG_VIEW =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    /** The word with every byte set to 1. */
+    public static final long ONES = 0x0101010101010101L;
+    /** The word with the highest bit set in every byte. */
+    public static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long LOW_SEVEN_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+    private SwarUtil() {
+        /* don't instantiate */
+    }
+
+    /**
+     * Reads the 8 bytes starting at the given index as a single word.
+     *
+     * @param bytes the byte array to read from
+     * @param index the index of the first byte, there must be at least 8 bytes from this index
+     * @return the word
+     */
+    public static long getWord(byte[] bytes, int index) {
+        return (long) LONG_VIEW.get(bytes, index);
+    }
+
+    /**
+     * Returns the word with every byte set to the given byte, which can be XOR-ed with a word to turn the occurrences
+     * of that byte into zero bytes.
+     *
+     * @param b the byte to repeat
+     * @return the word
+     */
+    public static long repeat(byte b) {
+        return ONES * (b & 0xFF);
+    }
+
+    /**
+     * Returns whether any of the bytes of the word is less than {@code n}, which are detected by the borrow of the
+     * subtraction.
+     *
+     * @param word the word to check
+     * @param n the exclusive upper bound, at most 128
+     * @return {@code true} if any byte is less than {@code n}, {@code false} otherwise
+     */
+    public static boolean hasByteLessThan(long word, int n) {
+        return ((word - ONES * n) & ~word & HIGH_BITS) != 0;
+    }
+
+    /**
+     * Returns whether any of the bytes of the word is zero.
+     *
+     * @param word the word to check
+     * @return {@code true} if any byte is zero, {@code false} otherwise
+     */
+    public static boolean hasZeroByte(long word) {
+        return hasByteLessThan(word, 1);
+    }
+
+    /**
+     * Returns whether any of the bytes of the word has its highest bit set, i.e. is not an ASCII character.
+     *
+     * @param word the word to check
+     * @return {@code true} if any byte is not an ASCII character, {@code false} otherwise
+     */
+    public static boolean hasNonAsciiByte(long word) {
+        return (word & HIGH_BITS) != 0;
+    }
+
+    /**
+     * Returns a word that has the highest bit set in every byte that is zero in the given word, all the other bits are
+     * cleared. Unlike {@link #hasZeroByte(long)}, the result is exact for every byte as no borrow is propagated between
+     * the bytes, so the word equals {@link #HIGH_BITS} only if all the bytes are zero.
+     *
+     * @param word the word to check
+     * @return the word marking the zero bytes
+     */
+    public static long zeroBytes(long word) {
+        long lowBitsNonZero = (word & LOW_SEVEN_BITS) + LOW_SEVEN_BITS;
+        return ~(lowBitsNonZero | word | LOW_SEVEN_BITS);
+    }
+}
@@ -2,6 +2,8 @@ package dev.blaauwendraad.masker.json.util;
 
 /** UTF-8 encoding utilities class */
 public final class Utf8Util {
+    private static final long BACKSLASHES = SwarUtil.repeat((byte) '\\');
+
     private Utf8Util() {
         /* don't instantiate */
     }
@@ -74,6 +76,10 @@ public final class Utf8Util {
      * Counts the number of non-visible characters inside the string. The intervals provided must be within a single
      * string as this method will not do boundary checks or terminate at the end of string value.
      *
+     * <p>Most string values are ASCII without any escapes, so the bytes are first checked 8 bytes at a time (see
+     * {@link SwarUtil}), and only from the first word containing a multibyte character or a backslash onwards,
+     * the bytes are inspected one by one.
+     *
      * @param message the byte array containing the string
      * @param fromIndex the starting index of the string value (after the quote)
      * @param length the length of the string value (excluding the quotes)
@@ -83,6 +89,9 @@ public final class Utf8Util {
     public static int countNonVisibleCharacters(byte[] message, int fromIndex, int length) {
         int index = fromIndex;
         int toIndex = fromIndex + length;
+        while (index + 8 <= toIndex && isAsciiWithoutBackslash(SwarUtil.getWord(message, index))) {
+            index += 8;
+        }
         boolean isEscapeCharacter = false;
         int nonVisibleCharacterCount = 0;
         while (index < toIndex) {
@@ -118,6 +127,14 @@ public final class Utf8Util {
         return nonVisibleCharacterCount;
     }
 
+    /**
+     * Returns whether none of the 8 bytes of the word has the high bit set (i.e. is part of a multibyte character) or
+     * is a backslash. The backslashes become zero bytes after the XOR.
+     */
+    private static boolean isAsciiWithoutBackslash(long word) {
+        return !SwarUtil.hasNonAsciiByte(word) && !SwarUtil.hasZeroByte(word ^ BACKSLASHES);
+    }
+
     /**
      * Encodes a string value into JSON string. Escapes all necessary characters according to <a
      * href="https://datatracker.ietf.org/doc/html/rfc8259#section-7">RFC 8259, section 7</a>
@@ -0,0 +1,80 @@
+package dev.blaauwendraad.masker.json;
+
+import dev.blaauwendraad.masker.json.config.JsonMaskingConfig;
+import org.junit.jupiter.api.Test;
+
+final class CardNumberMaskingTest {
+
+    @Test
+    void shouldMaskCardNumbersInUnmaskedStrings() {
+        JsonMasker jsonMasker = JsonMasker.getMasker(JsonMaskingConfig.builder()
+                .maskKeys("secret")
+                .maskCardNumbersInStrings()
+                .build());
+
+        JsonMaskerTestUtil.assertJsonMaskerApiEquivalence(jsonMasker, """
+                {"note":"paid with 4111 1111 1111 1111 today","secret":"value","items":["378282246310005",\
+                {"description":"card 5500-0000-0000-0004, amount 12"}],"number":4111111111111111}""", """
+                {"note":"paid with **** **** **** **** today","secret":"***","items":["***************",\
+                {"description":"card ****-****-****-****, amount 12"}],"number":4111111111111111}""");
+    }
+
+    @Test
+    void shouldOnlyMaskDigitRunsThatAreCardNumbers() {
+        JsonMasker jsonMasker = JsonMasker.getMasker(JsonMaskingConfig.builder()
+                .maskKeys("secret")
+                .maskCardNumbersInStrings()
+                .build());
+
+        // invalid checksum, adjacent letters, too many digits, too few digits, double separator
+        JsonMaskerTestUtil.assertJsonMaskerApiEquivalence(jsonMasker, """
+                ["4111111111111112","id4111111111111111","41111111111111111111","411111111111","4111  1111 1111 1111"]\
+                """, """
+                ["4111111111111112","id4111111111111111","41111111111111111111","411111111111","4111  1111 1111 1111"]\
+                """);
+        // a card number followed by another number, and card numbers next to escape sequences
+        JsonMaskerTestUtil.assertJsonMaskerApiEquivalence(jsonMasker, """
+                ["4111 1111 1111 1111 2024","\\n4111111111111111\\t","\\u00344111111111111111"]""", """
+                ["**** **** **** **** 2024","\\n****************\\t","\\u0034****************"]""");
+    }
+
+    @Test
+    void shouldMaskCardNumbersInAllowedStrings() {
+        JsonMasker jsonMasker = JsonMasker.getMasker(JsonMaskingConfig.builder()
+                .allowKeys("note")
+                .maskCardNumbersInStrings()
+                .build());
+
+        JsonMaskerTestUtil.assertJsonMaskerApiEquivalence(jsonMasker, """
+                {"note":"card 4111111111111111","other":"value"}""", """
+                {"note":"card ****************","other":"***"}""");
+    }
+
+    @Test
+    void shouldMaskCardNumbersNestedInAllowedObjectsAndArrays() {
+        JsonMasker jsonMasker = JsonMasker.getMasker(JsonMaskingConfig.builder()
+                .allowKeys("meta")
+                .maskCardNumbersInStrings()
+                .build());
+
+        JsonMaskerTestUtil.assertJsonMaskerApiEquivalence(jsonMasker, """
+                {"meta":{"note":"4111 1111 1111 1111"}}""", """
+                {"meta":{"note":"**** **** **** ****"}}""");
+        JsonMaskerTestUtil.assertJsonMaskerApiEquivalence(jsonMasker, """
+                {"meta":[{"cards":["4111111111111111",5500000000000004]},"order 12345"]}""", """
+                {"meta":[{"cards":["****************",5500000000000004]},"order 12345"]}""");
+    }
+
+    @Test
+    void shouldScanValuesOutsideOfJsonPaths() {
+        JsonMasker jsonMasker = JsonMasker.getMasker(JsonMaskingConfig.builder()
+                .maskJsonPaths("$.header.token")
+                .stopAfterJsonPathsResolved()
+                .maskCardNumbersInStrings()
+                .build());
+
+        JsonMaskerTestUtil.assertJsonMaskerApiEquivalence(jsonMasker, """
+                {"header":{"token":"secret"},"body":{"note":"4111111111111111"}}""", """
+                {"header":{"token":"***"},"body":{"note":"****************"}}""");
+    }
+}
@@ -282,6 +282,48 @@ class CustomKeyMaskingConfigTest {
                 """);
     }
 
+    @Test
+    void mostSpecificJsonPathConfigShouldWin() {
+        JsonMasker jsonMasker = JsonMasker.getMasker(JsonMaskingConfig.builder()
+                .maskJsonPaths(Map.of(
+                        "$..id", KeyMaskingConfig.builder().maskNumbersWith("(any)").build(),
+                        "$.*.id", KeyMaskingConfig.builder().maskNumbersWith("(wildcard)").build(),
+                        "$.customer.id", KeyMaskingConfig.builder().maskNumbersWith("(customer)").build(),
+                        "$.items[1:].id", KeyMaskingConfig.builder().maskNumbersWith("(slice)").build(),
+                        "$.items[2].id", KeyMaskingConfig.builder().maskNumbersWith("(index)").build()))
+                .build());
+
+        JsonMaskerTestUtil.assertJsonMaskerApiEquivalence(jsonMasker, """
+                {
+                  "id": 1,
+                  "customer": {"id": 2},
+                  "order": {"id": 3, "lines": {"id": 4}},
+                  "items": [{"id": 5}, {"id": 6}, {"id": 7}]
+                }
+                """, """
+                {
+                  "id": "(any)",
+                  "customer": {"id": "(customer)"},
+                  "order": {"id": "(wildcard)", "lines": {"id": "(any)"}},
+                  "items": [{"id": "(any)"}, {"id": "(slice)"}, {"id": "(index)"}]
+                }
+                """);
+    }
+
+    @Test
+    void jsonPathConfigShouldApplyInAllowModeWithoutAllowedJsonPaths() {
+        JsonMasker jsonMasker = JsonMasker.getMasker(JsonMaskingConfig.builder()
+                .allowKeys("name")
+                .maskJsonPaths(
+                        "$.customer.secret",
+                        KeyMaskingConfig.builder().maskStringsWith("[redacted]").build())
+                .build());
+
+        JsonMaskerTestUtil.assertJsonMaskerApiEquivalence(jsonMasker, """
+                {"name":"value","secret":"value","customer":{"name":"value","secret":"value"}}""", """
+                {"name":"value","secret":"***","customer":{"name":"value","secret":"[redacted]"}}""");
+    }
+
     @Test
     void maskEmail() {
         JsonMasker jsonMasker = JsonMasker.getMasker(JsonMaskingConfig.builder()
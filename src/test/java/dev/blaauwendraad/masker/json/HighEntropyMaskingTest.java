@@ -0,0 +1,53 @@
+package dev.blaauwendraad.masker.json;
+
+import dev.blaauwendraad.masker.json.config.JsonMaskingConfig;
+import org.junit.jupiter.api.Test;
+
+final class HighEntropyMaskingTest {
+
+    @Test
+    void shouldMaskHighEntropyStrings() {
+        JsonMasker jsonMasker = JsonMasker.getMasker(JsonMaskingConfig.builder()
+                .maskKeys("password")
+                .maskHighEntropyStrings()
+                .build());
+
+        JsonMaskerTestUtil.assertJsonMaskerApiEquivalence(jsonMasker, """
+                {"x":"ghp_R2d8XqP0vLm4Tz9KsW1b","data":["da39a3ee5e6b4b0d3255bfef95601890afd80709",\
+                {"jwt":"eyJhbGciOiJIUzI1NiJ9.eyJzdWIiOiIxMjM0NTY3ODkwIn0.\
+                dozjgNryP4J3jVmNHl0w5N_XgL0n3I9PlFUP0THsR8U"}],\
+                "password":"secret"}""", """
+                {"x":"***","data":["***",\
+                {"jwt":"***"}],\
+                "password":"***"}""");
+    }
+
+    @Test
+    void shouldNotMaskLowEntropyStrings() {
+        JsonMasker jsonMasker = JsonMasker.getMasker(JsonMaskingConfig.builder()
+                .maskKeys("password")
+                .maskHighEntropyStrings()
+                .build());
+
+        // too short, text, no digits, no letters, low entropy, identifiers, timestamps and UUIDs
+        String json = """
+                ["R2d8XqP0vLm4Tz9","the token is R2d8XqP0vLm4Tz9KsW1b","abcdefghijklmnopqrstuvwxyz",\
+                "01234567890123456789","aaaaaaaaaaaaaaaaaaaaaaaa1","MyApplicationService2Impl",\
+                "user_1234567890_profile",\
+                "2024-01-01T00:00:00.000Z","123e4567-e89b-12d3-a456-426614174000"]""";
+        JsonMaskerTestUtil.assertJsonMaskerApiEquivalence(jsonMasker, json, json);
+    }
+
+    @Test
+    void shouldMaskHighEntropyStringsWithDefaultConfig() {
+        JsonMasker jsonMasker = JsonMasker.getMasker(JsonMaskingConfig.builder()
+                .allowKeys("note")
+                .maskStringCharactersWith("*")
+                .maskHighEntropyStrings()
+                .build());
+
+        JsonMaskerTestUtil.assertJsonMaskerApiEquivalence(jsonMasker, """
+                {"note":"ghp_R2d8XqP0vLm4Tz9KsW1b","other":"value"}""", """
+                {"note":"************************","other":"*****"}""");
+    }
+}
@@ -0,0 +1,163 @@
+package dev.blaauwendraad.masker.json;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import dev.blaauwendraad.masker.json.config.JsonMaskingConfig;
+import dev.blaauwendraad.masker.json.config.KeyMaskingConfig;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+final class JsonMaskerSnapshotTest {
+
+    @ParameterizedTest
+    @MethodSource("testInstances")
+    void shouldMaskTheSameAsMaskerCreatedFromConfig(JsonMaskerTestInstance testInstance) {
+        JsonMaskingConfig maskingConfig = ((KeyContainsMasker) testInstance.jsonMasker()).maskingConfig;
+        Map<String, ValueMasker> valueMaskers = customValueMaskers(maskingConfig);
+        JsonMasker jsonMasker =
+                JsonMaskerSnapshot.load(JsonMaskerSnapshot.export(maskingConfig, valueMaskers), valueMaskers);
+
+        JsonMaskerTestUtil.assertJsonMaskerApiEquivalence(
+                jsonMasker, testInstance.input(), testInstance.expectedOutput());
+    }
+
+    private static Stream<JsonMaskerTestInstance> testInstances() throws IOException {
+        List<JsonMaskerTestInstance> testInstances = new ArrayList<>();
+        for (String fileName : List.of(
+                "test-allow-mode.json",
+                "test-case-sensitivity.json",
+                "test-escaped-characters.json",
+                "test-json-path.json",
+                "test-multiple-target-keys.json")) {
+            testInstances.addAll(JsonMaskerTestUtil.getJsonMaskerTestInstancesFromFile(fileName));
+        }
+        return testInstances.stream();
+    }
+
+    /** Binds every value masker of the masking config that cannot be written to the snapshot to a unique name. */
+    private static Map<String, ValueMasker> customValueMaskers(JsonMaskingConfig maskingConfig) {
+        List<KeyMaskingConfig> keyMaskingConfigs = new ArrayList<>(maskingConfig.getKeyConfigs().values());
+        keyMaskingConfigs.add(maskingConfig.getDefaultConfig());
+        Map<String, ValueMasker> valueMaskers = new HashMap<>();
+        for (KeyMaskingConfig keyMaskingConfig : keyMaskingConfigs) {
+            for (ValueMasker valueMasker : List.of(
+                    keyMaskingConfig.getStringValueMasker(),
+                    keyMaskingConfig.getNumberValueMasker(),
+                    keyMaskingConfig.getBooleanValueMasker())) {
+                if (!(valueMasker instanceof DescriptiveValueMasker<?> descriptiveValueMasker)
+                        || !descriptiveValueMasker.isBuiltIn()) {
+                    valueMaskers.put("masker-" + valueMaskers.size(), valueMasker);
+                }
+            }
+        }
+        return valueMaskers;
+    }
+
+    @Test
+    void shouldLoadFromByteBufferWithoutChangingItsPosition() {
+        JsonMaskingConfig maskingConfig = JsonMaskingConfig.builder()
+                .maskKeys("maskMe")
+                .maskKeys("cvv", KeyMaskingConfig.builder().maskStringsWith("[redacted]").build())
+                .build();
+        byte[] snapshot = JsonMaskerSnapshot.export(maskingConfig);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(snapshot.length + 2);
+        buffer.put(new byte[] {1, 2}).put(snapshot).position(2);
+
+        JsonMasker jsonMasker = JsonMaskerSnapshot.load(buffer, Map.of());
+
+        assertThat(buffer.position()).isEqualTo(2);
+        assertThat(jsonMasker.mask("""
+                {"maskMe":"secret","CVV":"123","other":"value"}"""))
+                .isEqualTo("""
+                {"maskMe":"***","CVV":"[redacted]","other":"value"}""");
+    }
+
+    @Test
+    void shouldStoreBuiltInValueMaskersAndSettings() {
+        JsonMaskingConfig maskingConfig = JsonMaskingConfig.builder()
+                .maskKeys("iban", KeyMaskingConfig.builder().maskStringsWith(ValueMaskers.keepLast(4)).build())
+                .maskKeys(
+                        "email",
+                        KeyMaskingConfig.builder()
+                                .maskStringsWith(ValueMaskers.email(1, 0, true, "*"))
+                                .build())
+                .maskJsonPaths("$.header")
+                .maskStringCharactersWith("x")
+                .maskNumberDigitsWith(8)
+                .maskBooleansWith(false)
+                .maskSecretsInStrings("hunter2")
+                .caseSensitiveTargetKeys()
+                .build();
+        JsonMasker jsonMasker = JsonMaskerSnapshot.load(JsonMaskerSnapshot.export(maskingConfig), Map.of());
+
+        String input = """
+                {
+                  "iban": "NL91 ABNA 0417 1643 00",
+                  "EMAIL": "jane@example.com",
+                  "email": "jane@example.com",
+                  "header": {"name": "Jane", "pin": 1234},
+                  "note": "pw hunter2"
+                }
+                """;
+        JsonMaskerTestUtil.assertJsonMaskerApiEquivalence(jsonMasker, input, """
+                {
+                  "iban": "**** **** **** **43 00",
+                  "EMAIL": "jane@example.com",
+                  "email": "j*@example.com",
+                  "header": {"name": "xxxx", "pin": 8888},
+                  "note": "pw ***"
+                }
+                """);
+    }
+
+    @Test
+    void shouldBindCustomValueMaskersByName() {
+        byte[] hash = "\"#\"".getBytes(StandardCharsets.UTF_8);
+        ValueMasker.StringMasker hashMasker =
+                ValueMaskers.describe("hash", context -> context.replaceBytes(0, context.byteLength(), hash, 1));
+        JsonMaskingConfig maskingConfig = JsonMaskingConfig.builder()
+                .maskKeys("maskMe", KeyMaskingConfig.builder().maskStringsWith(hashMasker).build())
+                .build();
+
+        assertThatThrownBy(() -> JsonMaskerSnapshot.export(maskingConfig))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Value masker 'hash' must be bound to a name to be exported");
+
+        byte[] snapshot = JsonMaskerSnapshot.export(maskingConfig, Map.of("hash", hashMasker));
+
+        assertThat(JsonMaskerSnapshot.load(snapshot, Map.of("hash", hashMasker)).mask("""
+                {"maskMe":"secret"}"""))
+                .isEqualTo("""
+                {"maskMe":"#"}""");
+        assertThatThrownBy(() -> JsonMaskerSnapshot.load(snapshot, Map.of()))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("No value masker is bound to 'hash'");
+        ValueMasker.NumberMasker numberMasker = context -> {};
+        assertThatThrownBy(() -> JsonMaskerSnapshot.load(snapshot, Map.of("hash", numberMasker)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Value masker 'hash' must be a StringMasker");
+    }
+
+    @Test
+    void shouldNotLoadInvalidSnapshot() {
+        JsonMaskingConfig maskingConfig =
+                JsonMaskingConfig.builder().maskKeys("maskMe").build();
+        byte[] snapshot = JsonMaskerSnapshot.export(maskingConfig);
+
+        assertThatThrownBy(() -> JsonMaskerSnapshot.load(new byte[0], Map.of()))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> JsonMaskerSnapshot.load(Arrays.copyOf(snapshot, snapshot.length - 1), Map.of()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
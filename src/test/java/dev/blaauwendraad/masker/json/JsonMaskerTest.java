@@ -0,0 +1,46 @@
+package dev.blaauwendraad.masker.json;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import dev.blaauwendraad.masker.json.config.JsonMaskingConfig;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+final class JsonMaskerTest {
+
+    @Test
+    void shouldReturnInputWhenNothingWasMasked() {
+        assertReturnsInputOnlyWhenNothingWasMasked(JsonMasker.getMasker(
+                JsonMaskingConfig.builder().maskKeys("maskMe").build()));
+    }
+
+    @Test
+    void shouldReturnInputWhenNothingWasMaskedByDelegate() {
+        ReloadableJsonMasker jsonMasker = new ReloadableJsonMasker(
+                JsonMaskingConfig.builder().maskKeys("other").build());
+        jsonMasker.reload(JsonMaskingConfig.builder().maskKeys("maskMe").build());
+
+        assertReturnsInputOnlyWhenNothingWasMasked(jsonMasker);
+    }
+
+    private static void assertReturnsInputOnlyWhenNothingWasMasked(JsonMasker jsonMasker) {
+        String clean = """
+                {"key": "value", "other": ["\u00e9", 1, true]}""";
+        byte[] cleanBytes = clean.getBytes(StandardCharsets.UTF_8);
+        assertThat(jsonMasker.mask(clean)).isSameAs(clean);
+        assertThat(jsonMasker.mask(cleanBytes)).isSameAs(cleanBytes);
+        ByteArrayOutputStream streamsOutput = new ByteArrayOutputStream();
+        jsonMasker.mask(new ByteArrayInputStream(cleanBytes), streamsOutput);
+        assertThat(streamsOutput.toByteArray()).isEqualTo(cleanBytes);
+
+        String sensitive = """
+                {"maskMe": "value"}""";
+        byte[] sensitiveBytes = sensitive.getBytes(StandardCharsets.UTF_8);
+        assertThat(jsonMasker.mask(sensitive)).isEqualTo("""
+                {"maskMe": "***"}""");
+        assertThat(jsonMasker.mask(sensitiveBytes)).isNotSameAs(sensitiveBytes);
+        assertThat(new String(sensitiveBytes, StandardCharsets.UTF_8)).isEqualTo(sensitive);
+    }
+}
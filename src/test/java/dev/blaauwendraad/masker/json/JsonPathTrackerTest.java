@@ -6,6 +6,7 @@ import dev.blaauwendraad.masker.json.config.JsonMaskingConfig;
 import dev.blaauwendraad.masker.json.config.KeyMaskingConfig;
 import dev.blaauwendraad.masker.json.util.ByteValueMaskerContext;
 import java.nio.charset.StandardCharsets;
+import java.util.Objects;
 import java.util.Set;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -18,23 +19,23 @@ class JsonPathTrackerTest {
         KeyMatcher keyMatcher = new KeyMatcher(JsonMaskingConfig.builder()
                 .maskJsonPaths("$" + ".*".repeat(202))
                 .build());
-        var pointer = new KeyMatcher.RadixTriePointer(keyMatcher.getRootNode(), 0);
-        JsonPathTracker jsonPathTracker = new JsonPathTracker(keyMatcher, pointer);
+        JsonPathTracker jsonPathTracker =
+                new JsonPathTracker(Objects.requireNonNull(keyMatcher.getJsonPathAutomaton()));
         for (int i = 0; i < 101; i++) {
-            jsonPathTracker.pushKeyValueSegment(wildcard, 0, wildcard.length);
-            Assertions.assertThat(jsonPathTracker.currentNode()).isNotNull();
+            jsonPathTracker.pushKeyValueSegment(wildcard, 0, wildcard.length, false);
+            Assertions.assertThat(jsonPathTracker.currentState()).isNotEqualTo(JsonPathAutomaton.NO_STATE);
         }
         for (int i = 0; i < 101; i++) {
             jsonPathTracker.pushArraySegment();
-            Assertions.assertThat(jsonPathTracker.currentNode()).isNotNull();
+            Assertions.assertThat(jsonPathTracker.currentState()).isNotEqualTo(JsonPathAutomaton.NO_STATE);
         }
         for (int i = 0; i < 202; i++) {
             jsonPathTracker.backtrack();
-            Assertions.assertThat(jsonPathTracker.currentNode()).isNotNull();
+            Assertions.assertThat(jsonPathTracker.currentState()).isNotEqualTo(JsonPathAutomaton.NO_STATE);
         }
         // backtracking last time from root
         jsonPathTracker.backtrack();
-        Assertions.assertThat(jsonPathTracker.currentNode()).isNull();
+        Assertions.assertThat(jsonPathTracker.currentState()).isEqualTo(JsonPathAutomaton.NO_STATE);
     }
 
     @Test
@@ -42,23 +43,24 @@ class JsonPathTrackerTest {
         KeyMatcher keyMatcher = new KeyMatcher(
                 JsonMaskingConfig.builder().maskJsonPaths("$.a.b").build());
         var pointer = new KeyMatcher.RadixTriePointer(keyMatcher.getRootNode(), 0);
-        JsonPathTracker jsonPathTracker = new JsonPathTracker(keyMatcher, pointer);
+        JsonPathTracker jsonPathTracker =
+                new JsonPathTracker(Objects.requireNonNull(keyMatcher.getJsonPathAutomaton()));
 
         String json = """
                 {"a":{"b":1,"c":2}}
                 """;
         byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
 
-        jsonPathTracker.pushKeyValueSegment(bytes, indexOf(bytes, 'a'), 1);
-        jsonPathTracker.pushKeyValueSegment(bytes, indexOf(bytes, 'b'), 1);
-        assertThat(keyMatcher.getMaskConfigIfMatched(bytes, 0, 0, pointer, jsonPathTracker.currentNode()))
+        jsonPathTracker.pushKeyValueSegment(bytes, indexOf(bytes, 'a'), 1, false);
+        jsonPathTracker.pushKeyValueSegment(bytes, indexOf(bytes, 'b'), 1, false);
+        assertThat(keyMatcher.getMaskConfigIfMatched(bytes, 0, 0, false, pointer, jsonPathTracker.currentState()))
                 .isNotNull();
         jsonPathTracker.backtrack();
         jsonPathTracker.backtrack();
 
-        jsonPathTracker.pushKeyValueSegment(bytes, indexOf(bytes, 'a'), 1);
-        jsonPathTracker.pushKeyValueSegment(bytes, indexOf(bytes, 'c'), 1);
-        assertThat(keyMatcher.getMaskConfigIfMatched(bytes, 0, 0, pointer, jsonPathTracker.currentNode()))
+        jsonPathTracker.pushKeyValueSegment(bytes, indexOf(bytes, 'a'), 1, false);
+        jsonPathTracker.pushKeyValueSegment(bytes, indexOf(bytes, 'c'), 1, false);
+        assertThat(keyMatcher.getMaskConfigIfMatched(bytes, 0, 0, false, pointer, jsonPathTracker.currentState()))
                 .isNull();
         jsonPathTracker.backtrack();
         jsonPathTracker.backtrack();
@@ -70,7 +72,8 @@ class JsonPathTrackerTest {
                 .maskJsonPaths(Set.of("$.a[*].b", "$.a[*].c"))
                 .build());
         var pointer = new KeyMatcher.RadixTriePointer(keyMatcher.getRootNode(), 0);
-        JsonPathTracker jsonPathTracker = new JsonPathTracker(keyMatcher, pointer);
+        JsonPathTracker jsonPathTracker =
+                new JsonPathTracker(Objects.requireNonNull(keyMatcher.getJsonPathAutomaton()));
 
         String json = """
                 {
@@ -97,28 +100,28 @@ class JsonPathTrackerTest {
                 """;
         byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
 
-        jsonPathTracker.pushKeyValueSegment(bytes, indexOf(bytes, 'a'), 1);
-        jsonPathTracker.pushKeyValueSegment(bytes, -1, -1);
-        jsonPathTracker.pushKeyValueSegment(bytes, indexOf(bytes, 'b'), 1);
-        assertThat(keyMatcher.getMaskConfigIfMatched(bytes, 0, -1, pointer, jsonPathTracker.currentNode()))
+        jsonPathTracker.pushKeyValueSegment(bytes, indexOf(bytes, 'a'), 1, false);
+        jsonPathTracker.pushKeyValueSegment(bytes, -1, -1, false);
+        jsonPathTracker.pushKeyValueSegment(bytes, indexOf(bytes, 'b'), 1, false);
+        assertThat(keyMatcher.getMaskConfigIfMatched(bytes, 0, -1, false, pointer, jsonPathTracker.currentState()))
                 .isNotNull();
         jsonPathTracker.backtrack();
         jsonPathTracker.backtrack();
         jsonPathTracker.backtrack();
 
-        jsonPathTracker.pushKeyValueSegment(bytes, indexOf(bytes, 'a'), 1);
-        jsonPathTracker.pushKeyValueSegment(bytes, -1, -1);
-        jsonPathTracker.pushKeyValueSegment(bytes, indexOf(bytes, 'c'), 1);
-        assertThat(keyMatcher.getMaskConfigIfMatched(bytes, 0, -1, pointer, jsonPathTracker.currentNode()))
+        jsonPathTracker.pushKeyValueSegment(bytes, indexOf(bytes, 'a'), 1, false);
+        jsonPathTracker.pushKeyValueSegment(bytes, -1, -1, false);
+        jsonPathTracker.pushKeyValueSegment(bytes, indexOf(bytes, 'c'), 1, false);
+        assertThat(keyMatcher.getMaskConfigIfMatched(bytes, 0, -1, false, pointer, jsonPathTracker.currentState()))
                 .isNotNull();
         jsonPathTracker.backtrack();
         jsonPathTracker.backtrack();
         jsonPathTracker.backtrack();
 
-        jsonPathTracker.pushKeyValueSegment(bytes, indexOf(bytes, 'a'), 1);
-        jsonPathTracker.pushKeyValueSegment(bytes, -1, -1);
-        jsonPathTracker.pushKeyValueSegment(bytes, indexOf(bytes, 'd'), 1);
-        assertThat(keyMatcher.getMaskConfigIfMatched(bytes, 0, -1, pointer, jsonPathTracker.currentNode()))
+        jsonPathTracker.pushKeyValueSegment(bytes, indexOf(bytes, 'a'), 1, false);
+        jsonPathTracker.pushKeyValueSegment(bytes, -1, -1, false);
+        jsonPathTracker.pushKeyValueSegment(bytes, indexOf(bytes, 'd'), 1, false);
+        assertThat(keyMatcher.getMaskConfigIfMatched(bytes, 0, -1, false, pointer, jsonPathTracker.currentState()))
                 .isNull();
         jsonPathTracker.backtrack();
         jsonPathTracker.backtrack();
@@ -130,20 +133,21 @@ class JsonPathTrackerTest {
         KeyMatcher keyMatcher = new KeyMatcher(
                 JsonMaskingConfig.builder().maskJsonPaths("$.maskMe").build());
         var pointer = new KeyMatcher.RadixTriePointer(keyMatcher.getRootNode(), 0);
-        JsonPathTracker jsonPathTracker = new JsonPathTracker(keyMatcher, pointer);
+        JsonPathTracker jsonPathTracker =
+                new JsonPathTracker(Objects.requireNonNull(keyMatcher.getJsonPathAutomaton()));
 
         String json = """
                 {"maskMe":"secret"}
                 """;
         byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
 
-        jsonPathTracker.pushKeyValueSegment(bytes, 2, 4);
-        assertThat(keyMatcher.getMaskConfigIfMatched(bytes, 0, -1, pointer, jsonPathTracker.currentNode()))
+        jsonPathTracker.pushKeyValueSegment(bytes, 2, 4, false);
+        assertThat(keyMatcher.getMaskConfigIfMatched(bytes, 0, -1, false, pointer, jsonPathTracker.currentState()))
                 .isNull();
         jsonPathTracker.backtrack();
 
-        jsonPathTracker.pushKeyValueSegment(bytes, 2, 6);
-        assertThat(keyMatcher.getMaskConfigIfMatched(bytes, 0, -1, pointer, jsonPathTracker.currentNode()))
+        jsonPathTracker.pushKeyValueSegment(bytes, 2, 6, false);
+        assertThat(keyMatcher.getMaskConfigIfMatched(bytes, 0, -1, false, pointer, jsonPathTracker.currentState()))
                 .isNotNull();
         jsonPathTracker.backtrack();
     }
@@ -158,28 +162,29 @@ class JsonPathTrackerTest {
                 .build();
         KeyMatcher keyMatcher = new KeyMatcher(config);
         var pointer = new KeyMatcher.RadixTriePointer(keyMatcher.getRootNode(), 0);
-        JsonPathTracker jsonPathTracker = new JsonPathTracker(keyMatcher, pointer);
+        JsonPathTracker jsonPathTracker =
+                new JsonPathTracker(Objects.requireNonNull(keyMatcher.getJsonPathAutomaton()));
 
         var json = """
                 {"allowMe":"value","maskMe":"secret","maskMeLikeCIA":"secret"}
                 """;
         byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
 
-        jsonPathTracker.pushKeyValueSegment(bytes, 2, 7);
-        assertThat(keyMatcher.getMaskConfigIfMatched(bytes, 0, -1, pointer, jsonPathTracker.currentNode()))
+        jsonPathTracker.pushKeyValueSegment(bytes, 2, 7, false);
+        assertThat(keyMatcher.getMaskConfigIfMatched(bytes, 0, -1, false, pointer, jsonPathTracker.currentState()))
                 .isNull();
         jsonPathTracker.backtrack();
 
-        jsonPathTracker.pushKeyValueSegment(bytes, 20, 6);
-        assertThat(keyMatcher.getMaskConfigIfMatched(bytes, 0, -1, pointer, jsonPathTracker.currentNode()))
+        jsonPathTracker.pushKeyValueSegment(bytes, 20, 6, false);
+        assertThat(keyMatcher.getMaskConfigIfMatched(bytes, 0, -1, false, pointer, jsonPathTracker.currentState()))
                 .isNotNull()
                 .extracting(KeyMaskingConfig::getStringValueMasker)
                 .extracting(masker -> ByteValueMaskerContext.maskStringWith("value", masker))
                 .isEqualTo("\"***\"");
         jsonPathTracker.backtrack();
 
-        jsonPathTracker.pushKeyValueSegment(bytes, 38, 13);
-        assertThat(keyMatcher.getMaskConfigIfMatched(bytes, 0, -1, pointer, jsonPathTracker.currentNode()))
+        jsonPathTracker.pushKeyValueSegment(bytes, 38, 13, false);
+        assertThat(keyMatcher.getMaskConfigIfMatched(bytes, 0, -1, false, pointer, jsonPathTracker.currentState()))
                 .isNotNull()
                 .extracting(KeyMaskingConfig::getStringValueMasker)
                 .extracting(masker -> ByteValueMaskerContext.maskStringWith("value", masker))
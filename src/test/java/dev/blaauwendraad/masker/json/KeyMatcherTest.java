@@ -6,7 +6,7 @@ import dev.blaauwendraad.masker.json.config.JsonMaskingConfig;
 import dev.blaauwendraad.masker.json.config.KeyMaskingConfig;
 import dev.blaauwendraad.masker.json.util.ByteValueMaskerContext;
 import java.nio.charset.StandardCharsets;
-import java.util.List;
+import java.util.HashSet;
 import java.util.Locale;
 import java.util.Objects;
 import java.util.Set;
@@ -62,9 +62,11 @@ final class KeyMatcherTest {
                 {"maskMe": "secret"}
                 """.strip().getBytes(StandardCharsets.UTF_8);
 
-        assertThat(keyMatcher.getMaskConfigIfMatched(bytes, 0, bytes.length, pointer, null))
+        assertThat(keyMatcher.getMaskConfigIfMatched(
+                        bytes, 0, bytes.length, false, pointer, JsonPathAutomaton.NO_STATE))
                 .isNotNull();
-        assertThat(keyMatcher.getMaskConfigIfMatched(bytesWithPadding, 2, bytes.length, pointer, null))
+        assertThat(keyMatcher.getMaskConfigIfMatched(
+                        bytesWithPadding, 2, bytes.length, false, pointer, JsonPathAutomaton.NO_STATE))
                 .isNotNull();
     }
 
@@ -132,10 +134,143 @@ final class KeyMatcherTest {
         assertThatConfig(keyMatcher, key).isNotNull();
     }
 
+    @Test
+    void shouldSelectKeyLookupBasedOnNumberOfKeys() {
+        KeyMatcher smallKeySet = new KeyMatcher(
+                JsonMaskingConfig.builder().maskKeys(Set.of("maskMe", "cvv")).build());
+        assertThat(smallKeySet.keyLookup).isInstanceOf(LinearKeyLookup.class);
+
+        Set<String> largeKeys = new HashSet<>();
+        for (int i = 0; i <= KeyMatcher.LINEAR_LOOKUP_MAX_KEYS; i++) {
+            largeKeys.add("key" + i);
+        }
+        KeyMatcher largeKeySet =
+                new KeyMatcher(JsonMaskingConfig.builder().maskKeys(largeKeys).build());
+        assertThat(largeKeySet.keyLookup).isNotInstanceOf(LinearKeyLookup.class);
+    }
+
+    @Test
+    void shouldSelectLinearKeyLookupForKeysOfDistinctLengths() {
+        Set<String> distinctLengthKeys = new HashSet<>();
+        for (int i = 0; i < KeyMatcher.LINEAR_LOOKUP_MAX_DISTINCT_LENGTH_KEYS; i++) {
+            distinctLengthKeys.add("k" + "e".repeat(i) + "y");
+        }
+        KeyMatcher keyMatcher = new KeyMatcher(
+                JsonMaskingConfig.builder().maskKeys(distinctLengthKeys).build());
+        assertThat(keyMatcher.keyLookup).isInstanceOf(LinearKeyLookup.class);
+        assertThat(keyMatcher.root).isNull();
+
+        byte[] key = "KEEEY".getBytes(StandardCharsets.UTF_8);
+        assertThat(keyMatcher.getMaskConfigIfMatched(
+                        key, 0, key.length, false, keyMatcher.newRootNodePointer(), JsonPathAutomaton.NO_STATE))
+                .isNotNull();
+        assertThat(keyMatcher.root).isNull();
+
+        // the radix trie is built for the first key that might contain unicode escapes
+        byte[] escapedKey = "k\u0065eey".getBytes(StandardCharsets.UTF_8);
+        assertThat(keyMatcher.getMaskConfigIfMatched(
+                        escapedKey,
+                        0,
+                        escapedKey.length,
+                        true,
+                        keyMatcher.newRootNodePointer(),
+                        JsonPathAutomaton.NO_STATE))
+                .isNotNull();
+        assertThat(keyMatcher.root).isNotNull();
+
+        // five keys of the same length are compared using 5 words when case-sensitive, 10 words otherwise
+        Set<String> sameLengthKeys = new HashSet<>();
+        for (int i = 0; i < 11; i++) {
+            sameLengthKeys.add("k" + "e".repeat(i) + "y");
+        }
+        sameLengthKeys.addAll(Set.of("aaaaa", "bbbbb", "ccccc", "ddddd"));
+        KeyMatcher caseSensitiveKeyMatcher = new KeyMatcher(JsonMaskingConfig.builder()
+                .maskKeys(sameLengthKeys)
+                .caseSensitiveTargetKeys()
+                .build());
+        assertThat(caseSensitiveKeyMatcher.keyLookup).isInstanceOf(LinearKeyLookup.class);
+        KeyMatcher caseInsensitiveKeyMatcher = new KeyMatcher(
+                JsonMaskingConfig.builder().maskKeys(sameLengthKeys).build());
+        assertThat(caseInsensitiveKeyMatcher.keyLookup).isNotInstanceOf(LinearKeyLookup.class);
+    }
+
+    @Test
+    void shouldOverrideKeyLookupStrategy() {
+        KeyMatcher radixTrie = new KeyMatcher(JsonMaskingConfig.builder()
+                .maskKeys("maskMe", "cvv")
+                .keyLookupStrategy(JsonMaskingConfig.KeyLookupStrategy.RADIX_TRIE)
+                .build());
+        assertThat(radixTrie.keyLookup).isNotInstanceOf(LinearKeyLookup.class);
+        assertThat(radixTrie.root).isNotNull();
+        assertThatConfig(radixTrie, "CVV").isNotNull();
+
+        Set<String> largeKeys = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            largeKeys.add("key" + i);
+        }
+        KeyMatcher linear = new KeyMatcher(JsonMaskingConfig.builder()
+                .maskKeys(largeKeys)
+                .keyLookupStrategy(JsonMaskingConfig.KeyLookupStrategy.LINEAR)
+                .build());
+        assertThat(linear.keyLookup).isInstanceOf(LinearKeyLookup.class);
+        assertThatConfig(linear, "KEY42").isNotNull();
+        assertThatConfig(linear, "key100").isNull();
+    }
+
+    @Test
+    void shouldNotBuildKeyLookupWithoutTargetKeys() {
+        KeyMatcher keyMatcher = new KeyMatcher(
+                JsonMaskingConfig.builder().maskJsonPaths("$.maskMe").build());
+        assertThat(keyMatcher.keyLookup).isNotInstanceOf(LinearKeyLookup.class);
+        assertThat(keyMatcher.root).isNull();
+        assertThatConfig(keyMatcher, "maskMe").isNull();
+    }
+
+    @Test
+    void linearKeyLookupShouldMatchLongAndEscapedKeys() {
+        KeyMatcher keyMatcher = new KeyMatcher(JsonMaskingConfig.builder()
+                .maskKeys(Set.of("maskMe", "creditCardNumber", "pinCode"))
+                .build());
+        assertThat(keyMatcher.keyLookup).isInstanceOf(LinearKeyLookup.class);
+
+        assertThatConfig(keyMatcher, "creditCardNumber").isNotNull();
+        assertThatConfig(keyMatcher, "CREDITCARDNUMBER").isNotNull();
+        assertThatConfig(keyMatcher, "creditCardNumbeR").isNotNull();
+        assertThatConfig(keyMatcher, "creditCardNumbers").isNull();
+        assertThatConfig(keyMatcher, "creditCardNumbe_").isNull();
+        assertThatConfig(keyMatcher, "m\\u0061skMe").isNotNull();
+        assertThatConfig(keyMatcher, "creditC\\u0061rdNumber").isNotNull();
+        assertThatConfig(keyMatcher, "m\\u0062skMe").isNull();
+    }
+
+    @Test
+    void shouldDecodeUnicodeEscapesOnlyIfKeyContainsEscapes() {
+        KeyMatcher keyMatcher =
+                new KeyMatcher(JsonMaskingConfig.builder().maskKeys("maskMe").build());
+        byte[] escaped = "m\\u0061skMe".getBytes(StandardCharsets.UTF_8);
+        byte[] unescaped = "maskMe".getBytes(StandardCharsets.UTF_8);
+        var pointer = new KeyMatcher.RadixTriePointer(keyMatcher.getRootNode(), 0);
+
+        assertThat(KeyMatcher.traverseFrom(pointer, escaped, 0, escaped.length, true))
+                .isNotNull()
+                .extracting(KeyMatcher.RadixTriePointer::isTerminalNode)
+                .isEqualTo(true);
+        pointer.reset();
+        assertThat(KeyMatcher.traverseFrom(pointer, escaped, 0, escaped.length, false))
+                .isNull();
+        pointer.reset();
+        assertThat(KeyMatcher.traverseFrom(pointer, unescaped, 0, unescaped.length, false))
+                .isNotNull()
+                .extracting(KeyMatcher.RadixTriePointer::isTerminalNode)
+                .isEqualTo(true);
+    }
+
     private ObjectAssert<KeyMaskingConfig> assertThatConfig(KeyMatcher keyMatcher, String key) {
         var pointer = new KeyMatcher.RadixTriePointer(keyMatcher.getRootNode(), 0);
         byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
-        return Assertions.assertThat(keyMatcher.getMaskConfigIfMatched(bytes, 0, bytes.length, pointer, null));
+        boolean keyContainsEscapes = key.indexOf('\\') >= 0;
+        return Assertions.assertThat(keyMatcher.getMaskConfigIfMatched(
+                bytes, 0, bytes.length, keyContainsEscapes, pointer, JsonPathAutomaton.NO_STATE));
     }
 
     @Test
@@ -162,17 +297,15 @@ final class KeyMatcherTest {
     }
 
     @Test
-    void compressPreInitTrie() {
+    void buildRadixTrie() {
         // Given, the target keys "breus" and "bruce"
-        KeyMatcher keyMatcher = new KeyMatcher(
+        KeyMatcher.RadixTrieBuilder builder = new KeyMatcher.RadixTrieBuilder(
                 JsonMaskingConfig.builder().maskKeys("breus", "bruce").build());
-
-        KeyMatcher.PreInitTrieNode preInitTrieNode = new KeyMatcher.PreInitTrieNode();
-        keyMatcher.insert(preInitTrieNode, "breus", false);
-        keyMatcher.insert(preInitTrieNode, "bruce", false);
+        builder.insert("breus", false);
+        builder.insert("bruce", false);
 
         // When
-        KeyMatcher.RadixTrieNode trieNode = KeyMatcher.compress(preInitTrieNode);
+        KeyMatcher.RadixTrieNode trieNode = builder.build();
 
         // Then, should become the following compressed radix Trie:
         // br -> eus
@@ -207,37 +340,56 @@ final class KeyMatcherTest {
     }
 
     @Test
-    void convertToRadixTrieNode() {
+    void buildRadixTrieChildrenArrays() {
         // Given, the target keys "breus" and "bruce"
-        KeyMatcher keyMatcher = new KeyMatcher(
+        KeyMatcher.RadixTrieBuilder builder = new KeyMatcher.RadixTrieBuilder(
                 JsonMaskingConfig.builder().maskKeys("breus", "bruce").build());
-        KeyMatcher.PreInitTrieNode preInitTrieNode = new KeyMatcher.PreInitTrieNode();
-        keyMatcher.insert(preInitTrieNode, "breus", false);
-        keyMatcher.insert(preInitTrieNode, "bruce", false);
-
-        KeyMatcher.RadixTrieNode radixTrieNode = KeyMatcher.convertToRadixTrieNode(preInitTrieNode, List.of());
-        // There is just one lower and uppercase child, representing 'br' and 'BR'
-        assertThat(radixTrieNode.childrenLowercase).hasSize(1);
-        assertThat(radixTrieNode.childrenUppercase).hasSize(1);
-        KeyMatcher.RadixTrieNode childrenLowercase = radixTrieNode.childrenLowercase[0];
-        Objects.requireNonNull(childrenLowercase);
-        assertThat(childrenLowercase.prefixLowercase).isEqualTo("r".getBytes(StandardCharsets.UTF_8));
+        builder.insert("breus", false);
+        builder.insert("bruce", false);
+
+        KeyMatcher.RadixTrieNode radixTrieNode = builder.build();
+        // The common prefix 'br' is merged into the root node
+        assertThat(radixTrieNode.prefixLowercase).isEqualTo("br".getBytes(StandardCharsets.UTF_8));
 
         // The offset of the children array is 101, because the first child is 'e' (101 in ASCII)
-        assertThat(childrenLowercase.childrenLowercaseArrayOffset).isEqualTo(101);
+        assertThat(radixTrieNode.childrenLowercaseArrayOffset).isEqualTo(101);
+        // The uppercase children start at 'E' (69 in ASCII)
+        assertThat(radixTrieNode.childrenUppercaseArrayOffset).isEqualTo(69);
 
         // The difference between 'e' (101 in ASCII) and 'u' (117 in ASCII) is 16, so 'e' is at index 0 and 'u' at index
         // 16 in the children array
-        assertThat(childrenLowercase.childrenLowercase).hasSize(17);
+        assertThat(radixTrieNode.childrenLowercase).hasSize(17);
+        assertThat(radixTrieNode.childrenUppercase).hasSize(17);
 
         // This is the 'e' in 'breus' with as prefix 'us'
-        KeyMatcher.RadixTrieNode childrenLowerCaseIndex0 = childrenLowercase.childrenLowercase[0];
+        KeyMatcher.RadixTrieNode childrenLowerCaseIndex0 = radixTrieNode.childrenLowercase[0];
         Objects.requireNonNull(childrenLowerCaseIndex0);
         assertThat(childrenLowerCaseIndex0.prefixLowercase).isEqualTo("us".getBytes(StandardCharsets.UTF_8));
+        assertThat(radixTrieNode.childrenUppercase[0]).isSameAs(childrenLowerCaseIndex0);
 
         // This is the 'u' in 'bruce' with as prefix 'ce'
-        KeyMatcher.RadixTrieNode childrenLowerCaseIndex16 = childrenLowercase.childrenLowercase[16];
+        KeyMatcher.RadixTrieNode childrenLowerCaseIndex16 = radixTrieNode.childrenLowercase[16];
         Objects.requireNonNull(childrenLowerCaseIndex16);
         assertThat(childrenLowerCaseIndex16.prefixLowercase).isEqualTo("ce".getBytes(StandardCharsets.UTF_8));
+        assertThat(radixTrieNode.childrenUppercase[16]).isSameAs(childrenLowerCaseIndex16);
+    }
+
+    @Test
+    void buildRadixTrieShouldKeepLastInsertedDuplicateKey() {
+        KeyMaskingConfig redacted =
+                KeyMaskingConfig.builder().maskStringsWith("[redacted]").build();
+        JsonMaskingConfig config = JsonMaskingConfig.builder()
+                .maskKeys("cvv")
+                .maskKeys("CVV", redacted)
+                .build();
+        KeyMatcher.RadixTrieBuilder builder = new KeyMatcher.RadixTrieBuilder(config);
+        builder.insert("cvv", false);
+        builder.insert("CVV", false);
+
+        KeyMatcher.RadixTrieNode radixTrieNode = builder.build();
+
+        assertThat(builder.size()).isEqualTo(1);
+        assertThat(radixTrieNode.terminalNode).isTrue();
+        assertThat(radixTrieNode.keyMaskingConfig).isSameAs(redacted);
     }
 }
@@ -1,6 +1,7 @@
 package dev.blaauwendraad.masker.json;
 
 import dev.blaauwendraad.masker.json.config.JsonMaskingConfig;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -45,6 +46,44 @@ class MaskingStateTest {
                 """.stripTrailing());
     }
 
+    @Test
+    void shouldProvideBulkAccessToCurrentValue() {
+        MaskingState maskingState = new MaskingState("""
+                {"maskMe": "so@me"}""".getBytes(StandardCharsets.UTF_8), pointer);
+        maskingState.incrementIndex(11);
+        maskingState.registerTokenStartIndex();
+        maskingState.incrementIndex(7);
+
+        byte[] destination = new byte[6];
+        maskingState.getBytes(1, 5, destination, 1);
+        Assertions.assertThat(new String(destination, 1, 5, StandardCharsets.UTF_8))
+                .isEqualTo("so@me");
+        Assertions.assertThat(maskingState.indexOf((byte) '@', 0)).isEqualTo(3);
+        Assertions.assertThat(maskingState.indexOf((byte) '@', 4)).isEqualTo(-1);
+        ByteBuffer byteBuffer = maskingState.asByteBuffer();
+        Assertions.assertThat(byteBuffer.isReadOnly()).isTrue();
+        Assertions.assertThat(byteBuffer).isEqualTo(ByteBuffer.wrap("\"so@me\"".getBytes(StandardCharsets.UTF_8)));
+        Assertions.assertThatThrownBy(() -> maskingState.getBytes(1, 7, destination, 0))
+                .isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    @Test
+    void shouldCopyMaskSliceWhenReplacementIsDelayed() {
+        MaskingState maskingState = new MaskingState("""
+                {"maskMe": "some"}""".getBytes(StandardCharsets.UTF_8), pointer);
+        maskingState.incrementIndex(11);
+        maskingState.registerTokenStartIndex();
+        maskingState.incrementIndex(6);
+
+        byte[] buffer = "xx***yy".getBytes(StandardCharsets.UTF_8);
+        maskingState.replaceBytes(1, 4, buffer, 2, 3, 1);
+        buffer[3] = 'x';
+
+        Assertions.assertThat(new String(maskingState.flushReplacementOperations(), StandardCharsets.UTF_8))
+                .isEqualTo("""
+                        {"maskMe": "***"}""");
+    }
+
     @Test
     void shouldThrowErrorWhenGettingStartValueIndexOutsideOfMasking() {
         MaskingState maskingState = new MaskingState("""
@@ -0,0 +1,263 @@
+package dev.blaauwendraad.masker.json;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import dev.blaauwendraad.masker.json.config.JsonMaskingConfig;
+import dev.blaauwendraad.masker.json.config.JsonMaskingConfig.KeyLookupStrategy;
+import dev.blaauwendraad.masker.json.config.KeyMaskingConfig;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+final class ReloadableJsonMaskerTest {
+    /** Enough keys for the reload to update the look-up trie copy-on-write instead of rebuilding it. */
+    private static final Set<String> manyKeys =
+            IntStream.range(0, 100).mapToObj(i -> "key" + i).collect(Collectors.toCollection(LinkedHashSet::new));
+
+    @Test
+    void shouldMaskWithReloadedConfig() {
+        ReloadableJsonMasker jsonMasker = new ReloadableJsonMasker(
+                JsonMaskingConfig.builder().maskKeys("maskMe").build());
+        assertThat(jsonMasker.mask("""
+                {"maskMe":"secret","other":"value"}"""))
+                .isEqualTo("""
+                {"maskMe":"***","other":"value"}""");
+
+        JsonMaskingConfig maskingConfig =
+                JsonMaskingConfig.builder().maskKeys("other").build();
+        jsonMasker.reload(maskingConfig);
+
+        assertThat(jsonMasker.getMaskingConfig()).isSameAs(maskingConfig);
+        assertThat(jsonMasker.mask("""
+                {"maskMe":"secret","other":"value"}"""))
+                .isEqualTo("""
+                {"maskMe":"secret","other":"***"}""");
+    }
+
+    @Test
+    void shouldAddAndRemoveKeysOfLargeKeySet() {
+        ReloadableJsonMasker jsonMasker = new ReloadableJsonMasker(
+                JsonMaskingConfig.builder().maskKeys(manyKeys).build());
+
+        Set<String> keys = manyKeysExcept("key1", "key42");
+        keys.add("key1Suffix");
+        keys.add("KEY");
+        jsonMasker.reload(JsonMaskingConfig.builder().maskKeys(keys).build());
+
+        assertThat(jsonMasker.mask("""
+                {"key1":"a","key42":"b","key4":"c","Key1Suffix":"d","key":"e","key10":"f","ke":"g"}"""))
+                .isEqualTo("""
+                {"key1":"a","key42":"b","key4":"***","Key1Suffix":"***","key":"***","key10":"***","ke":"g"}""");
+    }
+
+    @Test
+    void shouldOnlyUpdateGivenChangedKeys() {
+        ReloadableJsonMasker jsonMasker = new ReloadableJsonMasker(
+                JsonMaskingConfig.builder().maskKeys(manyKeys).build());
+
+        Set<String> keys = manyKeysExcept("key1", "key42");
+        keys.add("key1Suffix");
+        keys.add("KEY");
+        JsonMaskingConfig maskingConfig =
+                JsonMaskingConfig.builder().maskKeys(keys).build();
+        jsonMasker.reload(maskingConfig, Set.of("key1", "key42", "key1Suffix", "KEY"));
+
+        assertThat(jsonMasker.getMaskingConfig()).isSameAs(maskingConfig);
+        assertThat(jsonMasker.mask("""
+                {"key1":"a","key42":"b","key4":"c","Key1Suffix":"d","key":"e","key10":"f","ke":"g"}"""))
+                .isEqualTo("""
+                {"key1":"a","key42":"b","key4":"***","Key1Suffix":"***","key":"***","key10":"***","ke":"g"}""");
+
+        // the inserted keys were updated as well, so the next reload finds the changed keys by comparing the configs
+        jsonMasker.reload(JsonMaskingConfig.builder().maskKeys(manyKeys).build());
+
+        assertThat(jsonMasker.mask("""
+                {"key1":"a","key42":"b","Key1Suffix":"d","key":"e"}"""))
+                .isEqualTo("""
+                {"key1":"***","key42":"***","Key1Suffix":"d","key":"e"}""");
+    }
+
+    @Test
+    void shouldOnlyUpdateGivenChangedKeysInAllowMode() {
+        KeyMaskingConfig redacted =
+                KeyMaskingConfig.builder().maskStringsWith("[redacted]").build();
+        ReloadableJsonMasker jsonMasker = new ReloadableJsonMasker(
+                JsonMaskingConfig.builder().allowKeys(manyKeys).build());
+
+        jsonMasker.reload(
+                JsonMaskingConfig.builder()
+                        .allowKeys(manyKeysExcept("key1"))
+                        .maskKeys("key1", redacted)
+                        .build(),
+                Set.of("key1"));
+
+        assertThat(jsonMasker.mask("""
+                {"key1":"a","key2":"b","other":"c"}"""))
+                .isEqualTo("""
+                {"key1":"[redacted]","key2":"b","other":"***"}""");
+    }
+
+    @Test
+    void shouldUpdateKeySpecificMaskingConfig() {
+        KeyMaskingConfig redacted =
+                KeyMaskingConfig.builder().maskStringsWith("[redacted]").build();
+        ReloadableJsonMasker jsonMasker = new ReloadableJsonMasker(JsonMaskingConfig.builder()
+                .maskKeys(manyKeysExcept("key1"))
+                .maskKeys("key1", redacted)
+                .build());
+        assertThat(jsonMasker.mask("""
+                {"key1":"a","key2":"b"}"""))
+                .isEqualTo("""
+                {"key1":"[redacted]","key2":"***"}""");
+
+        jsonMasker.reload(JsonMaskingConfig.builder()
+                .maskKeys(manyKeysExcept("key2"))
+                .maskKeys("key2", redacted)
+                .build());
+
+        assertThat(jsonMasker.mask("""
+                {"key1":"a","key2":"b"}"""))
+                .isEqualTo("""
+                {"key1":"***","key2":"[redacted]"}""");
+    }
+
+    @Test
+    void shouldPreferKeySpecificMaskingConfigForKeysDifferingInCasing() {
+        KeyMaskingConfig redacted =
+                KeyMaskingConfig.builder().maskStringsWith("[redacted]").build();
+        ReloadableJsonMasker jsonMasker = new ReloadableJsonMasker(
+                JsonMaskingConfig.builder().maskKeys(manyKeys).build());
+
+        jsonMasker.reload(JsonMaskingConfig.builder()
+                .maskKeys(manyKeys)
+                .maskKeys("KEY1", redacted)
+                .build());
+
+        assertThat(jsonMasker.mask("""
+                {"key1":"a"}"""))
+                .isEqualTo("""
+                {"key1":"[redacted]"}""");
+        assertThat(jsonMasker.mask("""
+                {"key1":"a"}"""))
+                .isEqualTo(JsonMasker.getMasker(jsonMasker.getMaskingConfig()).mask("""
+                {"key1":"a"}"""));
+    }
+
+    @Test
+    void shouldUpdateTrieWhenReloadingEqualConfig() {
+        ReloadableJsonMasker jsonMasker = new ReloadableJsonMasker(configWithKeySpecificMaskingConfigs());
+        KeyMatcher.RadixTrieNode root = jsonMasker.keyMatcher.getRootNode();
+
+        jsonMasker.reload(configWithKeySpecificMaskingConfigs());
+
+        // none of the keys changed, so the trie is updated without copying any of its nodes
+        assertThat(jsonMasker.keyMatcher.getRootNode()).isSameAs(root);
+        assertThat(jsonMasker.mask("""
+                {"key1":"a","key2":12,"key20":"b"}"""))
+                .isEqualTo("""
+                {"key1":"[redacted]","key2":88,"key20":"***"}""");
+    }
+
+    private static JsonMaskingConfig configWithKeySpecificMaskingConfigs() {
+        JsonMaskingConfig.Builder builder = JsonMaskingConfig.builder()
+                .maskKeys(manyKeysExcept("key0", "key1", "key2", "key3", "key4", "key5", "key6", "key7"));
+        for (int i = 0; i < 8; i++) {
+            builder.maskKeys(
+                    "key" + i,
+                    KeyMaskingConfig.builder()
+                            .maskStringsWith("[redacted]")
+                            .maskNumberDigitsWith(8)
+                            .build());
+        }
+        return builder.build();
+    }
+
+    @Test
+    void shouldKeepLinearKeyLookup() {
+        ReloadableJsonMasker jsonMasker = new ReloadableJsonMasker(JsonMaskingConfig.builder()
+                .maskKeys(manyKeys)
+                .keyLookupStrategy(KeyLookupStrategy.LINEAR)
+                .build());
+
+        jsonMasker.reload(JsonMaskingConfig.builder()
+                .maskKeys(manyKeysExcept("key1"))
+                .keyLookupStrategy(KeyLookupStrategy.LINEAR)
+                .build());
+
+        assertThat(jsonMasker.keyMatcher.keyLookup).isInstanceOf(LinearKeyLookup.class);
+        assertThat(jsonMasker.mask("""
+                {"key1":"a","key2":"b"}"""))
+                .isEqualTo("""
+                {"key1":"a","key2":"***"}""");
+    }
+
+    @Test
+    void shouldSelectLinearKeyLookupWhenKeySetShrinks() {
+        // the keys are of distinct lengths, so the linear key lookup is selected for up to 16 keys
+        Set<String> keys = IntStream.rangeClosed(1, 17)
+                .mapToObj("k"::repeat)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        ReloadableJsonMasker jsonMasker =
+                new ReloadableJsonMasker(JsonMaskingConfig.builder().maskKeys(keys).build());
+        assertThat(jsonMasker.keyMatcher.keyLookup).isNotInstanceOf(LinearKeyLookup.class);
+
+        keys.remove("k");
+        jsonMasker.reload(JsonMaskingConfig.builder().maskKeys(keys).build(), Set.of("k"));
+
+        assertThat(jsonMasker.keyMatcher.keyLookup).isInstanceOf(LinearKeyLookup.class);
+        assertThat(jsonMasker.mask("""
+                {"k":"a","kk":"b"}"""))
+                .isEqualTo("""
+                {"k":"a","kk":"***"}""");
+    }
+
+    @Test
+    void shouldRebuildWhenTargetKeyModeChanges() {
+        ReloadableJsonMasker jsonMasker = new ReloadableJsonMasker(
+                JsonMaskingConfig.builder().maskKeys(manyKeys).build());
+
+        jsonMasker.reload(JsonMaskingConfig.builder()
+                .allowKeys(manyKeys)
+                .caseSensitiveTargetKeys()
+                .build());
+
+        assertThat(jsonMasker.mask("""
+                {"key1":"a","KEY2":"b","other":"c"}"""))
+                .isEqualTo("""
+                {"key1":"a","KEY2":"***","other":"***"}""");
+    }
+
+    @Test
+    void shouldMaskConcurrentlyWithReload() throws InterruptedException {
+        JsonMaskingConfig first = JsonMaskingConfig.builder().maskKeys(manyKeys).build();
+        Set<String> keys = new LinkedHashSet<>(manyKeys);
+        keys.add("other");
+        JsonMaskingConfig second = JsonMaskingConfig.builder().maskKeys(keys).build();
+        ReloadableJsonMasker jsonMasker = new ReloadableJsonMasker(first);
+
+        Thread reloader = new Thread(() -> {
+            for (int i = 0; i < 1000; i++) {
+                jsonMasker.reload(i % 2 == 0 ? second : first);
+            }
+        });
+        reloader.start();
+        while (reloader.isAlive()) {
+            assertThat(jsonMasker.mask("""
+                    {"key1":"a","other":"b"}"""))
+                    .isIn("""
+                    {"key1":"***","other":"b"}""", """
+                    {"key1":"***","other":"***"}""");
+        }
+        reloader.join();
+    }
+
+    private static Set<String> manyKeysExcept(String... keys) {
+        Set<String> result = new LinkedHashSet<>(manyKeys);
+        for (String key : keys) {
+            result.remove(key);
+        }
+        return result;
+    }
+}
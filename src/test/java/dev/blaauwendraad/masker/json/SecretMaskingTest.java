@@ -0,0 +1,109 @@
+package dev.blaauwendraad.masker.json;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import dev.blaauwendraad.masker.json.config.JsonMaskingConfig;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+final class SecretMaskingTest {
+
+    @Test
+    void shouldMaskSecretsInUnmaskedStrings() {
+        JsonMasker jsonMasker = JsonMasker.getMasker(JsonMaskingConfig.builder()
+                .maskKeys("password")
+                .maskSecretsInStrings("tok-123", "internal.example")
+                .build());
+
+        JsonMaskerTestUtil.assertJsonMaskerApiEquivalence(jsonMasker, """
+                {"url":"https://internal.example/api?token=tok-123","password":"tok-123","tok-123":"key",\
+                "items":["tok-123tok-123",{"host":"INTERNAL.EXAMPLE"}],"number":123}""", """
+                {"url":"https://***/api?token=***","password":"***","tok-123":"key",\
+                "items":["***",{"host":"INTERNAL.EXAMPLE"}],"number":123}""");
+    }
+
+    @Test
+    void shouldMergeOverlappingSecrets() {
+        JsonMasker jsonMasker = JsonMasker.getMasker(JsonMaskingConfig.builder()
+                .maskKeys("password")
+                .maskSecretsInStrings("abcd", "cdef", "bc", "x")
+                .build());
+
+        JsonMaskerTestUtil.assertJsonMaskerApiEquivalence(jsonMasker, """
+                ["abcdef","_bc_","abcx","ab"]""", """
+                ["***","_***_","a***","ab"]""");
+    }
+
+    @Test
+    void shouldMatchSecretsAgainstEscapeSequences() {
+        JsonMasker jsonMasker = JsonMasker.getMasker(JsonMaskingConfig.builder()
+                .maskKeys("password")
+                .maskSecretsInStrings("say \"hi\"", "n", "u0")
+                .build());
+
+        // a secret is not matched in the middle of an escape sequence
+        JsonMaskerTestUtil.assertJsonMaskerApiEquivalence(jsonMasker, """
+                ["they say \\"hi\\"","\\n","\\\\n","\\u006e","u0"]""", """
+                ["they ***","\\n","\\\\***","\\u006e","***"]""");
+    }
+
+    @Test
+    void shouldMaskSecretsAndCardNumbers() {
+        JsonMasker jsonMasker = JsonMasker.getMasker(JsonMaskingConfig.builder()
+                .allowKeys("note")
+                .maskSecretsInStrings("tok")
+                .maskCardNumbersInStrings()
+                .build());
+
+        JsonMaskerTestUtil.assertJsonMaskerApiEquivalence(jsonMasker, """
+                {"note":"4111111111111111 tok 5500000000000004","other":"tok"}""", """
+                {"note":"**************** *** ****************","other":"***"}""");
+    }
+
+    @Test
+    void shouldMaskSecretsNestedInAllowedObjectsAndArrays() {
+        JsonMasker jsonMasker = JsonMasker.getMasker(JsonMaskingConfig.builder()
+                .allowKeys("meta")
+                .maskSecretsInStrings("hunter2")
+                .build());
+
+        JsonMaskerTestUtil.assertJsonMaskerApiEquivalence(jsonMasker, """
+                {"meta":{"note":"pw hunter2"}}""", """
+                {"meta":{"note":"pw ***"}}""");
+        JsonMaskerTestUtil.assertJsonMaskerApiEquivalence(jsonMasker, """
+                {
+                  "meta": [
+                    "hunter2",
+                    {"hunter2": [1, true, null, "x hunter2", {}, []]},
+                    ["no secret"]
+                  ],
+                  "other": "hunter2"
+                }""", """
+                {
+                  "meta": [
+                    "***",
+                    {"hunter2": [1, true, null, "x ***", {}, []]},
+                    ["no secret"]
+                  ],
+                  "other": "***"
+                }""");
+    }
+
+    @Test
+    void shouldNotAllowEmptySecrets() {
+        JsonMaskingConfig.Builder builder = JsonMaskingConfig.builder();
+
+        assertThatThrownBy(() -> builder.maskSecretsInStrings(Set.of()))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("At least one secret must be provided");
+        assertThatThrownBy(() -> builder.maskSecretsInStrings())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("At least one secret must be provided");
+        assertThatThrownBy(() -> builder.maskSecretsInStrings(Set.of("")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Secret must not be empty");
+        assertThatThrownBy(() -> builder.maskSecretsInStrings("secret", ""))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Secret must not be empty");
+    }
+}
@@ -0,0 +1,57 @@
+package dev.blaauwendraad.masker.json;
+
+import dev.blaauwendraad.masker.json.config.JsonMaskingConfig;
+import org.junit.jupiter.api.Test;
+
+final class StopAfterJsonPathsResolvedTest {
+
+    @Test
+    void shouldNotScanRemainderOnceAllJsonPathsAreMasked() {
+        JsonMasker jsonMasker = JsonMasker.getMasker(JsonMaskingConfig.builder()
+                .maskJsonPaths("$.header.token", "$.header.id")
+                .stopAfterJsonPathsResolved()
+                .build());
+
+        // the body is not valid JSON, which proves that it is copied as is without being scanned
+        JsonMaskerTestUtil.assertJsonMaskerApiEquivalence(jsonMasker, """
+                {"header":{"token":"secret","id":123,"other":"value"},"body":{"token":"not scanned" ]]""", """
+                {"header":{"token":"***","id":"###","other":"value"},"body":{"token":"not scanned" ]]""");
+    }
+
+    @Test
+    void shouldNotScanRemainderOnceParentObjectOfJsonPathIsClosed() {
+        JsonMasker jsonMasker = JsonMasker.getMasker(JsonMaskingConfig.builder()
+                .maskJsonPaths("$.header.token", "$.header.missing")
+                .stopAfterJsonPathsResolved()
+                .build());
+
+        JsonMaskerTestUtil.assertJsonMaskerApiEquivalence(jsonMasker, """
+                {"header":{"token":"secret"},"body":{"missing":"not scanned" ]]""", """
+                {"header":{"token":"***"},"body":{"missing":"not scanned" ]]""");
+    }
+
+    @Test
+    void shouldScanWholeInputWithWildcardJsonPaths() {
+        JsonMasker jsonMasker = JsonMasker.getMasker(JsonMaskingConfig.builder()
+                .maskJsonPaths("$.header.token", "$.items.*.token")
+                .stopAfterJsonPathsResolved()
+                .build());
+
+        JsonMaskerTestUtil.assertJsonMaskerApiEquivalence(jsonMasker, """
+                {"header":{"token":"secret"},"items":[{"token":"secret"},{"token":"secret"}]}""", """
+                {"header":{"token":"***"},"items":[{"token":"***"},{"token":"***"}]}""");
+    }
+
+    @Test
+    void shouldScanWholeInputWithTargetKeys() {
+        JsonMasker jsonMasker = JsonMasker.getMasker(JsonMaskingConfig.builder()
+                .maskJsonPaths("$.header.token")
+                .maskKeys("password")
+                .stopAfterJsonPathsResolved()
+                .build());
+
+        JsonMaskerTestUtil.assertJsonMaskerApiEquivalence(jsonMasker, """
+                {"header":{"token":"secret"},"body":{"password":"secret"}}""", """
+                {"header":{"token":"***"},"body":{"password":"***"}}""");
+    }
+}
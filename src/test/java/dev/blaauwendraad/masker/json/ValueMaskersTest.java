@@ -1,11 +1,23 @@
 package dev.blaauwendraad.masker.json;
 
+import dev.blaauwendraad.masker.json.config.JsonMaskingConfig;
 import dev.blaauwendraad.masker.json.config.KeyMaskingConfig;
 import dev.blaauwendraad.masker.json.util.ByteValueMaskerContext;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 import org.assertj.core.api.Assertions;
+import org.jspecify.annotations.Nullable;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -23,6 +35,18 @@ class ValueMaskersTest {
         Assertions.assertThat(descriptiveValueMasker).hasToString("null (literal)");
     }
 
+    @Test
+    void describeDelegatesMasking() {
+        ValueMasker.AnyValueMasker valueMasker = ValueMaskers.describe(
+                "null (literal)",
+                context -> context.replaceBytes(0, context.byteLength(), "null".getBytes(StandardCharsets.UTF_8), 1));
+
+        Assertions.assertThat(ByteValueMaskerContext.maskStringWith("secret", valueMasker))
+                .isEqualTo("null");
+        Assertions.assertThat(ByteValueMaskerContext.maskNumberWith(12345, valueMasker))
+                .isEqualTo("null");
+    }
+
     @Test
     void withStringValue() {
         var valueMasker = ValueMaskers.with("***");
@@ -144,6 +168,42 @@ class ValueMaskersTest {
                 .isEqualTo("true");
     }
 
+    @Test
+    void keepFirstAndLast() {
+        Assertions.assertThat(ByteValueMaskerContext.maskStringWith("Johnson", ValueMaskers.keepFirst(1)))
+                .isEqualTo("\"J******\"");
+        Assertions.assertThat(ByteValueMaskerContext.maskStringWith("NL91 ABNA 0417 1643 00", ValueMaskers.keepLast(4)))
+                .isEqualTo("\"**** **** **** **43 00\"");
+        Assertions.assertThat(ByteValueMaskerContext.maskStringWith(
+                        "Müller", ValueMaskers.keepFirstAndLast(1, 1, "*", true, false)))
+                .isEqualTo("\"M****r\"");
+        Assertions.assertThat(ByteValueMaskerContext.maskStringWith(
+                        "Müller", ValueMaskers.keepFirstAndLast(1, 1, "***", false, false)))
+                .isEqualTo("\"M***r\"");
+        Assertions.assertThat(ByteValueMaskerContext.maskStringWith(
+                        "+31 6-1234 5678", ValueMaskers.keepFirstAndLast(0, 4, "#", true, true)))
+                .isEqualTo("\"### #-#### 5678\"");
+        Assertions.assertThat(ByteValueMaskerContext.maskStringWith(
+                        "+31 6-1234 5678", ValueMaskers.keepFirstAndLast(0, 4, "***", false, true)))
+                .isEqualTo("\"*** ***-*** 5678\"");
+        // escape sequences and multibyte characters are single characters (a surrogate pair counts as two)
+        Assertions.assertThat(ByteValueMaskerContext.maskStringWith(
+                        "a\\\"b\\nc\\uD83D\\uDE00dé", ValueMaskers.keepFirstAndLast(1, 2, "*", true, false)))
+                .isEqualTo("\"a******dé\"");
+        Assertions.assertThat(ByteValueMaskerContext.maskStringWith(
+                        "12345", ValueMaskers.keepFirstAndLast(2, 2, "\"", true, false)))
+                .isEqualTo("\"12\\\"45\"");
+        // values that are too short are masked completely
+        Assertions.assertThat(ByteValueMaskerContext.maskStringWith("abc", ValueMaskers.keepLast(4)))
+                .isEqualTo("\"***\"");
+        Assertions.assertThat(ByteValueMaskerContext.maskStringWith("", ValueMaskers.keepLast(4)))
+                .isEqualTo("\"\"");
+
+        Assertions.assertThatThrownBy(() -> ValueMaskers.keepFirst(-1))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Number of characters to keep must not be negative, but was -1 and 0");
+    }
+
     @Test
     void email() {
         Assertions.assertThat(ByteValueMaskerContext.maskStringWith(
@@ -399,6 +459,211 @@ class ValueMaskersTest {
                 .hasMessage("Invalid hex character 'X' at index 1");
     }
 
+    @Test
+    void withTextMasker() {
+        var valueMasker = ValueMaskers.withTextMasker((value, maskedValue) -> {
+            if (value.toString().startsWith("secret:")) {
+                maskedValue.append("***");
+            } else if (value.toString().equals("false")) {
+                return false;
+            } else {
+                maskedValue.append(value);
+            }
+            return true;
+        });
+
+        Assertions.assertThat(ByteValueMaskerContext.maskStringWith("not a secret", valueMasker))
+                .isEqualTo("\"not a secret\"");
+        Assertions.assertThat(ByteValueMaskerContext.maskStringWith("secret: very much", valueMasker))
+                .isEqualTo("\"***\"");
+        Assertions.assertThat(ByteValueMaskerContext.maskStringWith("", valueMasker))
+                .isEqualTo("\"\"");
+        Assertions.assertThat(ByteValueMaskerContext.maskNumberWith(12345, valueMasker))
+                .isEqualTo("\"12345\"");
+        Assertions.assertThat(ByteValueMaskerContext.maskBooleanWith(true, valueMasker))
+                .isEqualTo("\"true\"");
+        Assertions.assertThat(ByteValueMaskerContext.maskBooleanWith(false, valueMasker))
+                .isEqualTo("null");
+    }
+
+    @Test
+    void withTextMaskerEscapedCharacters() {
+        var valueMasker = ValueMaskers.withTextMasker((value, maskedValue) -> {
+            Assertions.assertThat(value.toString()).isEqualTo("a\n\u00e9\ud83d\ude00\"\u0001/");
+            maskedValue.append(value);
+            return true;
+        });
+
+        Assertions.assertThat(ByteValueMaskerContext.maskStringWith(
+                        "a\\n\\u00e9\\ud83d\\ude00\\\"\\u0001\\/", valueMasker))
+                .isEqualTo("\"a\\n\u00e9\ud83d\ude00\\\"\\u0001/\"");
+        Assertions.assertThatThrownBy(() -> ByteValueMaskerContext.maskStringWith("\\ud83d", valueMasker))
+                .isInstanceOf(InvalidJsonException.class)
+                .hasMessage("Invalid surrogate pair '\\ud83d' at index 1");
+    }
+
+    @Test
+    void withTextMaskerReusesBuffers() {
+        Set<Object> buffers = new HashSet<>();
+        var jsonMasker = JsonMasker.getMasker(JsonMaskingConfig.builder()
+                .maskKeys("maskMe")
+                .maskStringsWith(ValueMaskers.withTextMasker((value, maskedValue) -> {
+                    buffers.add(value);
+                    buffers.add(maskedValue);
+                    maskedValue.append(value.length());
+                    return true;
+                }))
+                .build());
+
+        Assertions.assertThat(jsonMasker.mask("""
+                        {"maskMe": "a much longer value than the initial capacity of the buffers, which is 64", \
+                        "maskMe": "short", "maskMe": ""}"""))
+                .isEqualTo("""
+                        {"maskMe": "73", "maskMe": "5", "maskMe": "0"}""");
+        Assertions.assertThat(buffers).hasSize(2);
+    }
+
+    @Test
+    void withBatchTextFunction() {
+        // in-process stand-in for a tokenization service, which tokenizes a batch of values in one call
+        List<List<String>> batches = new ArrayList<>();
+        Function<List<String>, List<@Nullable String>> tokenizer = values -> {
+            batches.add(List.copyOf(values));
+            return values.stream()
+                    .map(value -> value.equals("revoked") ? null : "token:" + value)
+                    .collect(Collectors.toList());
+        };
+        var jsonMasker = JsonMasker.getMasker(JsonMaskingConfig.builder()
+                .maskKeys("id", "email")
+                .maskStringsWith(ValueMaskers.withBatchTextFunction(tokenizer))
+                .maskNumbersWith(ValueMaskers.withBatchTextFunction(tokenizer))
+                .build());
+
+        String json = """
+                [{"id": 1, "email": "a@b.c"}, {"id": "\\u00e9", "email": "revoked", "other": "x"}, {"email": null}]""";
+        Assertions.assertThat(jsonMasker.mask(json)).isEqualTo("""
+                [{"id": "token:1", "email": "token:a@b.c"}, {"id": "token:é", "email": null, "other": "x"}, \
+                {"email": null}]""");
+        // numbers and strings are masked by different instances, so each of them is called once
+        Assertions.assertThat(batches).containsExactly(List.of("1"), List.of("a@b.c", "é", "revoked"));
+
+        // the streaming API writes the masked values right away, so every value is masked on its own
+        batches.clear();
+        var outputStream = new ByteArrayOutputStream();
+        jsonMasker.mask(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), outputStream);
+        Assertions.assertThat(outputStream.toString(StandardCharsets.UTF_8)).isEqualTo(jsonMasker.mask(json));
+        Assertions.assertThat(batches).hasSize(4);
+    }
+
+    @Test
+    void withBatchTextFunctionInvalidResult() {
+        var valueMasker = ValueMaskers.withBatchTextFunction(values -> List.of());
+
+        Assertions.assertThatThrownBy(() -> ByteValueMaskerContext.maskStringWith("secret", valueMasker))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("Batch text function returned 0 masked values for 1 values");
+    }
+
+    @Test
+    void hmac() throws Exception {
+        byte[] key = "secret-key".getBytes(StandardCharsets.UTF_8);
+        var valueMasker = ValueMaskers.hmac(key, "HmacSHA256", 16);
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key, "HmacSHA256"));
+
+        String expectedString = HexFormat.of()
+                .formatHex(mac.doFinal("secret".getBytes(StandardCharsets.UTF_8)))
+                .substring(0, 16);
+        String expectedNumber = HexFormat.of()
+                .formatHex(mac.doFinal("12345".getBytes(StandardCharsets.UTF_8)))
+                .substring(0, 16);
+        Assertions.assertThat(ByteValueMaskerContext.maskStringWith("secret", valueMasker))
+                .isEqualTo("\"" + expectedString + "\"");
+        // same value results in the same hash, i.e. the pooled Mac is reset
+        Assertions.assertThat(ByteValueMaskerContext.maskStringWith("secret", valueMasker))
+                .isEqualTo("\"" + expectedString + "\"");
+        Assertions.assertThat(ByteValueMaskerContext.maskNumberWith(12345, valueMasker))
+                .isEqualTo("\"" + expectedNumber + "\"");
+        Assertions.assertThat(ByteValueMaskerContext.maskStringWith("", valueMasker))
+                .hasSize(18);
+        // larger than the initial value buffer of the pooled Mac
+        String largeValue = "secret".repeat(100);
+        Assertions.assertThat(ByteValueMaskerContext.maskStringWith(largeValue, valueMasker))
+                .isEqualTo("\"" + HexFormat.of()
+                        .formatHex(mac.doFinal(largeValue.getBytes(StandardCharsets.UTF_8)))
+                        .substring(0, 16) + "\"");
+        Assertions.assertThat(ValueMaskers.hmac(key, "HmacSHA256", 64).toString())
+                .isEqualTo("hmac (HmacSHA256, 64)");
+    }
+
+    @Test
+    void hmacInvalidConfiguration() {
+        byte[] key = "secret-key".getBytes(StandardCharsets.UTF_8);
+        Assertions.assertThatThrownBy(() -> ValueMaskers.hmac(key, "HmacUnknown", 16))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Unsupported HMAC algorithm: HmacUnknown");
+        Assertions.assertThatThrownBy(() -> ValueMaskers.hmac(key, "HmacSHA256", 0))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Output length must be between 1 and 64 for HmacSHA256, but was 0");
+        Assertions.assertThatThrownBy(() -> ValueMaskers.hmac(key, "HmacSHA256", 65))
+                .isInstanceOf(IllegalArgumentException.class);
+        Assertions.assertThatThrownBy(() -> ValueMaskers.hmac(new byte[0], "HmacSHA256", 16))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("HMAC key must not be empty");
+    }
+
+    @Test
+    void cached() {
+        List<String> maskedValues = new ArrayList<>();
+        var valueMasker = ValueMaskers.cached(
+                ValueMaskers.withRawValueFunction(value -> {
+                    maskedValues.add(value);
+                    return value.startsWith("\"keep") ? value : "\"token-" + maskedValues.size() + "\"";
+                }),
+                2);
+
+        Assertions.assertThat(ByteValueMaskerContext.maskStringWith("secret", valueMasker))
+                .isEqualTo("\"token-1\"");
+        Assertions.assertThat(ByteValueMaskerContext.maskStringWith("secret", valueMasker))
+                .isEqualTo("\"token-1\"");
+        Assertions.assertThat(ByteValueMaskerContext.maskNumberWith(12345, valueMasker))
+                .isEqualTo("\"token-2\"");
+        Assertions.assertThat(ByteValueMaskerContext.maskNumberWith(12345, valueMasker))
+                .isEqualTo("\"token-2\"");
+        Assertions.assertThat(maskedValues).containsExactly("\"secret\"", "12345");
+        Assertions.assertThat(valueMasker.getHitCount()).isEqualTo(2);
+        Assertions.assertThat(valueMasker.getMissCount()).isEqualTo(2);
+
+        // the cache is full, so the clock hand passes both entries and evicts "secret"
+        Assertions.assertThat(ByteValueMaskerContext.maskStringWith("keep", valueMasker))
+                .isEqualTo("\"keep\"");
+        Assertions.assertThat(ByteValueMaskerContext.maskStringWith("keep", valueMasker))
+                .isEqualTo("\"keep\"");
+        Assertions.assertThat(ByteValueMaskerContext.maskStringWith("secret", valueMasker))
+                .isEqualTo("\"token-4\"");
+        Assertions.assertThat(maskedValues).hasSize(4);
+        Assertions.assertThat(valueMasker.toString()).startsWith("cached (2, withRawValueFunction");
+    }
+
+    @Test
+    void cachedPartialReplacements() {
+        var valueMasker = ValueMaskers.cached(
+                context -> {
+                    context.replaceBytes(1, 1, "*".getBytes(StandardCharsets.UTF_8), 2);
+                    context.replaceBytes(context.byteLength() - 2, 1, "#".getBytes(StandardCharsets.UTF_8), 1);
+                },
+                16);
+
+        Assertions.assertThat(ByteValueMaskerContext.maskStringWith("secret", valueMasker))
+                .isEqualTo("\"**ecre#\"");
+        Assertions.assertThat(ByteValueMaskerContext.maskStringWith("secret", valueMasker))
+                .isEqualTo("\"**ecre#\"");
+        Assertions.assertThat(valueMasker.getHitCount()).isEqualTo(1);
+        Assertions.assertThatThrownBy(() -> ValueMaskers.cached(ValueMaskers.noop(), 0))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Maximum number of cache entries must be positive, but was 0");
+    }
+
     @Test
     void customAnyValueMasker() {
         ValueMasker.AnyValueMasker valueMasker =
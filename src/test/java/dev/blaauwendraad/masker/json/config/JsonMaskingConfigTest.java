@@ -7,6 +7,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 
@@ -19,6 +20,14 @@ final class JsonMaskingConfigTest {
                 .isThrownBy(() -> builder.get().build());
     }
 
+    @Test
+    @SuppressWarnings("NullAway") // passing null on purpose
+    void shouldNotAcceptNullKeyLookupStrategy() {
+        JsonMaskingConfig.Builder builder = JsonMaskingConfig.builder().maskKeys("maskMe");
+
+        assertThatExceptionOfType(NullPointerException.class).isThrownBy(() -> builder.keyLookupStrategy(null));
+    }
+
     private static Stream<Supplier<JsonMaskingConfig.Builder>> invalidBuilders() {
         return Stream.of(
                 () -> JsonMaskingConfig.builder(),
@@ -43,6 +52,12 @@ final class JsonMaskingConfigTest {
                 () -> JsonMaskingConfig.builder().allowJsonPaths("$.allowMe").maskKeys("maskMe"),
                 () -> JsonMaskingConfig.builder().allowJsonPaths("$.allowMe").maskJsonPaths("$.maskMe"),
                 () -> JsonMaskingConfig.builder().allowJsonPaths("$"),
+                () -> JsonMaskingConfig.builder()
+                        .maskKeys("maskMe")
+                        .targetKeyMode(JsonMaskingConfig.TargetKeyMode.ALLOW),
+                () -> JsonMaskingConfig.builder()
+                        .targetKeyMode(JsonMaskingConfig.TargetKeyMode.MASK)
+                        .allowKeys("allowMe"),
                 () -> JsonMaskingConfig.builder().caseSensitiveTargetKeys().caseSensitiveTargetKeys(),
                 () -> JsonMaskingConfig.builder().maskStringsWith("***").maskStringsWith("***"),
                 () -> JsonMaskingConfig.builder().maskStringsWith("***").maskStringCharactersWith("*"),
@@ -1,9 +1,6 @@
 package dev.blaauwendraad.masker.json.path;
 
-import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
-
 import java.util.Set;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -43,25 +40,13 @@ class JsonPathParserTest {
         Assertions.assertEquals(bracketNotationJsonPath, dotNotationJsonPath);
     }
 
-    @ParameterizedTest
-    @MethodSource("ambiguousJsonPaths")
-    void ambiguousJsonPathKeys(Set<String> jsonPathLiterals, String expectedExceptionMessage) {
-        JsonPathParser parser = new JsonPathParser();
-        Set<JsonPath> parsedJsonPaths =
-                jsonPathLiterals.stream().map(parser::parse).collect(Collectors.toSet());
-        assertThatThrownBy(() -> parser.checkAmbiguity(parsedJsonPaths))
-                .isInstanceOf(IllegalArgumentException.class)
-                .hasMessage(expectedExceptionMessage);
-    }
-
-    @ParameterizedTest
-    @MethodSource("notAmbiguousJsonPaths")
-    void notAmbiguousJsonPathKeys(Set<String> jsonPathLiterals) {
+    @Test
+    @SuppressWarnings("deprecation")
+    void overlappingJsonPathsAreNotAmbiguous() {
         JsonPathParser parser = new JsonPathParser();
-        Set<JsonPath> parsedJsonPaths =
-                jsonPathLiterals.stream().map(parser::parse).collect(Collectors.toSet());
-        parser.checkAmbiguity(parsedJsonPaths);
-        Assertions.assertDoesNotThrow(() -> parser.checkAmbiguity(parsedJsonPaths));
+        Set<JsonPath> jsonPaths = Set.of(
+                parser.parse("$.*.b"), parser.parse("$.a.b"), parser.parse("$.c[0:2].d"), parser.parse("$.c[1].d"));
+        Assertions.assertDoesNotThrow(() -> parser.checkAmbiguity(jsonPaths));
     }
 
     private static Stream<Arguments> legalJsonPathLiterals() {
@@ -77,77 +62,52 @@ class JsonPathParserTest {
                 Arguments.of("$.*.b", new JsonPath(new String[] {"$", "*", "b"})),
                 Arguments.of("$", new JsonPath(new String[] {"$"})),
                 Arguments.of("$.a.*.*", new JsonPath(new String[] {"$", "a", "*", "*"})),
-                Arguments.of("$[*].*.*", new JsonPath(new String[] {"$", "*", "*", "*"})));
+                Arguments.of("$[*].*.*", new JsonPath(new String[] {"$", "*", "*", "*"})),
+                Arguments.of("$[12].b.c", new JsonPath(new String[] {"$", "[12]", "b", "c"})),
+                Arguments.of("$.a[2:4]", new JsonPath(new String[] {"$", "a", "[2:4]"})),
+                Arguments.of("$.a[:4].b", new JsonPath(new String[] {"$", "a", "[:4]", "b"})),
+                Arguments.of("$.a[2:]", new JsonPath(new String[] {"$", "a", "[2:]"})),
+                Arguments.of("$.a[007]", new JsonPath(new String[] {"$", "a", "[7]"})),
+                Arguments.of("$[a][b][5].c", new JsonPath(new String[] {"$", "a", "b", "[5]", "c"})),
+                Arguments.of("$.a[0].b[1].c[2]", new JsonPath(new String[] {"$", "a", "[0]", "b", "[1]", "c", "[2]"})),
+                Arguments.of("$.a[0].[b][c]", new JsonPath(new String[] {"$", "a", "[0]", "b", "c"})),
+                Arguments.of("$.a[0][1]", new JsonPath(new String[] {"$", "a", "[0]", "[1]"})),
+                Arguments.of("$..a.b.c", new JsonPath(new String[] {"$", "..", "a", "b", "c"})),
+                Arguments.of("$.a..b", new JsonPath(new String[] {"$", "a", "..", "b"})),
+                Arguments.of("$..a..b", new JsonPath(new String[] {"$", "..", "a", "..", "b"})),
+                Arguments.of("$..a[0].*.b", new JsonPath(new String[] {"$", "..", "a", "[0]", "*", "b"})),
+                Arguments.of("$[a]..[b]", new JsonPath(new String[] {"$", "a", "..", "b"})),
+                Arguments.of("$..[a].b[0]", new JsonPath(new String[] {"$", "..", "a", "b", "[0]"})));
     }
 
     private static Stream<String> illegalJsonPathLiterals() {
         return Stream.of(
-                "$..a.b.c",
+                "$..",
+                "$..*",
+                "$..[0]",
+                "$..[*]",
+                "$..[0:2]",
+                "$..[]",
+                "$...a",
+                "$.a..",
+                "$..a.*",
                 "$a.b.c",
                 "$a.13.c",
+                "$.a.13.c",
                 "$.a.b.*",
                 "$.*",
-                "$[12].b.c",
                 "$.a[?@].b",
                 "$.a.'b'.c",
                 "$.a.\\..b",
                 "$[''][b]",
-                "$.a[2:4]",
+                "$.a.2:4",
+                "$.a[-1]",
+                "$.a[1:-1]",
+                "$.a[0:4:2]",
+                "$.a[4:2]",
+                "$.a[x:2]",
+                "$.a[99999999999]",
                 "$.a.b[?length(*)<3]",
-                "$[a][b][5].c",
-                "$.a[0].b[1].c[2]",
-                "$.a[0].[b][c]",
                 "$[(@.length - 1)].b");
     }
-
-    private static Stream<Arguments> ambiguousJsonPaths() {
-        return Stream.of(
-                Arguments.of(
-                        Set.of("$.a.b.c", "$.a.*.c", "$.i.r.l.v.n.*.t"),
-                        "'$.a.*.c' and '$.a.b.c' JSONPath keys combination is not supported: ambiguity at segment 2 with shared path $.a."),
-                Arguments.of(
-                        Set.of("$.*.b.c", "$.a.b.c"),
-                        "'$.*.b.c' and '$.a.b.c' JSONPath keys combination is not supported: ambiguity at segment 1 with shared path $."),
-                Arguments.of(
-                        Set.of("$.a.b.c", "$.*.*.*"),
-                        "'$.*.*.*' and '$.a.b.c' JSONPath keys combination is not supported: ambiguity at segment 1 with shared path $."),
-                Arguments.of(
-                        Set.of("$.*.b.c", "$.*.b.*.d"),
-                        "'$.*.b.*.d' and '$.*.b.c' JSONPath keys combination is not supported: ambiguity at segment 3 with shared path $.*.b."),
-                Arguments.of(
-                        Set.of("$.a.b.c", "$.a.b.d", "$.a.*.c"),
-                        "'$.a.*.c' and '$.a.b.c' JSONPath keys combination is not supported: ambiguity at segment 2 with shared path $.a."),
-                Arguments.of(
-                        Set.of("$.a.b.c", "$.a.*.c", "$.a.b.s"),
-                        "'$.a.*.c' and '$.a.b.c' JSONPath keys combination is not supported: ambiguity at segment 2 with shared path $.a."),
-                Arguments.of(
-                        Set.of("$.a.*.c", "$.a.b.c", "$.a.b.d"),
-                        "'$.a.*.c' and '$.a.b.c' JSONPath keys combination is not supported: ambiguity at segment 2 with shared path $.a."),
-                Arguments.of(
-                        Set.of("$.a.b.c.f", "$.*.*.*.u"),
-                        "'$.*.*.*.u' and '$.a.b.c.f' JSONPath keys combination is not supported: ambiguity at segment 1 with shared path $."),
-                Arguments.of(
-                        Set.of("$.*.b.c", "$.q.w.e", "$.*.d.f"),
-                        "'$.*.d.f' and '$.q.w.e' JSONPath keys combination is not supported: ambiguity at segment 1 with shared path $."),
-                Arguments.of(
-                        Set.of("$.a.b.c", "$.d.*.*.f", "$.d.*.v.f"),
-                        "'$.d.*.*.f' and '$.d.*.v.f' JSONPath keys combination is not supported: ambiguity at segment 3 with shared path $.d.*."),
-                Arguments.of(
-                        Set.of("$.a.b.*.*.d", "$.a.b.*.c"),
-                        "'$.a.b.*.*.d' and '$.a.b.*.c' JSONPath keys combination is not supported: ambiguity at segment 4 with shared path $.a.b.*."));
-    }
-
-    private static Stream<Set<String>> notAmbiguousJsonPaths() {
-        return Stream.of(
-                Set.of("$.a.b.c", "$.d.*.c", "$.f.*.v"),
-                Set.of("$.a.b.c", "$.d.*.c", "$.d.*.v"),
-                Set.of("$.a.b.c", "$.a.b.d"),
-                Set.of("$.a.b.*.d", "$.a.b.*.c"),
-                Set.of("$.a.b.*.d", "$.a.b.*.c.f"),
-                Set.of("$.ab", "$.a"),
-                Set.of("$.a.b", "$.a", "$.a!", "$.a.c", "$.a0.i"),
-                Set.of("$.a.b.c", "$.a.b.c.*.f"),
-                Set.of("$.key.bbb.c", "$.key.bbb.c.d"),
-                Set.of("$.f.e.g", "$.n.*.m", "$", "$.a.b.c.d"));
-    }
 }
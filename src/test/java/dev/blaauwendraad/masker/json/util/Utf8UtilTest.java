@@ -162,7 +162,14 @@ class Utf8UtilTest {
                 Arguments.of("d\u001Eb\u0018n9", 1),
                 // same as the above, but using UTF-8 string with character data so that Java doesn't convert it
                 // into a single character
-                Arguments.of("d\\u001Eb\\u0018n9", 11));
+                Arguments.of("d\\u001Eb\\u0018n9", 11),
+                // values longer than 8 bytes, of which the ASCII words without escapes are skipped at once
+                Arguments.of("abcdefghijklmnopqrstuvwxyz", 0),
+                Arguments.of("abcdefgh\\nijklmnop", 1),
+                Arguments.of("abcdefg\\\\\\nijklmnop", 2),
+                Arguments.of("abcdefghijklmnop€", 2),
+                Arguments.of("abcdefghijklmnop\\u2020qrstuvwx", 5),
+                Arguments.of("abcdefghijklmnopqrstuvw💩", 3));
     }
 
     private static Stream<Set<String>> equivalentJsonNodes() {